@@ -0,0 +1,126 @@
+package net.bdavies.tomcat.server.harness;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A minimal LiveReload client that behaves like the browser script, it records when each reload command arrives
+ * and answers the server's pings so it isn't disconnected
+ *
+ * @author ben.davies
+ */
+public class LiveReloadClient implements Closeable {
+    private final Socket socket;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final BlockingQueue<Long> reloads = new LinkedBlockingQueue<>();
+    private final Thread reader;
+    private volatile boolean running = true;
+
+    public LiveReloadClient(int port) throws IOException {
+        socket = new Socket("localhost", port);
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = socket.getOutputStream();
+        byte[] key = new byte[16];
+        ThreadLocalRandom.current().nextBytes(key);
+        out.write(("GET /livereload HTTP/1.1\r\n"
+                + "Host: localhost:" + port + "\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Key: " + Base64.getEncoder().encodeToString(key) + "\r\n"
+                + "Sec-WebSocket-Version: 13\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        readResponseHeader();
+        reader = new Thread(this::readFrames, "LiveReloadClient");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Forget the reload commands that have arrived so far
+     */
+    public void clear() {
+        reloads.clear();
+    }
+
+    /**
+     * Wait for the next reload command
+     *
+     * @param timeout how long to wait
+     * @param unit    the unit of the timeout
+     * @return {@link System#nanoTime()} when the command arrived or -1 if it didn't arrive in time
+     */
+    public long awaitReload(long timeout, TimeUnit unit) throws InterruptedException {
+        Long received = reloads.poll(timeout, unit);
+        return received == null ? -1 : received;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        socket.close();
+    }
+
+    private void readResponseHeader() throws IOException {
+        int matched = 0;
+        while (matched < 4) {
+            int b = in.read();
+            if (b == -1) throw new EOFException("The LiveReload server closed the connection during the handshake");
+            matched = (b == '\r' && matched % 2 == 0) || (b == '\n' && matched % 2 == 1) ? matched + 1 : 0;
+        }
+    }
+
+    private void readFrames() {
+        try {
+            while (running) {
+                int first = in.readUnsignedByte();
+                int second = in.readUnsignedByte();
+                long length = second & 0x7F;
+                if (length == 126) {
+                    length = in.readUnsignedShort();
+                } else if (length == 127) {
+                    length = in.readLong();
+                }
+                byte[] payload = new byte[(int) length];
+                in.readFully(payload);
+                long received = System.nanoTime();
+                int opcode = first & 0x0F;
+                if (opcode == 0x9) {
+                    writeFrame(0xA, payload);
+                } else if (opcode == 0x1 && new String(payload, StandardCharsets.UTF_8).contains("\"reload\"")) {
+                    reloads.add(received);
+                } else if (opcode == 0x8) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Lost the LiveReload connection: " + e);
+            }
+        }
+    }
+
+    /**
+     * Client frames have to be masked
+     */
+    private synchronized void writeFrame(int opcode, byte[] payload) throws IOException {
+        byte[] mask = new byte[4];
+        ThreadLocalRandom.current().nextBytes(mask);
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(payload.length + 6);
+        frame.write(0x80 | opcode);
+        frame.write(0x80 | payload.length);
+        frame.write(mask);
+        for (int i = 0; i < payload.length; i++) {
+            frame.write(payload[i] ^ mask[i & 3]);
+        }
+        out.write(frame.toByteArray());
+        out.flush();
+    }
+}
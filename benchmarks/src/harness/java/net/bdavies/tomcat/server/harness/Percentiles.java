@@ -0,0 +1,65 @@
+package net.bdavies.tomcat.server.harness;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Latency samples of one stage of one scenario, in milliseconds
+ *
+ * @author ben.davies
+ */
+public class Percentiles {
+    private final List<Double> samples = new ArrayList<>();
+
+    public void add(double millis) {
+        samples.add(millis);
+    }
+
+    public boolean isEmpty() {
+        return samples.isEmpty();
+    }
+
+    public int count() {
+        return samples.size();
+    }
+
+    /**
+     * Nearest rank percentile
+     *
+     * @param percentile between 0 and 100
+     * @return the value or NaN if there are no samples
+     */
+    public double get(double percentile) {
+        if (samples.isEmpty()) return Double.NaN;
+        List<Double> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * sorted.size());
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, rank - 1)));
+    }
+
+    public double mean() {
+        return samples.stream().mapToDouble(Double::doubleValue).average().orElse(Double.NaN);
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{");
+        sb.append("\"count\":").append(count())
+                .append(",\"mean\":").append(number(mean()))
+                .append(",\"p50\":").append(number(get(50)))
+                .append(",\"p90\":").append(number(get(90)))
+                .append(",\"p99\":").append(number(get(99)))
+                .append(",\"max\":").append(number(get(100)))
+                .append(",\"samples\":[");
+        for (int i = 0; i < samples.size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append(number(samples.get(i)));
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static String number(double value) {
+        return Double.isNaN(value) ? "null" : String.format(Locale.ROOT, "%.3f", value);
+    }
+}
@@ -0,0 +1,280 @@
+package net.bdavies.tomcat.server.harness;
+
+import net.bdavies.tomcat.server.ReloadTracker;
+import net.bdavies.tomcat.server.ReloadTracker.Stage;
+import net.bdavies.tomcat.server.TomcatRunner;
+import net.bdavies.tomcat.server.livereload.Constants;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures how long it takes from saving a file until the LiveReload client receives the reload command
+ *
+ * The runner is started in process against a generated webapp, each scenario edits files the way a developer
+ * would and the time every stage of the pipeline is reached is taken from {@link ReloadTracker}. The percentiles
+ * are printed and every sample is written as JSON so the numbers can be tracked across changes.
+ *
+ * Arguments, all optional: -classes=200 -iterations=20 -warmup=2 -timeout=30 -port=18080
+ * -scenarios=single,refactor,resource,noop -output=build/results/reload-latency
+ *
+ * @author ben.davies
+ */
+public class ReloadLatencyHarness {
+    private static final String FRAME_RECEIVED = "FRAME_RECEIVED";
+    private static final long QUIET_PERIOD = TimeUnit.MILLISECONDS.toNanos(1500);
+
+    private final Map<String, String> options;
+    private final List<Mark> marks = new CopyOnWriteArrayList<>();
+    private final SyntheticWebApp app;
+    private final int iterations, warmup;
+    private final long timeoutSeconds;
+
+    private ReloadLatencyHarness(Map<String, String> options) throws IOException {
+        this.options = options;
+        this.iterations = Integer.parseInt(options.getOrDefault("iterations", "20"));
+        this.warmup = Integer.parseInt(options.getOrDefault("warmup", "2"));
+        this.timeoutSeconds = Long.parseLong(options.getOrDefault("timeout", "30"));
+        this.app = new SyntheticWebApp(Files.createTempDirectory("synthetic-webapp"),
+                Integer.parseInt(options.getOrDefault("classes", "200")));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int idx = arg.indexOf('=');
+            if (idx > 0) {
+                options.put(arg.substring(0, idx).replaceFirst("^-+", ""), arg.substring(idx + 1));
+            }
+        }
+        int exitCode = 0;
+        try {
+            new ReloadLatencyHarness(options).run();
+        } catch (Exception e) {
+            e.printStackTrace();
+            exitCode = 1;
+        }
+        //The runner's threads aren't daemons
+        System.exit(exitCode);
+    }
+
+    private void run() throws Exception {
+        int port = Integer.parseInt(options.getOrDefault("port", "18080"));
+        int shutdownPort = port + 1;
+        String classpath = System.getProperty("java.class.path");
+        System.out.println("Generating a webapp of " + app.getClasses() + " classes in " + app.getRoot());
+        app.generate(classpath);
+
+        ReloadTracker.setListener((stage, nanoTime, detail) -> marks.add(new Mark(stage, nanoTime)));
+        TomcatRunner.main(runnerArguments(port, shutdownPort, classpath));
+        waitForPort(port);
+        waitForPort(Constants.DEFAULT_LR_PORT);
+
+        Map<String, Map<String, Percentiles>> results = new LinkedHashMap<>();
+        Map<String, Integer> missed = new LinkedHashMap<>();
+        try (LiveReloadClient client = new LiveReloadClient(Constants.DEFAULT_LR_PORT)) {
+            awaitQuiet(System.nanoTime());
+            for (String scenario : options.getOrDefault("scenarios", "single,refactor,resource,noop").split(",")) {
+                Map<String, Percentiles> stages = new LinkedHashMap<>();
+                int missedFrames = 0;
+                for (int i = 0; i < warmup + iterations; i++) {
+                    if (!runIteration(client, scenario.trim(), i, i < warmup ? new LinkedHashMap<>() : stages)
+                            && i >= warmup) {
+                        missedFrames++;
+                    }
+                }
+                results.put(scenario.trim(), stages);
+                missed.put(scenario.trim(), missedFrames);
+            }
+        } finally {
+            shutdown(shutdownPort);
+        }
+        print(results, missed);
+        write(results, missed);
+        deleteRecursively(app.getRoot());
+    }
+
+    /**
+     * @return true if the reload command arrived
+     */
+    private boolean runIteration(LiveReloadClient client, String scenario, int iteration,
+                                 Map<String, Percentiles> stages) throws Exception {
+        marks.clear();
+        client.clear();
+        long start = System.nanoTime();
+        edit(scenario, iteration);
+        long received = client.awaitReload(timeoutSeconds, TimeUnit.SECONDS);
+        awaitQuiet(start);
+
+        long frameSent = marks.stream().filter(m -> m.stage == Stage.FRAME_SENT && m.nanoTime >= start)
+                .mapToLong(m -> m.nanoTime).min().orElse(Long.MAX_VALUE);
+        for (Stage stage : Stage.values()) {
+            //The first file event starts the pipeline, every other stage is done once its last mark is
+            OptionalLong at;
+            if (stage == Stage.WATCH_EVENT || stage == Stage.FRAME_SENT) {
+                at = marks.stream().filter(m -> m.stage == stage && m.nanoTime >= start)
+                        .mapToLong(m -> m.nanoTime).min();
+            } else {
+                at = marks.stream().filter(m -> m.stage == stage && m.nanoTime >= start && m.nanoTime <= frameSent)
+                        .mapToLong(m -> m.nanoTime).max();
+            }
+            at.ifPresent(t -> stages.computeIfAbsent(stage.name(), s -> new Percentiles()).add(millis(start, t)));
+        }
+        if (received == -1) {
+            System.out.println(scenario + " #" + iteration + ": no reload within " + timeoutSeconds + "s");
+            return false;
+        }
+        stages.computeIfAbsent(FRAME_RECEIVED, s -> new Percentiles()).add(millis(start, received));
+        return true;
+    }
+
+    private void edit(String scenario, int iteration) throws IOException {
+        switch (scenario) {
+            case "single":
+                app.editComponent(1);
+                break;
+            case "refactor":
+                for (int i = 0; i < Math.min(100, app.getClasses()); i++) {
+                    app.editComponent(i);
+                }
+                break;
+            case "resource":
+                app.editStylesheet(iteration % app.getStylesheets());
+                break;
+            case "noop":
+                app.saveComponent(2);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown scenario " + scenario);
+        }
+    }
+
+    /**
+     * Wait until nothing has been marked for a while so the next iteration starts from an idle runner
+     */
+    private void awaitQuiet(long since) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        while (System.nanoTime() < deadline) {
+            long last = marks.stream().mapToLong(m -> m.nanoTime).max().orElse(since);
+            if (System.nanoTime() - Math.max(last, since) >= QUIET_PERIOD) return;
+            Thread.sleep(100);
+        }
+    }
+
+    private String[] runnerArguments(int port, int shutdownPort, String classpath) throws IOException {
+        Path compileClasspath = Files.write(app.getRoot().resolve("cmplCp.txt"), classpath.getBytes(StandardCharsets.UTF_8));
+        Path runtimeClasspath = Files.write(app.getRoot().resolve("runtimeCp.txt"),
+                app.getClassesDirectory().toString().getBytes(StandardCharsets.UTF_8));
+        return new String[]{
+                "-webApp=" + app.getRoot(),
+                "-webAppResources=[" + app.getCssDirectory() + "]",
+                "-classesDir=" + app.getClassesDirectory(),
+                "-compileClasspath=" + compileClasspath,
+                "-runtimeClasspath=" + runtimeClasspath,
+                //The watcher compiles against the second source directory
+                "-srcDirectories=[" + app.getResourcesDirectory() + ", " + app.getJavaDirectory() + "]",
+                "-applicationProperties=" + app.getRoot().resolve("app.properties"),
+                "-buildDirectory=" + app.getBuildDirectory(),
+                "-port=" + port,
+                "-shutdownPort=" + shutdownPort,
+                "-injectLiveReload=false",
+                "-mappedSessions=false"
+        };
+    }
+
+    private void print(Map<String, Map<String, Percentiles>> results, Map<String, Integer> missed) {
+        System.out.println();
+        System.out.printf("%-10s %-16s %6s %10s %10s %10s %10s%n", "Scenario", "Stage (ms)", "n", "p50", "p90",
+                "p99", "max");
+        results.forEach((scenario, stages) -> {
+            stages.forEach((stage, p) -> System.out.printf(Locale.ROOT, "%-10s %-16s %6d %10.1f %10.1f %10.1f %10.1f%n",
+                    scenario, stage, p.count(), p.get(50), p.get(90), p.get(99), p.get(100)));
+            if (missed.get(scenario) > 0) {
+                System.out.printf("%-10s %d of %d edits didn't reload%n", scenario, missed.get(scenario), iterations);
+            }
+        });
+    }
+
+    private void write(Map<String, Map<String, Percentiles>> results, Map<String, Integer> missed) throws IOException {
+        Path output = Path.of(options.getOrDefault("output", Path.of("build", "results", "reload-latency").toString()));
+        Files.createDirectories(output);
+        StringBuilder sb = new StringBuilder("{\n")
+                .append("  \"timestamp\": \"").append(LocalDateTime.now()).append("\",\n")
+                .append("  \"jdk\": \"").append(Runtime.version()).append("\",\n")
+                .append("  \"os\": \"").append(System.getProperty("os.name")).append("\",\n")
+                .append("  \"classes\": ").append(app.getClasses()).append(",\n")
+                .append("  \"stylesheets\": ").append(app.getStylesheets()).append(",\n")
+                .append("  \"iterations\": ").append(iterations).append(",\n")
+                .append("  \"scenarios\": {");
+        String scenarioSeparator = "\n";
+        for (Map.Entry<String, Map<String, Percentiles>> scenario : results.entrySet()) {
+            sb.append(scenarioSeparator).append("    \"").append(scenario.getKey()).append("\": {\n")
+                    .append("      \"missedFrames\": ").append(missed.get(scenario.getKey())).append(",\n")
+                    .append("      \"stages\": {");
+            String stageSeparator = "\n";
+            for (Map.Entry<String, Percentiles> stage : scenario.getValue().entrySet()) {
+                sb.append(stageSeparator).append("        \"").append(stage.getKey()).append("\": ")
+                        .append(stage.getValue().toJson());
+                stageSeparator = ",\n";
+            }
+            sb.append("\n      }\n    }");
+            scenarioSeparator = ",\n";
+        }
+        sb.append("\n  }\n}\n");
+        Path file = output.resolve("reload-latency-"
+                + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json");
+        Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+        System.out.println("\nResults written to " + file.toAbsolutePath());
+    }
+
+    private void waitForPort(int port) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds * 2);
+        while (System.nanoTime() < deadline) {
+            try (Socket ignored = new Socket("localhost", port)) {
+                return;
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        throw new IllegalStateException("Nothing is listening on port " + port);
+    }
+
+    private void shutdown(int shutdownPort) {
+        try (Socket socket = new Socket("localhost", shutdownPort); OutputStream os = socket.getOutputStream()) {
+            os.write("SHUTDOWN".getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException e) {
+            System.err.println("Unable to shut down the runner: " + e);
+        }
+    }
+
+    private void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private static double millis(long start, long end) {
+        return (end - start) / 1_000_000.0;
+    }
+
+    private static class Mark {
+        private final Stage stage;
+        private final long nanoTime;
+
+        private Mark(Stage stage, long nanoTime) {
+            this.stage = stage;
+            this.nanoTime = nanoTime;
+        }
+    }
+}
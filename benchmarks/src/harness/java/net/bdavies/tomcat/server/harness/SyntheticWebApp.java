@@ -0,0 +1,177 @@
+package net.bdavies.tomcat.server.harness;
+
+import org.eclipse.jdt.core.compiler.batch.BatchCompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A generated webapp laid out the way a Gradle project using the plugin is
+ *
+ * It has a servlet and a number of components under src/main/java, where every tenth component uses the one
+ * before it so a change has dependants, and stylesheets in a css resource directory.
+ *
+ * @author ben.davies
+ */
+public class SyntheticWebApp {
+    private static final String PACKAGE = "com.example.generated";
+
+    private final Path root;
+    private final int classes;
+    private final int stylesheets;
+    private int revision;
+
+    public SyntheticWebApp(Path root, int classes) {
+        this.root = root;
+        this.classes = classes;
+        this.stylesheets = Math.max(10, classes / 10);
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public int getClasses() {
+        return classes;
+    }
+
+    public int getStylesheets() {
+        return stylesheets;
+    }
+
+    public Path getJavaDirectory() {
+        return root.resolve(Path.of("src", "main", "java"));
+    }
+
+    public Path getResourcesDirectory() {
+        return root.resolve(Path.of("src", "main", "resources"));
+    }
+
+    public Path getCssDirectory() {
+        return root.resolve("css");
+    }
+
+    public Path getClassesDirectory() {
+        return root.resolve(Path.of("build", "classes", "java", "main"));
+    }
+
+    public Path getBuildDirectory() {
+        return root.resolve("build");
+    }
+
+    /**
+     * Write every file and compile the sources, the same state the runner starts from after a Gradle build
+     *
+     * @param compileClasspath the classpath the sources are compiled against, it needs the servlet API
+     */
+    public void generate(String compileClasspath) throws IOException {
+        Files.createDirectories(getResourcesDirectory());
+        Files.createDirectories(getCssDirectory());
+        Files.createDirectories(getClassesDirectory());
+        Files.createDirectories(getPackageDirectory());
+        for (int i = 0; i < classes; i++) {
+            writeComponent(i);
+        }
+        Files.write(getPackageDirectory().resolve("IndexServlet.java"), indexServlet().getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < stylesheets; i++) {
+            writeStylesheet(i);
+        }
+        Files.write(root.resolve("app.properties"), "greeting=hello\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(getResourcesDirectory().resolve("messages.properties"),
+                "title=Synthetic\n".getBytes(StandardCharsets.UTF_8));
+        compile(compileClasspath);
+    }
+
+    /**
+     * Change what a component returns, a real edit that changes the class file
+     */
+    public void editComponent(int index) throws IOException {
+        revision++;
+        writeComponent(index);
+    }
+
+    /**
+     * Save a component without changing it, as an editor does on a save all
+     */
+    public void saveComponent(int index) throws IOException {
+        Path file = componentFile(index);
+        Files.write(file, Files.readAllBytes(file));
+    }
+
+    public void editStylesheet(int index) throws IOException {
+        revision++;
+        writeStylesheet(index);
+    }
+
+    public Path componentFile(int index) {
+        return getPackageDirectory().resolve("Component" + index + ".java");
+    }
+
+    private Path getPackageDirectory() {
+        return getJavaDirectory().resolve(PACKAGE.replace('.', File.separatorChar));
+    }
+
+    private void writeComponent(int index) throws IOException {
+        StringBuilder sb = new StringBuilder("package " + PACKAGE + ";\n\n")
+                .append("import java.util.ArrayList;\nimport java.util.List;\n\n")
+                .append("public class Component").append(index).append(" {\n");
+        if (index % 10 != 0) {
+            sb.append("    private final Component").append(index - 1).append(" previous = new Component")
+                    .append(index - 1).append("();\n\n");
+        }
+        sb.append("    public String name() {\n")
+                .append("        return \"component-").append(index).append("-r").append(revision).append("\";\n")
+                .append("    }\n\n")
+                .append("    public List<String> describe(int count) {\n")
+                .append("        List<String> lines = new ArrayList<>();\n")
+                .append("        for (int i = 0; i < count; i++) {\n")
+                .append("            lines.add(name() + \":\" + i);\n")
+                .append("        }\n");
+        if (index % 10 != 0) {
+            sb.append("        lines.addAll(previous.describe(count / 2));\n");
+        }
+        sb.append("        return lines;\n    }\n}\n");
+        Files.write(componentFile(index), sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String indexServlet() {
+        return "package " + PACKAGE + ";\n\n"
+                + "import javax.servlet.annotation.WebServlet;\n"
+                + "import javax.servlet.http.HttpServlet;\n"
+                + "import javax.servlet.http.HttpServletRequest;\n"
+                + "import javax.servlet.http.HttpServletResponse;\n"
+                + "import java.io.IOException;\n\n"
+                + "@WebServlet(\"/index\")\n"
+                + "public class IndexServlet extends HttpServlet {\n"
+                + "    @Override\n"
+                + "    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {\n"
+                + "        resp.setContentType(\"text/html\");\n"
+                + "        resp.getWriter().write(\"<html><body>\" + new Component0().name() + \"</body></html>\");\n"
+                + "    }\n"
+                + "}\n";
+    }
+
+    private void writeStylesheet(int index) throws IOException {
+        String css = ".component-" + index + " {\n    color: #" + String.format("%06x", (index * 7919 + revision) & 0xFFFFFF)
+                + ";\n    margin: " + (revision % 16) + "px;\n}\n";
+        Files.write(getCssDirectory().resolve("style" + index + ".css"), css.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void compile(String compileClasspath) {
+        StringWriter errors = new StringWriter();
+        boolean success = BatchCompiler.compile(new String[]{
+                "-source", "11", "-target", "11", "-nowarn",
+                "-cp", compileClasspath,
+                "-d", getClassesDirectory().toString(),
+                getJavaDirectory().toString()
+        }, new PrintWriter(new StringWriter()), new PrintWriter(errors), null);
+        if (!success) {
+            throw new IllegalStateException("The synthetic webapp does not compile:\n" + errors);
+        }
+    }
+}
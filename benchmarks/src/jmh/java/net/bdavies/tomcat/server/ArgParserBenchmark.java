@@ -0,0 +1,94 @@
+package net.bdavies.tomcat.server;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Parsing the arguments the plugin passes to the runner, with classpaths the size of a large webapp's
+ *
+ * @author ben.davies
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ArgParserBenchmark {
+    /**
+     * Number of entries on the compile and runtime classpaths
+     */
+    @Param({"500", "2000"})
+    int entries;
+
+    private Path directory;
+    private String[] args;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("arg-parser-benchmark");
+        List<String> jars = IntStream.range(0, entries)
+                .mapToObj(i -> directory.resolve(Path.of(".gradle", "caches", "modules-2", "files-2.1",
+                        "org.example.group" + i, "artifact-" + i, "1." + i + ".0",
+                        "0123456789abcdef0123456789abcdef0123" + i, "artifact-" + i + "-1." + i + ".0.jar")).toString())
+                .collect(Collectors.toList());
+        String classpath = String.join(File.pathSeparator, jars);
+        Path compileClasspath = write("cmplCp.txt", classpath);
+        Path runtimeClasspath = write("runtimeCp.txt", classpath);
+        Path jarsToSkip = write("jarsToSkip.txt", jars.stream().map(j -> j.substring(j.lastIndexOf(File.separatorChar) + 1))
+                .collect(Collectors.joining(",")));
+        Path jarsToScan = write("jarsToScan.txt", "");
+        Path properties = write("app.properties", IntStream.range(0, 50).mapToObj(i -> "property" + i + "=value" + i)
+                .collect(Collectors.joining("\n")));
+        Path webApp = directory.resolve("webapp");
+
+        List<String> arguments = new ArrayList<>();
+        arguments.add("-webApp=" + webApp);
+        arguments.add("-webAppResources=[" + webApp.resolve("css") + ", " + webApp.resolve("js") + "]");
+        arguments.add("-classesDir=" + webApp.resolve(Path.of("build", "classes", "java", "main")));
+        arguments.add("-compileClasspath=" + compileClasspath);
+        arguments.add("-runtimeClasspath=" + runtimeClasspath);
+        arguments.add("-jarsToSkip=" + jarsToSkip);
+        arguments.add("-jarsToScan=" + jarsToScan);
+        arguments.add("-srcDirectories=[" + webApp.resolve(Path.of("src", "main", "resources")) + ", "
+                + webApp.resolve(Path.of("src", "main", "java")) + "]");
+        arguments.add("-applicationProperties=" + properties);
+        arguments.add("-port=8080");
+        arguments.add("-shutdownPort=8005");
+        arguments.add("-liveReloadHeartbeatInterval=30");
+        arguments.add("-injectLiveReload=true");
+        arguments.add("-buildDirectory=" + webApp.resolve("build"));
+        arguments.add("-protocol=nio");
+        arguments.add("-maxThreads=200");
+        arguments.add("-compressibleMimeTypes=[text/html, text/css, application/javascript]");
+        args = arguments.toArray(new String[0]);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public TomcatServerData parse() {
+        return new ArgParser(args).getData();
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(directory.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,112 @@
+package net.bdavies.tomcat.server.livereload;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing and reading single websocket frames, the codec replaced WebsocketFrame.write and readFromStream
+ *
+ * The server never masks what it writes so only reads have a masked variant, client frames are always masked.
+ *
+ * @author ben.davies
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class WebsocketFrameCodecBenchmark {
+
+    @State(Scope.Thread)
+    public static class WriteState {
+        @Param({"16", "125", "4096", "70000"})
+        int size;
+
+        WebsocketFrameCodec codec;
+        WebsocketFrame frame;
+        ByteArrayOutputStream out;
+
+        @Setup
+        public void setup() {
+            codec = new WebsocketFrameCodec();
+            frame = new WebsocketFrame(FrameType.TEXT, payload(size));
+            out = new ByteArrayOutputStream(size + 16);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ReadState {
+        @Param({"16", "125", "4096", "70000"})
+        int size;
+
+        @Param({"true", "false"})
+        boolean masked;
+
+        WebsocketFrameCodec codec;
+        ByteArrayInputStream in;
+        WebsocketInputStream stream;
+
+        @Setup
+        public void setup() {
+            codec = new WebsocketFrameCodec();
+            in = new ByteArrayInputStream(encode(payload(size), masked));
+            stream = new WebsocketInputStream(in);
+        }
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream write(WriteState state) throws IOException {
+        state.out.reset();
+        state.codec.write(state.out, state.frame);
+        return state.out;
+    }
+
+    @Benchmark
+    public WebsocketFrame read(ReadState state) throws IOException {
+        //Back to the start of the same frame
+        state.in.reset();
+        return state.codec.read(state.stream);
+    }
+
+    private static byte[] payload(int size) {
+        byte[] payload = new byte[size];
+        new Random(size).nextBytes(payload);
+        return payload;
+    }
+
+    /**
+     * One final text frame the way a browser sends it
+     */
+    private static byte[] encode(byte[] payload, boolean masked) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length + 14);
+        out.write(0x80 | FrameType.TEXT.getCode());
+        int maskBit = masked ? 0x80 : 0;
+        if (payload.length < 126) {
+            out.write(maskBit | payload.length);
+        } else if (payload.length <= 0xFFFF) {
+            out.write(maskBit | 126);
+            out.write(payload.length >>> 8);
+            out.write(payload.length);
+        } else {
+            out.write(maskBit | 127);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) ((long) payload.length >>> shift));
+            }
+        }
+        if (!masked) {
+            out.write(payload, 0, payload.length);
+            return out.toByteArray();
+        }
+        byte[] mask = {0x12, 0x34, 0x56, 0x78};
+        out.write(mask, 0, mask.length);
+        for (int i = 0; i < payload.length; i++) {
+            out.write(payload[i] ^ mask[i & 3]);
+        }
+        return out.toByteArray();
+    }
+}
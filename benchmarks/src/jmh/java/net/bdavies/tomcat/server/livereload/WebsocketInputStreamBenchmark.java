@@ -0,0 +1,66 @@
+package net.bdavies.tomcat.server.livereload;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the HTTP upgrade request a browser sends when the LiveReload script connects
+ *
+ * @author ben.davies
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class WebsocketInputStreamBenchmark {
+    private static final String UPGRADE_REQUEST = "GET /livereload HTTP/1.1\r\n"
+            + "Host: localhost:35729\r\n"
+            + "Connection: Upgrade\r\n"
+            + "Pragma: no-cache\r\n"
+            + "Cache-Control: no-cache\r\n"
+            + "User-Agent: Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) "
+            + "Chrome/96.0.4664.110 Safari/537.36\r\n"
+            + "Upgrade: websocket\r\n"
+            + "Origin: http://localhost:8080\r\n"
+            + "Sec-WebSocket-Version: 13\r\n"
+            + "Accept-Encoding: gzip, deflate, br\r\n"
+            + "Accept-Language: en-GB,en-US;q=0.9,en;q=0.8\r\n"
+            + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+            + "Sec-WebSocket-Extensions: permessage-deflate; client_max_window_bits\r\n";
+
+    /**
+     * A plain upgrade request or one carrying the large cookies a real webapp tends to set on localhost
+     */
+    @Param({"plain", "cookies"})
+    String request;
+
+    private ByteArrayInputStream in;
+    private WebsocketInputStream stream;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder(UPGRADE_REQUEST);
+        if (request.equals("cookies")) {
+            sb.append("Cookie: JSESSIONID=8F2C5B0A1E7D4C3B9A6F0E1D2C3B4A59");
+            for (int i = 0; i < 40; i++) {
+                sb.append("; pref_").append(i).append("=").append("abcdefghijklmnopqrstuvwxyz0123456789");
+            }
+            sb.append("\r\n");
+        }
+        sb.append("\r\n");
+        in = new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.US_ASCII));
+        stream = new WebsocketInputStream(in);
+    }
+
+    @Benchmark
+    public String readHTTPHeader() throws IOException {
+        in.reset();
+        return stream.readHTTPHeader();
+    }
+}
@@ -0,0 +1,82 @@
+package net.bdavies.tomcat.server.watcher;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compiling a changed source file the way the file watcher does
+ *
+ * Cold is the first compile in a fresh JVM, which is what the first change after starting the runner pays,
+ * warm is a compile after ECJ has been loaded and JIT compiled.
+ *
+ * @author ben.davies
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class CompilerBenchmark {
+    private static final int METHODS = 50;
+
+    private Path directory;
+    private File source;
+    private String classpath;
+    private Compiler compiler;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("compiler-benchmark");
+        Path sources = Files.createDirectories(directory.resolve(Path.of("src", "com", "example")));
+        Files.createDirectories(directory.resolve("classes"));
+        StringBuilder sb = new StringBuilder("package com.example;\n\nimport java.util.*;\n"
+                + "import java.util.stream.Collectors;\n\npublic class Changed {\n");
+        for (int i = 0; i < METHODS; i++) {
+            sb.append("    public List<String> method").append(i).append("(Map<String, Integer> values) {\n")
+                    .append("        return values.entrySet().stream().filter(e -> e.getValue() > ").append(i)
+                    .append(").map(Map.Entry::getKey).sorted().collect(Collectors.toList());\n")
+                    .append("    }\n\n");
+        }
+        sb.append("}\n");
+        source = Files.write(sources.resolve("Changed.java"), sb.toString().getBytes(StandardCharsets.UTF_8)).toFile();
+        //The benchmark's own classpath stands in for the webapp's compile classpath
+        classpath = System.getProperty("java.class.path");
+        compiler = new Compiler();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(10)
+    public void cold() {
+        compile();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 5, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(2)
+    public void warm() {
+        compile();
+    }
+
+    private void compile() {
+        compiler.compileFile(source, classpath, "11", "11", directory.resolve("classes").toString(),
+                directory.resolve("src").toString(), () -> {
+                });
+    }
+}
@@ -0,0 +1,50 @@
+package net.bdavies.tomcat.server.watcher;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Several threads debouncing at once, as happens when a build or a checkout touches many files together
+ *
+ * @author ben.davies
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(8)
+@State(Scope.Benchmark)
+public class DebouncerBenchmark {
+    /**
+     * Number of distinct keys, 1 has every thread replacing the same task
+     */
+    @Param({"1", "16", "1024"})
+    int keys;
+
+    private Debouncer debouncer;
+    private String[] names;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        debouncer = new Debouncer();
+        names = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            names[i] = "/project/src/main/java/File" + i + ".java";
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        debouncer.shutdown();
+    }
+
+    @Benchmark
+    public void debounce(Blackhole blackhole) {
+        String key = names[ThreadLocalRandom.current().nextInt(keys)];
+        debouncer.debounce(key, () -> blackhole.consume(key), 50, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,299 @@
+package net.bdavies.tomcat.server.loadtest;
+
+import net.bdavies.tomcat.server.TomcatRunner;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the testapp with an open model load while its context is reloaded on a schedule
+ *
+ * Requests are sent at a fixed rate whether or not earlier ones have completed, the way independent users
+ * arrive, and latency is measured from when a request was due to be sent so a stall shows up in full instead of
+ * slowing the load down. Every request is put in the phase it overlapped, see {@link Phase}, and each phase gets
+ * its own HdrHistogram and error counts.
+ *
+ * Arguments before -- are for the load test, all optional: -rate=200 -duration=60 -warmup=10
+ * -reloadInterval=10 -recoveryWindow=2000 -timeout=10 -port=8080 -output=build/results/loadtest
+ * The arguments after -- are passed to {@link TomcatRunner}.
+ *
+ * @author ben.davies
+ */
+public class LoadTest {
+    private static final Endpoint[] ENDPOINTS = {
+            new Endpoint("/hello", 200),
+            new Endpoint("/test/index", 200),
+            new Endpoint("/main.css", 200),
+            new Endpoint("/hello", 200),
+            new Endpoint("/test/index", 200),
+            new Endpoint("/main.css", 200),
+            new Endpoint("/hello", 200),
+            new Endpoint("/test/index", 200),
+            new Endpoint("/hello", 200),
+            //ExampleServlet only answers /test/index, anything else under /test falls through to HttpServlet
+            new Endpoint("/test/other", 405)
+    };
+
+    private final Map<String, String> options;
+    private final String[] runnerArguments;
+    private final Map<Phase, PhaseStats> stats = new EnumMap<>(Phase.class);
+    private final AtomicLong outstanding = new AtomicLong();
+    private final HttpClient client;
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "LoadTest-Client");
+        t.setDaemon(true);
+        return t;
+    });
+    private final int port;
+    private final Duration timeout;
+
+    private LoadTest(Map<String, String> options, String[] runnerArguments) {
+        this.options = options;
+        this.runnerArguments = runnerArguments;
+        this.port = Integer.parseInt(options.getOrDefault("port", runnerArgument("port", "8080")));
+        this.timeout = Duration.ofSeconds(Long.parseLong(options.getOrDefault("timeout", "10")));
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .executor(executor)
+                .build();
+        for (Phase phase : Phase.values()) {
+            stats.put(phase, new PhaseStats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int separator = Arrays.asList(args).indexOf("--");
+        String[] loadArguments = separator == -1 ? args : Arrays.copyOfRange(args, 0, separator);
+        String[] runnerArguments = separator == -1 ? new String[0] : Arrays.copyOfRange(args, separator + 1, args.length);
+        Map<String, String> options = new HashMap<>();
+        for (String arg : loadArguments) {
+            int idx = arg.indexOf('=');
+            if (idx > 0) {
+                options.put(arg.substring(0, idx).replaceFirst("^-+", ""), arg.substring(idx + 1));
+            }
+        }
+        int exitCode = 0;
+        try {
+            new LoadTest(options, runnerArguments).run();
+        } catch (Exception e) {
+            e.printStackTrace();
+            exitCode = 1;
+        }
+        //The runner's threads aren't daemons
+        System.exit(exitCode);
+    }
+
+    private void run() throws Exception {
+        int rate = Integer.parseInt(options.getOrDefault("rate", "200"));
+        long duration = Long.parseLong(options.getOrDefault("duration", "60"));
+        long warmup = Long.parseLong(options.getOrDefault("warmup", "10"));
+        long reloadInterval = Long.parseLong(options.getOrDefault("reloadInterval", "10"));
+        long recoveryWindow = Long.parseLong(options.getOrDefault("recoveryWindow", "2000"));
+
+        TomcatRunner.main(runnerArguments);
+        waitForPort(port);
+        try {
+            System.out.println("Warming up for " + warmup + "s at " + rate + " requests/s");
+            generate(rate, TimeUnit.SECONDS.toNanos(warmup), null);
+            awaitOutstanding();
+
+            System.out.println("Running for " + duration + "s at " + rate + " requests/s with a reload every "
+                    + reloadInterval + "s");
+            ReloadScheduler scheduler = new ReloadScheduler(TimeUnit.SECONDS.toMillis(reloadInterval), recoveryWindow,
+                    TimeUnit.MILLISECONDS, stats);
+            scheduler.start();
+            generate(rate, TimeUnit.SECONDS.toNanos(duration), scheduler);
+            scheduler.stop();
+            awaitOutstanding();
+
+            print(rate, scheduler);
+            write(rate, duration, reloadInterval, recoveryWindow, scheduler);
+        } finally {
+            shutdown(Integer.parseInt(runnerArgument("shutdownPort", "8005")));
+        }
+    }
+
+    /**
+     * Send requests at a fixed rate for a while, a request that is late to be sent keeps its original due time
+     *
+     * @param scheduler the reloads the requests are measured against or null to only warm up
+     */
+    private void generate(int rate, long durationNanos, ReloadScheduler scheduler) {
+        long period = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long end = start + durationNanos;
+        for (long i = 0; ; i++) {
+            long due = start + i * period;
+            if (due >= end) return;
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            send(ENDPOINTS[(int) (i % ENDPOINTS.length)], due, scheduler);
+        }
+    }
+
+    private void send(Endpoint endpoint, long due, ReloadScheduler scheduler) {
+        Phase phaseAtStart = scheduler == null ? null : scheduler.getPhase();
+        long reloadsAtStart = scheduler == null ? 0 : scheduler.getReloads();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + endpoint.path))
+                .timeout(timeout)
+                .GET()
+                .build();
+        outstanding.incrementAndGet();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, e) -> {
+            try {
+                if (scheduler == null) return;
+                long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due);
+                String error = null;
+                if (e != null) {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    error = cause.getClass().getSimpleName();
+                } else if (response.statusCode() != endpoint.expectedStatus) {
+                    error = "HTTP " + response.statusCode() + " " + endpoint.path;
+                }
+                stats.get(phaseOf(phaseAtStart, reloadsAtStart, scheduler)).record(latencyMicros, error);
+            } finally {
+                outstanding.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * A request overlapped a reload if one was running when it was sent or when it completed, or one started
+     * and finished while it was in flight
+     */
+    private Phase phaseOf(Phase phaseAtStart, long reloadsAtStart, ReloadScheduler scheduler) {
+        Phase phaseAtEnd = scheduler.getPhase();
+        if (phaseAtStart == Phase.RELOADING || phaseAtEnd == Phase.RELOADING
+                || reloadsAtStart != scheduler.getReloads()) {
+            return Phase.RELOADING;
+        }
+        if (phaseAtStart == Phase.RECOVERING || phaseAtEnd == Phase.RECOVERING) {
+            return Phase.RECOVERING;
+        }
+        return Phase.STEADY;
+    }
+
+    private void awaitOutstanding() throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos() * 2;
+        while (outstanding.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+
+    private void print(int rate, ReloadScheduler scheduler) {
+        System.out.println();
+        System.out.printf("Offered load %d requests/s, %d reloads taking %s ms%n", rate,
+                scheduler.getReloadMillis().size(), scheduler.getReloadMillis());
+        System.out.printf("%-11s %9s %8s %9s %8s %9s %9s %9s %9s %9s%n", "Phase", "requests", "seconds", "req/s",
+                "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        stats.forEach((phase, s) -> {
+            System.out.printf(Locale.ROOT, "%-11s %9d %8.1f %9.1f %7.2f%% %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    phase, s.getRequests(), s.getSeconds(), s.getThroughput(), s.getErrorRate() * 100,
+                    millis(s, 50), millis(s, 90), millis(s, 99), millis(s, 99.9), s.getLatency().getMaxValue() / 1000.0);
+            s.getErrorsByCause().forEach((cause, count) -> System.out.printf("%-11s   %d x %s%n", "", count.sum(), cause));
+        });
+    }
+
+    private void write(int rate, long duration, long reloadInterval, long recoveryWindow, ReloadScheduler scheduler)
+            throws IOException {
+        Path output = Path.of(options.getOrDefault("output", Path.of("build", "results", "loadtest").toString()))
+                .resolve(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")));
+        Files.createDirectories(output);
+        StringBuilder sb = new StringBuilder("{\n")
+                .append("  \"rate\": ").append(rate).append(",\n")
+                .append("  \"duration\": ").append(duration).append(",\n")
+                .append("  \"reloadInterval\": ").append(reloadInterval).append(",\n")
+                .append("  \"recoveryWindow\": ").append(recoveryWindow).append(",\n")
+                .append("  \"reloadMillis\": ").append(scheduler.getReloadMillis()).append(",\n")
+                .append("  \"phases\": {");
+        String separator = "\n";
+        for (Map.Entry<Phase, PhaseStats> entry : stats.entrySet()) {
+            PhaseStats s = entry.getValue();
+            sb.append(separator).append("    \"").append(entry.getKey()).append("\": {")
+                    .append("\"requests\": ").append(s.getRequests())
+                    .append(", \"seconds\": ").append(String.format(Locale.ROOT, "%.3f", s.getSeconds()))
+                    .append(", \"throughput\": ").append(String.format(Locale.ROOT, "%.1f", s.getThroughput()))
+                    .append(", \"errors\": ").append(s.getErrors())
+                    .append(", \"errorRate\": ").append(String.format(Locale.ROOT, "%.5f", s.getErrorRate()))
+                    .append(", \"p50\": ").append(String.format(Locale.ROOT, "%.3f", millis(s, 50)))
+                    .append(", \"p99\": ").append(String.format(Locale.ROOT, "%.3f", millis(s, 99)))
+                    .append(", \"p999\": ").append(String.format(Locale.ROOT, "%.3f", millis(s, 99.9)))
+                    .append(", \"max\": ").append(String.format(Locale.ROOT, "%.3f", s.getLatency().getMaxValue() / 1000.0))
+                    .append("}");
+            separator = ",\n";
+            //The full distribution in the format the HdrHistogram plotter reads, in milliseconds
+            try (PrintStream ps = new PrintStream(Files.newOutputStream(output.resolve(entry.getKey().name().toLowerCase() + ".hgrm")),
+                    false, StandardCharsets.UTF_8.name())) {
+                s.getLatency().outputPercentileDistribution(ps, 1000.0);
+            }
+        }
+        sb.append("\n  }\n}\n");
+        Files.write(output.resolve("summary.json"), sb.toString().getBytes(StandardCharsets.UTF_8));
+        System.out.println("\nResults written to " + output.toAbsolutePath());
+    }
+
+    private static double millis(PhaseStats stats, double percentile) {
+        return stats.getLatency().getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private String runnerArgument(String name, String defaultValue) {
+        for (String arg : runnerArguments) {
+            if (arg.startsWith("-" + name + "=")) {
+                return arg.substring(name.length() + 2);
+            }
+        }
+        return defaultValue;
+    }
+
+    private void waitForPort(int port) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        while (System.nanoTime() < deadline) {
+            try (Socket ignored = new Socket("localhost", port)) {
+                return;
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        throw new IllegalStateException("Nothing is listening on port " + port);
+    }
+
+    private void shutdown(int shutdownPort) {
+        try (Socket socket = new Socket("localhost", shutdownPort); OutputStream os = socket.getOutputStream()) {
+            os.write("SHUTDOWN".getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException e) {
+            System.err.println("Unable to shut down the runner: " + e);
+        }
+    }
+
+    private static class Endpoint {
+        private final String path;
+        private final int expectedStatus;
+
+        private Endpoint(String path, int expectedStatus) {
+            this.path = path;
+            this.expectedStatus = expectedStatus;
+        }
+    }
+}
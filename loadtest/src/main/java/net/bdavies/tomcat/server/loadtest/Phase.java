@@ -0,0 +1,21 @@
+package net.bdavies.tomcat.server.loadtest;
+
+/**
+ * Where a request fell relative to the scheduled reloads
+ *
+ * @author ben.davies
+ */
+public enum Phase {
+    /**
+     * No reload running or recently finished
+     */
+    STEADY,
+    /**
+     * The context was stopping or starting while the request was in flight
+     */
+    RELOADING,
+    /**
+     * The request started within the recovery window after a reload, while the new classes are still cold
+     */
+    RECOVERING
+}
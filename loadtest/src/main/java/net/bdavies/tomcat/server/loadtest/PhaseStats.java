@@ -0,0 +1,69 @@
+package net.bdavies.tomcat.server.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SynchronizedHistogram;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and errors of the requests in one phase
+ *
+ * @author ben.davies
+ */
+public class PhaseStats {
+    private static final long HIGHEST_TRACKABLE = TimeUnit.MINUTES.toMicros(1);
+
+    private final Histogram latency = new SynchronizedHistogram(HIGHEST_TRACKABLE, 3);
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final Map<String, LongAdder> errorsByCause = new ConcurrentHashMap<>();
+    private final LongAdder nanosInPhase = new LongAdder();
+
+    /**
+     * @param latencyMicros time from when the request was due to be sent until its response was read
+     * @param error         why the request failed or null if it succeeded
+     */
+    public void record(long latencyMicros, String error) {
+        requests.increment();
+        latency.recordValue(Math.min(latencyMicros, HIGHEST_TRACKABLE));
+        if (error != null) {
+            errors.increment();
+            errorsByCause.computeIfAbsent(error, e -> new LongAdder()).increment();
+        }
+    }
+
+    public void addTime(long nanos) {
+        nanosInPhase.add(nanos);
+    }
+
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public Map<String, LongAdder> getErrorsByCause() {
+        return errorsByCause;
+    }
+
+    public double getSeconds() {
+        return nanosInPhase.sum() / 1e9;
+    }
+
+    public double getErrorRate() {
+        return getRequests() == 0 ? 0 : (double) getErrors() / getRequests();
+    }
+
+    public double getThroughput() {
+        return getSeconds() == 0 ? 0 : getRequests() / getSeconds();
+    }
+}
@@ -0,0 +1,121 @@
+package net.bdavies.tomcat.server.loadtest;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reloads every webapp context on a schedule and keeps track of which phase the runner is in
+ *
+ * The contexts are reloaded through the WebModule MBeans Tomcat registers, the same reload the file watcher
+ * triggers, so the load test doesn't need a handle on the runner's internals.
+ *
+ * @author ben.davies
+ */
+public class ReloadScheduler implements Runnable {
+    private final long intervalNanos;
+    private final long recoveryNanos;
+    private final Map<Phase, PhaseStats> stats;
+    private final List<Long> reloadMillis = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong reloads = new AtomicLong();
+    private final Thread thread = new Thread(this, "LoadTest-Reloader");
+    private volatile Phase phase = Phase.STEADY;
+    private volatile boolean running;
+    private long phaseStart;
+
+    /**
+     * @param interval time between the start of one reload and the next
+     * @param recovery how long after a reload finishes requests still count as recovering
+     * @param unit     the unit of the interval and recovery window
+     * @param stats    the stats of each phase, the time spent in a phase is added to them
+     */
+    public ReloadScheduler(long interval, long recovery, TimeUnit unit, Map<Phase, PhaseStats> stats) {
+        this.intervalNanos = unit.toNanos(interval);
+        this.recoveryNanos = unit.toNanos(recovery);
+        this.stats = stats;
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        phaseStart = System.nanoTime();
+        thread.start();
+    }
+
+    public void stop() throws InterruptedException {
+        //A reload in progress is left to finish, interrupting it would break the context
+        running = false;
+        thread.join();
+        synchronized (this) {
+            transition(Phase.STEADY);
+        }
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * Number of reloads started so far, a request that sees this change while it is in flight overlapped a reload
+     */
+    public long getReloads() {
+        return reloads.get();
+    }
+
+    public List<Long> getReloadMillis() {
+        return reloadMillis;
+    }
+
+    @Override
+    public void run() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            long next = System.nanoTime() + intervalNanos;
+            while (running) {
+                sleepUntil(next);
+                if (!running) return;
+                next += intervalNanos;
+                synchronized (this) {
+                    transition(Phase.RELOADING);
+                    reloads.incrementAndGet();
+                }
+                long start = System.nanoTime();
+                for (ObjectName module : server.queryNames(new ObjectName("Catalina:j2eeType=WebModule,*"), null)) {
+                    server.invoke(module, "reload", null, null);
+                }
+                reloadMillis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                synchronized (this) {
+                    transition(Phase.RECOVERING);
+                }
+                sleepUntil(Math.min(next, System.nanoTime() + recoveryNanos));
+                synchronized (this) {
+                    transition(Phase.STEADY);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Unable to reload the contexts: " + e);
+        }
+    }
+
+    private void transition(Phase next) {
+        long now = System.nanoTime();
+        stats.get(phase).addTime(now - phaseStart);
+        phaseStart = now;
+        phase = next;
+    }
+
+    private void sleepUntil(long deadline) throws InterruptedException {
+        long remaining;
+        while (running && (remaining = deadline - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(100)));
+        }
+    }
+}
@@ -19,5 +19,8 @@ public class EmbeddedTomcatPlugin implements Plugin<Project> {
 
     private void configureTasks(Project project) {
         TomcatRunTask runTask = project.getTasks().create("tomcatRun", TomcatRunTask.class);
+        //The other webapps have to be compiled before they are hosted
+        project.afterEvaluate(p -> p.getExtensions().getByType(TomcatSettings.class).getWebApps().values()
+                .forEach(path -> runTask.dependsOn(path + ":classes")));
     }
 }
@@ -15,14 +15,18 @@ import org.gradle.internal.os.OperatingSystem;
 import org.gradle.jvm.toolchain.JavaLauncher;
 import org.gradle.jvm.toolchain.internal.DefaultToolchainJavaLauncher;
 import org.gradle.jvm.toolchain.internal.JavaToolchain;
+import org.gradle.process.ExecResult;
 import org.gradle.process.internal.ExecAction;
 
 import java.io.*;
+import java.math.BigInteger;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
@@ -36,6 +40,11 @@ import java.util.zip.ZipOutputStream;
  */
 @Slf4j
 public class TomcatRunTask extends Exec {
+    /**
+     * The exit code of the runner when it wants to be started again, the same as TomcatRunner.RESTART_EXIT_CODE
+     */
+    private static final int RESTART_EXIT_CODE = 75;
+
     private final Property<JavaLauncher> javaLauncherProperty;
 
     public TomcatRunTask() {
@@ -78,9 +87,20 @@ public class TomcatRunTask extends Exec {
 
         val webAppDir = this.getProject().getProjectDir();
 
-        val mainCp = Stream.concat(depLocations.stream(), mainSourceSet.getRuntimeClasspath().getFiles().stream())
-                .collect(Collectors.toList())
-                .stream().map(File::getAbsolutePath).collect(Collectors.joining(System.getProperty("path.separator")));
+        val webApps = getProject().getBuildDir().toPath().resolve("webApps.properties").toFile();
+        val webAppsClasspath = writeWebApps(settings, webApps);
+
+        //The other webapps' runtime classpaths are mounted in their own contexts rather than shared through this one
+        val classpath = Stream.concat(depLocations.stream(), mainSourceSet.getRuntimeClasspath().getFiles().stream())
+                .distinct()
+                .collect(Collectors.toList());
+        if (settings.isClassDataSharing()) {
+            //The archive only holds the jars, it can be used as long as they come first on the classpath, which gives
+            //them precedence over the project's classes and resources
+            classpath.sort(Comparator.comparing(file -> !file.isFile()));
+        }
+        val mainCp = classpath.stream().map(File::getAbsolutePath)
+                .collect(Collectors.joining(System.getProperty("path.separator")));
 
 
         //Add jars to skip
@@ -88,6 +108,11 @@ public class TomcatRunTask extends Exec {
         List<String> args = new LinkedList<>();
         args.add("-Dname=GradleTomcatRunner");
         args.add("-javaagent:" + lombokFile.getAbsolutePath() + "=EJC");
+        if (settings.isDetectClassLoaderLeaks()) {
+            //Lets the class loader leak detector read ThreadLocals, shutdown hooks and JDBC drivers
+            args.add("--add-opens=java.base/java.lang=ALL-UNNAMED");
+            args.add("--add-opens=java.sql/java.sql=ALL-UNNAMED");
+        }
         args.add("net.bdavies.tomcat.server.TomcatRunner");
 
         val f = getProject().getBuildDir().toPath().resolve("cmplCp.txt").toFile();
@@ -96,8 +121,9 @@ public class TomcatRunTask extends Exec {
         val runtimeCp = getProject().getBuildDir().toPath().resolve("runtimeCp.txt").toFile();
         FileUtils.write(runtimeCp, mainSourceSet.getRuntimeClasspath().getAsPath(), StandardCharsets.UTF_8);
 
-        List<String> jarsToSkip = getJarsToSkip(Stream.concat(depLocations.stream(),
-                        mainSourceSet.getRuntimeClasspath().getFiles().stream())
+        List<String> jarsToSkip = getJarsToSkip(Stream.concat(Stream.concat(depLocations.stream(),
+                        mainSourceSet.getRuntimeClasspath().getFiles().stream()), webAppsClasspath.stream())
+                .distinct()
                 .collect(Collectors.toList()));
         val jToSkip = getProject().getBuildDir().toPath().resolve("jarsToSkip.txt").toFile();
         FileUtils.write(jToSkip, String.join(",", jarsToSkip), StandardCharsets.UTF_8);
@@ -105,6 +131,13 @@ public class TomcatRunTask extends Exec {
         val jToScan = getProject().getBuildDir().toPath().resolve("jarsToScan.txt").toFile();
         FileUtils.write(jToScan, String.join(",", settings.getJarsToScan()), StandardCharsets.UTF_8);
 
+        //One bundle per line as name=file,file
+        val bundles = getProject().getBuildDir().toPath().resolve("bundles.txt").toFile();
+        FileUtils.write(bundles, settings.getBundles().entrySet().stream()
+                .map(e -> e.getKey() + "=" + e.getValue().stream().map(File::getAbsolutePath)
+                        .collect(Collectors.joining(",")))
+                .collect(Collectors.joining("\n")), StandardCharsets.UTF_8);
+
         //Set the program args
         addArgument(args, "webApp", webAppDir);
         addArgument(args, "webAppResources", settings.getWebAppResources());
@@ -117,21 +150,214 @@ public class TomcatRunTask extends Exec {
         addArgument(args, "applicationProperties", settings.getApplicationProperties() == null ? getProject().file("app.properties") : settings.getApplicationProperties());
         addArgument(args, "port", settings.getPort());
         addArgument(args, "shutdownPort", settings.getShutdownPort());
+        addArgument(args, "liveReloadHeartbeatInterval", settings.getLiveReloadHeartbeatInterval());
+        addArgument(args, "injectLiveReload", settings.isInjectLiveReload());
+        addArgument(args, "buildDirectory", getProject().getBuildDir());
+        if (!settings.getPrecompressedResources().isEmpty()) {
+            addArgument(args, "precompressedResources", settings.getPrecompressedResources());
+        }
+        addArgument(args, "sendfileSize", settings.getSendfileSize());
+        if (!settings.getBundles().isEmpty()) {
+            addArgument(args, "bundles", bundles);
+        }
+        addArgument(args, "minifyBundles", settings.isMinifyBundles());
+        addArgument(args, "protocol", settings.getProtocol());
+        addArgument(args, "minSpareThreads", settings.getMinSpareThreads());
+        addArgument(args, "maxThreads", settings.getMaxThreads());
+        addArgument(args, "maxQueueSize", settings.getMaxQueueSize());
+        addArgument(args, "acceptCount", settings.getAcceptCount());
+        addArgument(args, "maxConnections", settings.getMaxConnections());
+        addArgument(args, "keepAliveTimeout", settings.getKeepAliveTimeout());
+        addArgument(args, "maxKeepAliveRequests", settings.getMaxKeepAliveRequests());
+        addArgument(args, "socketReceiveBufferSize", settings.getSocketReceiveBufferSize());
+        addArgument(args, "socketSendBufferSize", settings.getSocketSendBufferSize());
+        addArgument(args, "compression", settings.getCompression());
+        addArgument(args, "compressionMinSize", settings.getCompressionMinSize());
+        if (!settings.getCompressibleMimeTypes().isEmpty()) {
+            addArgument(args, "compressibleMimeTypes", settings.getCompressibleMimeTypes());
+        }
+        addArgument(args, "http2", settings.isHttp2());
+        addArgument(args, "httpsPort", settings.getHttpsPort());
+        addArgument(args, "http2MaxConcurrentStreams", settings.getHttp2MaxConcurrentStreams());
+        addArgument(args, "http2MaxConcurrentStreamExecution", settings.getHttp2MaxConcurrentStreamExecution());
+        addArgument(args, "http2InitialWindowSize", settings.getHttp2InitialWindowSize());
+        addArgument(args, "clusterNodes", settings.getClusterNodes());
+        addArgument(args, "loadBalancerPolicy", settings.getLoadBalancerPolicy());
+        addArgument(args, "throughputReportInterval", settings.getThroughputReportInterval());
+        addArgument(args, "mappedSessions", settings.isMappedSessions());
+        addArgument(args, "watchJsps", settings.isWatchJsps());
+        addArgument(args, "precompileJsps", settings.isPrecompileJsps());
+        addArgument(args, "jspPrecompileThreads", settings.getJspPrecompileThreads());
+        if (!settings.getPropertiesRequiringReload().isEmpty()) {
+            addArgument(args, "propertiesRequiringReload", settings.getPropertiesRequiringReload());
+        }
+        addArgument(args, "metricsPort", settings.getMetricsPort());
+        addArgument(args, "slowRequestThreshold", settings.getSlowRequestThreshold());
+        addArgument(args, "slowRequestSampleInterval", settings.getSlowRequestSampleInterval());
+        addArgument(args, "flightRecording", settings.isFlightRecording());
+        addArgument(args, "detectClassLoaderLeaks", settings.isDetectClassLoaderLeaks());
+        addArgument(args, "metaspaceBudget", settings.getMetaspaceBudget());
+        addArgument(args, "metaspaceBudgetAction", settings.getMetaspaceBudgetAction());
+        addArgument(args, "fastStart", settings.isFastStart());
+        if (!settings.getWebApps().isEmpty()) {
+            addArgument(args, "webApps", webApps);
+        }
+        if (settings.isVirtualThreads()) {
+            val javaVersion = getJavaVersion();
+            if (javaVersion == -1 || javaVersion >= 21) {
+                addArgument(args, "virtualThreads", true);
+            } else {
+                log.warn("Virtual threads need a JDK 21 launcher but the launcher is JDK {} so the thread pool " +
+                        "will be used", javaVersion);
+            }
+        }
         if (!settings.getContextPath().isEmpty()) {
             addArgument(args, "contextPath", settings.getContextPath());
         }
         addArgument(args, "sourceCompatability", sourceCompat.toString());
         addArgument(args, "targetCompatability", targetCompat.toString());
 
-        ExecAction javaExecAction = getExecActionFactory().newExecAction();
-        javaExecAction.args(args);
-        javaExecAction.setArgs(args);
         System.out.println("Setting the CLASSPATH to " + mainCp);
-        javaExecAction.setEnvironment(Map.of("CLASSPATH", mainCp));
-        javaExecAction.setExecutable(getJavaExecutable());
-        val result = javaExecAction.execute();
-        System.out.println("Finished executing: java " +
-                String.join(" ", args) + " with code: " + result.getExitValue());
+        ExecResult result;
+        do {
+            //Worked out before every start, a restart is when the class list of the first run is dumped
+            List<String> launchArgs = new ArrayList<>(args);
+            if (settings.isClassDataSharing()) {
+                launchArgs.addAll(0, getClassDataSharingArgs(classpath));
+            }
+            ExecAction javaExecAction = getExecActionFactory().newExecAction();
+            javaExecAction.setArgs(launchArgs);
+            javaExecAction.setEnvironment(Map.of("CLASSPATH", mainCp));
+            javaExecAction.setExecutable(getJavaExecutable());
+            javaExecAction.setIgnoreExitValue(true);
+            result = javaExecAction.execute();
+            System.out.println("Finished executing: java " +
+                    String.join(" ", launchArgs) + " with code: " + result.getExitValue());
+            if (result.getExitValue() == RESTART_EXIT_CODE) {
+                System.out.println("The runner asked to be restarted, starting it again");
+            }
+        } while (result.getExitValue() == RESTART_EXIT_CODE);
+        result.assertNormalExitValue();
+    }
+
+    /**
+     * Describe the other projects that are hosted alongside this one as webapp.N.name=value properties
+     *
+     * @param settings the tomcat settings
+     * @param file     the properties file to write
+     * @return the runtime classpath of the other webapps, so their jars are left out of the jar scan too
+     */
+    private Set<File> writeWebApps(TomcatSettings settings, File file) throws IOException {
+        val properties = new Properties();
+        Set<File> runtimeClasspath = new LinkedHashSet<>();
+        int i = 0;
+        for (val webApp : settings.getWebApps().entrySet()) {
+            val project = getProject().project(webApp.getValue());
+            val sourceSet = Objects.requireNonNull(project.getExtensions().findByType(JavaPluginExtension.class),
+                    webApp.getValue() + " is not a java project").getSourceSets().getByName("main");
+            val prefix = "webapp." + i + ".";
+            val cp = getProject().getBuildDir().toPath().resolve("cmplCp-" + i + ".txt").toFile();
+            FileUtils.write(cp, sourceSet.getCompileClasspath().getAsPath(), StandardCharsets.UTF_8);
+            val runtimeCp = getProject().getBuildDir().toPath().resolve("runtimeCp-" + i + ".txt").toFile();
+            FileUtils.write(runtimeCp, sourceSet.getRuntimeClasspath().getAsPath(), StandardCharsets.UTF_8);
+            properties.setProperty(prefix + "webApp", project.getProjectDir().getAbsolutePath());
+            properties.setProperty(prefix + "contextPath", webApp.getKey());
+            properties.setProperty(prefix + "classesDir", sourceSet.getRuntimeClasspath().getFiles().stream()
+                    .findFirst().orElse(new File("")).getAbsolutePath());
+            properties.setProperty(prefix + "compileClasspath", cp.getAbsolutePath());
+            properties.setProperty(prefix + "runtimeClasspath", runtimeCp.getAbsolutePath());
+            properties.setProperty(prefix + "srcDirectories", sourceSet.getAllSource().getSourceDirectories()
+                    .getFiles().stream().map(File::getAbsolutePath).collect(Collectors.joining(",")));
+            val otherSettings = project.getExtensions().findByType(TomcatSettings.class);
+            if (otherSettings != null) {
+                properties.setProperty(prefix + "webAppResources", otherSettings.getWebAppResources().stream()
+                        .map(File::getAbsolutePath).collect(Collectors.joining(",")));
+            }
+            properties.setProperty(prefix + "applicationProperties",
+                    otherSettings == null || otherSettings.getApplicationProperties() == null
+                            ? project.file("app.properties").getAbsolutePath()
+                            : otherSettings.getApplicationProperties().getAbsolutePath());
+            runtimeClasspath.addAll(sourceSet.getRuntimeClasspath().getFiles());
+            i++;
+        }
+        try (OutputStream os = new FileOutputStream(file)) {
+            properties.store(os, "Webapps hosted alongside " + getProject().getPath());
+        }
+        return runtimeClasspath;
+    }
+
+    /**
+     * Get the JVM arguments for a static AppCDS archive of the runner's jars, so the runs after the first map the
+     * classes of Tomcat, Jasper, ECJ and the rest instead of loading and verifying them again
+     *
+     * The first run records the classes it loads to a class list. Before the next start the list is dumped to an
+     * archive with only the jars on the classpath, as the JVM refuses to archive from a classpath with a non-empty
+     * directory, and the directories that come after the jars are loaded as usual. The files are named after a
+     * hash of the JDK and the path, size and modification time of every jar, so a changed jar leads to a new list
+     * and archive and the old ones are removed.
+     *
+     * @param classpath the runner's classpath, jars first
+     * @return the arguments, empty when the archive can't be used
+     */
+    private List<String> getClassDataSharingArgs(List<File> classpath) throws IOException, NoSuchAlgorithmException {
+        int javaVersion = getJavaVersion();
+        //Application class data sharing is in OpenJDK since 10
+        if (javaVersion < 11) {
+            log.info("Class data sharing needs a JDK 11 or newer launcher so the runner will start without it");
+            return Collections.emptyList();
+        }
+        val jars = classpath.stream().filter(File::isFile).map(File::getAbsolutePath)
+                .collect(Collectors.joining(System.getProperty("path.separator")));
+        if (jars.isEmpty()) return Collections.emptyList();
+        val digest = MessageDigest.getInstance("SHA-256");
+        val java = new File(getJavaExecutable());
+        digest.update((java.getAbsolutePath() + "|" + java.lastModified() + "|" + javaVersion + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        //Only the jars are archived, the directories change with every build
+        classpath.stream().filter(File::isFile).forEach(jar -> digest.update((jar.getAbsolutePath() + "|"
+                + jar.length() + "|" + jar.lastModified() + "\n").getBytes(StandardCharsets.UTF_8)));
+        val name = "runner-" + String.format("%064x", new BigInteger(1, digest.digest())).substring(0, 16);
+
+        val directory = getProject().getBuildDir().toPath().resolve("tomcat-cds").toFile();
+        val archive = new File(directory, name + ".jsa");
+        val classList = new File(directory, name + ".classlist");
+        val failed = new File(directory, name + ".failed");
+        if (archive.isFile()) {
+            return Collections.singletonList("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+        }
+        if (failed.isFile()) return Collections.emptyList();
+        FileUtils.forceMkdir(directory);
+        val stale = directory.listFiles((dir, file) -> !file.startsWith(name + "."));
+        if (stale != null) {
+            for (val file : stale) {
+                FileUtils.deleteQuietly(file);
+            }
+        }
+        if (classList.length() > 0) {
+            val output = new File(directory, name + ".log");
+            log.info("Dumping the class data sharing archive {}, the output is in {}", archive, output);
+            int exitValue;
+            try (OutputStream os = new FileOutputStream(output)) {
+                ExecAction dump = getExecActionFactory().newExecAction();
+                dump.setExecutable(getJavaExecutable());
+                dump.setArgs(Arrays.asList("-Xshare:dump", "-XX:SharedClassListFile=" + classList.getAbsolutePath(),
+                        "-XX:SharedArchiveFile=" + archive.getAbsolutePath(), "-cp", jars));
+                dump.setStandardOutput(os);
+                dump.setErrorOutput(os);
+                dump.setIgnoreExitValue(true);
+                exitValue = dump.execute().getExitValue();
+            }
+            if (exitValue == 0 && archive.isFile()) {
+                return Collections.singletonList("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+            }
+            //Not tried again until the classpath or the JDK changes
+            log.warn("Unable to dump the class data sharing archive, see {}", output);
+            FileUtils.deleteQuietly(archive);
+            FileUtils.touch(failed);
+            return Collections.emptyList();
+        }
+        log.info("The runner will record the classes it loads to {} for its class data sharing archive", classList);
+        return Collections.singletonList("-XX:DumpLoadedClassList=" + classList.getAbsolutePath());
     }
 
     private List<String> getJarsToSkip(List<File> files) {
@@ -161,6 +387,21 @@ public class TomcatRunTask extends Exec {
         return Jvm.current().getJavaExecutable().getAbsolutePath();
     }
 
+    /**
+     * Get the major version of the JDK the runner will be launched with
+     *
+     * @return the version or -1 if a custom executable is set and the version is unknown
+     */
+    private int getJavaVersion() {
+        if (javaLauncherProperty.isPresent()) {
+            return javaLauncherProperty.get().getMetadata().getLanguageVersion().asInt();
+        }
+        if (getExecutable() != null) {
+            return -1;
+        }
+        return Integer.parseInt(Jvm.current().getJavaVersion().getMajorVersion());
+    }
+
 //    private String getJarExecutable() {
 //        if (javaLauncherProperty.isPresent()) {
 //            return javaLauncherProperty.get().getMetadata()
@@ -6,8 +6,10 @@ import org.gradle.api.JavaVersion;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author ben.davies
@@ -21,4 +23,47 @@ public class TomcatSettings {
     private int shutdownPort = 8082;
     private String contextPath = "";
     private List<String> jarsToScan = new ArrayList<>();
+    private int liveReloadHeartbeatInterval = 30;
+    private boolean injectLiveReload = true;
+    private List<File> precompressedResources = new LinkedList<>();
+    private int sendfileSize = 48;
+    private Map<String, List<File>> bundles = new LinkedHashMap<>();
+    private boolean minifyBundles = true;
+    private String protocol = "nio";
+    private int minSpareThreads = 10;
+    private int maxThreads = 200;
+    private int maxQueueSize = Integer.MAX_VALUE;
+    private int acceptCount = 100;
+    private int maxConnections = 10000;
+    private int keepAliveTimeout = 20000;
+    private int maxKeepAliveRequests = 100;
+    private int socketReceiveBufferSize = -1;
+    private int socketSendBufferSize = -1;
+    private String compression = "off";
+    private int compressionMinSize = 2048;
+    private List<String> compressibleMimeTypes = new ArrayList<>();
+    private boolean virtualThreads = false;
+    private boolean http2 = false;
+    private int httpsPort = -1;
+    private int http2MaxConcurrentStreams = 100;
+    private int http2MaxConcurrentStreamExecution = 20;
+    private int http2InitialWindowSize = 65535;
+    private Map<String, String> webApps = new LinkedHashMap<>();
+    private int clusterNodes = 1;
+    private String loadBalancerPolicy = "round-robin";
+    private int throughputReportInterval = 10;
+    private boolean mappedSessions = true;
+    private boolean watchJsps = true;
+    private boolean precompileJsps = true;
+    private int jspPrecompileThreads = 0;
+    private List<String> propertiesRequiringReload = new ArrayList<>();
+    private int metricsPort = -1;
+    private int slowRequestThreshold = -1;
+    private int slowRequestSampleInterval = 20;
+    private boolean flightRecording = false;
+    private boolean detectClassLoaderLeaks = false;
+    private int metaspaceBudget = -1;
+    private String metaspaceBudgetAction = "warn";
+    private boolean classDataSharing = false;
+    private boolean fastStart = false;
 }
@@ -0,0 +1,116 @@
+package net.bdavies.tomcat.server;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.catalina.core.StandardContext;
+import org.apache.tomcat.util.descriptor.web.ContextEnvironment;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Applies changes to the app.properties of a webapp while it runs
+ *
+ * The file is compared with what was applied last and only the entries that were added, changed or removed are
+ * touched. They are replaced in the naming resources of each context, Tomcat's naming context listener rebinds
+ * them in java:comp/env so the next lookup sees the new value. If one of the changed entries is only read when
+ * the webapp starts the contexts are reloaded instead.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+public class ApplicationPropertiesUpdater {
+    private final WebAppData app;
+    private final List<StandardContext> contexts;
+    private final Set<String> propertiesRequiringReload;
+    private Properties applied;
+
+    /**
+     * @param app                       the webapp the properties belong to
+     * @param contexts                  the contexts running the webapp, one per node
+     * @param propertiesRequiringReload the names of the properties that need a reload when they change
+     */
+    public ApplicationPropertiesUpdater(WebAppData app, List<StandardContext> contexts,
+                                        Collection<String> propertiesRequiringReload) {
+        this.app = app;
+        this.contexts = contexts;
+        this.propertiesRequiringReload = new HashSet<>(propertiesRequiringReload);
+        this.applied = load(app.getApplicationPropertiesFile());
+    }
+
+    /**
+     * Create the environment entry of a property
+     *
+     * @param name  the name in java:comp/env
+     * @param value the value
+     * @return the entry
+     */
+    public static ContextEnvironment toEnvironment(Object name, Object value) {
+        ContextEnvironment environment = new ContextEnvironment();
+        environment.setName(String.valueOf(name));
+        environment.setType(value.getClass().getCanonicalName());
+        environment.setValue(String.valueOf(value));
+        return environment;
+    }
+
+    /**
+     * Called by the file watcher when the properties file is created, modified or deleted
+     *
+     * @param file the properties file
+     * @return true if anything changed
+     */
+    public synchronized boolean onChange(Path file) {
+        val updated = load(file.toFile());
+        Set<String> names = new TreeSet<>(applied.stringPropertyNames());
+        names.addAll(updated.stringPropertyNames());
+        names.removeIf(n -> Objects.equals(applied.getProperty(n), updated.getProperty(n)));
+        applied = updated;
+        if (names.isEmpty()) return false;
+
+        for (val name : names) {
+            val value = updated.getProperty(name);
+            if (value == null) {
+                app.getApplicationProperties().remove(name);
+            } else {
+                app.getApplicationProperties().setProperty(name, value);
+            }
+        }
+        //The naming resources are what a reloaded context is built from so they are always updated
+        contexts.forEach(context -> names.forEach(name -> {
+            val resources = context.getNamingResources();
+            if (resources.findEnvironment(name) != null) {
+                resources.removeEnvironment(name);
+            }
+            val value = updated.getProperty(name);
+            if (value != null) {
+                resources.addEnvironment(toEnvironment(name, value));
+            }
+        }));
+
+        val cName = app.getServletPath().isEmpty() ? "ROOT" : app.getServletPath();
+        val needsReload = names.stream().filter(propertiesRequiringReload::contains).findFirst();
+        if (needsReload.isPresent()) {
+            log.info("Reloading context [{}] because {} changed", cName, needsReload.get());
+            contexts.parallelStream().forEach(StandardContext::reload);
+            log.info("Context [{}] has been reloaded", cName);
+        } else {
+            log.info("Applied {} to context [{}] without a reload", names, cName);
+        }
+        return true;
+    }
+
+    private Properties load(File file) {
+        val properties = new Properties();
+        if (file == null || !file.isFile()) return properties;
+        try (InputStream is = new FileInputStream(file)) {
+            properties.load(is);
+        } catch (IOException e) {
+            log.error("Could not read file: {}", file);
+        }
+        return properties;
+    }
+}
@@ -35,10 +35,54 @@ public class ArgParser {
         getFile("classesDir").ifPresent(sd::setCompiledLocation);
         getArgument("contextPath").ifPresent(sd::setServletPath);
         getProperties("applicationProperties").ifPresent(sd::setApplicationProperties);
+        getFile("applicationProperties").ifPresent(sd::setApplicationPropertiesFile);
         getFiles("srcDirectories").ifPresent(sd::setSrcDirectories);
         getFiles("webAppResources").ifPresent(sd::setWebAppResources);
         getInteger("port").ifPresent(sd::setPort);
         getInteger("shutdownPort").ifPresent(sd::setShutdownPort);
+        getInteger("liveReloadHeartbeatInterval").ifPresent(sd::setLiveReloadHeartbeatInterval);
+        getBoolean("injectLiveReload").ifPresent(sd::setInjectLiveReload);
+        getFile("buildDirectory").ifPresent(sd::setBuildDirectory);
+        getFiles("precompressedResources").ifPresent(sd::setPrecompressedResources);
+        getInteger("sendfileSize").ifPresent(sd::setSendfileSize);
+        getBundles("bundles").ifPresent(sd::setBundles);
+        getBoolean("minifyBundles").ifPresent(sd::setMinifyBundles);
+        getArgument("protocol").ifPresent(sd::setProtocol);
+        getInteger("minSpareThreads").ifPresent(sd::setMinSpareThreads);
+        getInteger("maxThreads").ifPresent(sd::setMaxThreads);
+        getInteger("maxQueueSize").ifPresent(sd::setMaxQueueSize);
+        getInteger("acceptCount").ifPresent(sd::setAcceptCount);
+        getInteger("maxConnections").ifPresent(sd::setMaxConnections);
+        getInteger("keepAliveTimeout").ifPresent(sd::setKeepAliveTimeout);
+        getInteger("maxKeepAliveRequests").ifPresent(sd::setMaxKeepAliveRequests);
+        getInteger("socketReceiveBufferSize").ifPresent(sd::setSocketReceiveBufferSize);
+        getInteger("socketSendBufferSize").ifPresent(sd::setSocketSendBufferSize);
+        getArgument("compression").ifPresent(sd::setCompression);
+        getInteger("compressionMinSize").ifPresent(sd::setCompressionMinSize);
+        getArgumentArray("compressibleMimeTypes").map(Arrays::asList).ifPresent(sd::setCompressibleMimeTypes);
+        getBoolean("virtualThreads").ifPresent(sd::setVirtualThreads);
+        getBoolean("http2").ifPresent(sd::setHttp2);
+        getInteger("httpsPort").ifPresent(sd::setHttpsPort);
+        getInteger("http2MaxConcurrentStreams").ifPresent(sd::setHttp2MaxConcurrentStreams);
+        getInteger("http2MaxConcurrentStreamExecution").ifPresent(sd::setHttp2MaxConcurrentStreamExecution);
+        getInteger("http2InitialWindowSize").ifPresent(sd::setHttp2InitialWindowSize);
+        getWebApps("webApps").ifPresent(sd::setAdditionalWebApps);
+        getInteger("clusterNodes").ifPresent(sd::setClusterNodes);
+        getArgument("loadBalancerPolicy").ifPresent(sd::setLoadBalancerPolicy);
+        getInteger("throughputReportInterval").ifPresent(sd::setThroughputReportInterval);
+        getBoolean("mappedSessions").ifPresent(sd::setMappedSessions);
+        getBoolean("watchJsps").ifPresent(sd::setWatchJsps);
+        getBoolean("precompileJsps").ifPresent(sd::setPrecompileJsps);
+        getInteger("jspPrecompileThreads").ifPresent(sd::setJspPrecompileThreads);
+        getArgumentArray("propertiesRequiringReload").map(Arrays::asList).ifPresent(sd::setPropertiesRequiringReload);
+        getInteger("metricsPort").ifPresent(sd::setMetricsPort);
+        getInteger("slowRequestThreshold").ifPresent(sd::setSlowRequestThreshold);
+        getInteger("slowRequestSampleInterval").ifPresent(sd::setSlowRequestSampleInterval);
+        getBoolean("flightRecording").ifPresent(sd::setFlightRecording);
+        getBoolean("detectClassLoaderLeaks").ifPresent(sd::setDetectClassLoaderLeaks);
+        getInteger("metaspaceBudget").ifPresent(sd::setMetaspaceBudget);
+        getArgument("metaspaceBudgetAction").ifPresent(sd::setMetaspaceBudgetAction);
+        getBoolean("fastStart").ifPresent(sd::setFastStart);
         getArgument("sourceCompatability").ifPresent(sd::setSourceCompatability);
         getArgument("targetCompatability").ifPresent(sd::setTargetCompatability);
         readFileFromArgument("jarsToSkip").ifPresent(sd::setJarsToSkip);
@@ -51,21 +95,71 @@ public class ArgParser {
     }
 
     private Optional<String> readFileFromArgument(String key) {
-        return getFile(key).map(f -> {
-           StringBuilder sb = new StringBuilder();
-            try {
-                BufferedReader reader = new BufferedReader(new FileReader(f));
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    sb.append(line).append("\n");
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
+        return getFile(key).map(this::readFile);
+    }
+
+    private String readFile(File f) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(f));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                sb.append(line).append("\n");
             }
-            return sb.toString();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Read the additional webapps from a properties file of webapp.N.name=value entries, the names are the
+     * same as the arguments for the primary webapp
+     */
+    private Optional<List<WebAppData>> getWebApps(String key) {
+        return getProperties(key).map(p -> {
+            Map<Integer, Map<String, String>> byIndex = new TreeMap<>();
+            p.stringPropertyNames().forEach(name -> {
+                val tokens = name.split("\\.", 3);
+                if (tokens.length != 3 || !tokens[0].equals("webapp")) {
+                    log.warn("Ignoring webapp property {}", name);
+                    return;
+                }
+                byIndex.computeIfAbsent(Integer.parseInt(tokens[1]), i -> new HashMap<>())
+                        .put(tokens[2], p.getProperty(name));
+            });
+            List<WebAppData> webApps = new LinkedList<>();
+            byIndex.forEach((index, values) -> {
+                if (!values.containsKey("webApp")) {
+                    throw new ArgumentNotPresentException("webapp." + index + ".webApp");
+                }
+                val wd = new DefaultWebAppData(argumentToFile(values.get("webApp")));
+                Optional.ofNullable(values.get("contextPath")).ifPresent(wd::setServletPath);
+                Optional.ofNullable(values.get("classesDir")).map(this::argumentToFile).ifPresent(wd::setCompiledLocation);
+                Optional.ofNullable(values.get("compileClasspath")).map(this::argumentToFile).map(this::readFile)
+                        .ifPresent(wd::setCompileClasspath);
+                Optional.ofNullable(values.get("runtimeClasspath")).map(this::argumentToFile).map(this::readFile)
+                        .map(cp -> Arrays.stream(cp.trim().split(File.pathSeparator)).filter(s -> !s.isEmpty())
+                                .map(File::new).filter(f -> !f.equals(wd.getCompiledLocation()))
+                                .collect(Collectors.toList()))
+                        .ifPresent(wd::setLibraries);
+                Optional.ofNullable(values.get("srcDirectories")).map(this::toFiles).ifPresent(wd::setSrcDirectories);
+                Optional.ofNullable(values.get("webAppResources")).map(this::toFiles).ifPresent(wd::setWebAppResources);
+                Optional.ofNullable(values.get("applicationProperties")).map(this::argumentToFile)
+                        .ifPresent(wd::setApplicationPropertiesFile);
+                Optional.ofNullable(wd.getApplicationPropertiesFile())
+                        .filter(File::isFile).map(this::loadProperties).ifPresent(wd::setApplicationProperties);
+                webApps.add(wd);
+            });
+            return webApps;
         });
     }
 
+    private List<File> toFiles(String value) {
+        return Arrays.stream(value.split(",")).map(String::trim).filter(s -> !s.isEmpty())
+                .map(this::argumentToFile).collect(Collectors.toList());
+    }
+
     private Optional<File> getFile(String key) {
         return getArgument(key).map(this::argumentToFile);
     }
@@ -75,18 +169,33 @@ public class ArgParser {
                 .collect(Collectors.toList()));
     }
 
-    private Optional<Properties> getProperties(String key) {
-        return getArgument(key).map(this::argumentToFile).map(v -> {
-            val p = new Properties();
-            try {
-                p.load(new FileInputStream(v));
-            } catch (IOException e) {
-                log.error("Could not read file: {}", v);
-            }
-            return p;
+    private Optional<Map<String, List<File>>> getBundles(String key) {
+        return readFileFromArgument(key).map(v -> {
+            Map<String, List<File>> bundles = new LinkedHashMap<>();
+            Arrays.stream(v.split("\n")).map(String::trim).filter(l -> l.contains("=")).forEach(l -> {
+                val idx = l.indexOf('=');
+                bundles.put(l.substring(0, idx).trim(), Arrays.stream(l.substring(idx + 1).split(","))
+                        .map(String::trim).filter(s -> !s.isEmpty()).map(this::argumentToFile)
+                        .collect(Collectors.toList()));
+            });
+            return bundles;
         });
     }
 
+    private Optional<Properties> getProperties(String key) {
+        return getArgument(key).map(this::argumentToFile).map(this::loadProperties);
+    }
+
+    private Properties loadProperties(File v) {
+        val p = new Properties();
+        try {
+            p.load(new FileInputStream(v));
+        } catch (IOException e) {
+            log.error("Could not read file: {}", v);
+        }
+        return p;
+    }
+
     private Optional<String> getArgument(String key) {
         return Optional.ofNullable(argMap.get(key));
     }
@@ -95,6 +204,10 @@ public class ArgParser {
         return getArgument(key).map(Integer::parseInt);
     }
 
+    private Optional<Boolean> getBoolean(String key) {
+        return getArgument(key).map(Boolean::parseBoolean);
+    }
+
     private Optional<String[]> getArgumentArray(String key) {
         return getArgument(key).map(v -> Arrays.stream(v.split(","))
                 .map(String::trim).toArray(String[]::new));
@@ -0,0 +1,156 @@
+package net.bdavies.tomcat.server;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.catalina.Service;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.core.StandardThreadExecutor;
+import org.apache.coyote.AbstractProtocol;
+import org.apache.coyote.http2.Http2Protocol;
+import org.apache.tomcat.util.net.SSLHostConfig;
+import org.apache.tomcat.util.net.SSLHostConfigCertificate;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Creates the HTTP connector from the connector settings instead of relying on Tomcat's defaults
+ *
+ * The request threads come from a {@link StandardThreadExecutor} registered with the service, the same as a
+ * shared &lt;Executor/&gt; in server.xml, so its size and queue can be tuned and it shows up in JMX. When
+ * virtual threads are enabled and the JDK supports them every request gets its own virtual thread instead.
+ * The HTTPS connector shares the same executor.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ConnectorFactory {
+    private static final Map<String, String> PROTOCOLS = new LinkedHashMap<>();
+    private static final String DEFAULT_PROTOCOL = "nio";
+
+    static {
+        PROTOCOLS.put("nio", "org.apache.coyote.http11.Http11NioProtocol");
+        PROTOCOLS.put("nio2", "org.apache.coyote.http11.Http11Nio2Protocol");
+    }
+
+    private final TomcatServerData data;
+    private Executor executor;
+
+    /**
+     * Create the HTTP connector and add its executor to the service
+     *
+     * @param service the service the connector belongs to
+     * @return the connector
+     */
+    public Connector create(Service service) {
+        return create(service, data.getPort());
+    }
+
+    /**
+     * Create a TLS connector on the https port using the keystore
+     *
+     * @param service  the service the connector belongs to
+     * @param keystore a PKCS12 keystore holding the server certificate
+     * @return the connector
+     */
+    public Connector createHttps(Service service, File keystore) {
+        val connector = create(service, data.getHttpsPort());
+        connector.setScheme("https");
+        connector.setSecure(true);
+        setProperty(connector, "SSLEnabled", true);
+        val hostConfig = new SSLHostConfig();
+        val certificate = new SSLHostConfigCertificate(hostConfig, SSLHostConfigCertificate.Type.RSA);
+        certificate.setCertificateKeystoreFile(keystore.getAbsolutePath());
+        certificate.setCertificateKeystorePassword(DevCertificate.PASSWORD);
+        certificate.setCertificateKeystoreType(DevCertificate.TYPE);
+        hostConfig.addCertificate(certificate);
+        connector.addSslHostConfig(hostConfig);
+        return connector;
+    }
+
+    /**
+     * Create an HTTP connector on a port, used for the nodes of a cluster
+     *
+     * @param service the service the connector belongs to
+     * @param port    the port to listen on
+     * @return the connector
+     */
+    public Connector create(Service service, int port) {
+        String protocol = PROTOCOLS.get(data.getProtocol().toLowerCase());
+        if (protocol == null) {
+            log.warn("Unknown protocol {} (expected one of {}) so using {}", data.getProtocol(), PROTOCOLS.keySet(),
+                    DEFAULT_PROTOCOL);
+            protocol = PROTOCOLS.get(DEFAULT_PROTOCOL);
+        }
+        val connector = new Connector(protocol);
+        connector.setPort(port);
+        ((AbstractProtocol<?>) connector.getProtocolHandler()).setExecutor(getExecutor(service, port));
+        log.info("Using the {} connector on port {}", connector.getProtocolHandlerClassName(), port);
+
+        setProperty(connector, "acceptCount", data.getAcceptCount());
+        setProperty(connector, "maxConnections", data.getMaxConnections());
+        setProperty(connector, "keepAliveTimeout", data.getKeepAliveTimeout());
+        setProperty(connector, "maxKeepAliveRequests", data.getMaxKeepAliveRequests());
+        //-1 leaves the buffer at the OS default
+        if (data.getSocketReceiveBufferSize() > 0) {
+            setProperty(connector, "socket.rxBufSize", data.getSocketReceiveBufferSize());
+        }
+        if (data.getSocketSendBufferSize() > 0) {
+            setProperty(connector, "socket.txBufSize", data.getSocketSendBufferSize());
+        }
+        setProperty(connector, "compression", data.getCompression());
+        setProperty(connector, "compressionMinSize", data.getCompressionMinSize());
+        if (!data.getCompressibleMimeTypes().isEmpty()) {
+            setProperty(connector, "compressibleMimeType", String.join(",", data.getCompressibleMimeTypes()));
+        }
+        if (data.isHttp2()) {
+            val http2 = new Http2Protocol();
+            http2.setMaxConcurrentStreams(data.getHttp2MaxConcurrentStreams());
+            http2.setMaxConcurrentStreamExecution(data.getHttp2MaxConcurrentStreamExecution());
+            http2.setInitialWindowSize(data.getHttp2InitialWindowSize());
+            //h2c upgrade on the plain connector and ALPN on the TLS one
+            connector.addUpgradeProtocol(http2);
+        }
+        return connector;
+    }
+
+    private Executor getExecutor(Service service, int port) {
+        if (executor == null) {
+            if (data.isVirtualThreads()) {
+                executor = VirtualThreads.newExecutor("http-vt-" + port + "-");
+                if (executor == null) {
+                    log.warn("Virtual threads need JDK 21 or newer but this is {} so the thread pool is used",
+                            Runtime.version());
+                } else {
+                    log.info("Requests will run on a virtual thread each");
+                }
+            }
+            if (executor == null) {
+                executor = createThreadPool(service, port);
+            }
+        }
+        return executor;
+    }
+
+    private Executor createThreadPool(Service service, int port) {
+        val pool = new StandardThreadExecutor();
+        pool.setName("tomcatThreadPool-" + port);
+        pool.setNamePrefix("http-exec-" + port + "-");
+        pool.setMinSpareThreads(data.getMinSpareThreads());
+        pool.setMaxThreads(data.getMaxThreads());
+        pool.setMaxQueueSize(data.getMaxQueueSize());
+        service.addExecutor(pool);
+        log.info("Requests will run on a pool of {}-{} threads", data.getMinSpareThreads(), data.getMaxThreads());
+        return pool;
+    }
+
+    private void setProperty(Connector connector, String name, Object value) {
+        if (!connector.setProperty(name, String.valueOf(value))) {
+            log.warn("Connector property {} is not supported by {}", name, connector.getProtocolHandlerClassName());
+        }
+    }
+}
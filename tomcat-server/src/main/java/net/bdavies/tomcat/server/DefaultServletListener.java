@@ -0,0 +1,46 @@
+package net.bdavies.tomcat.server;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.bdavies.tomcat.server.resources.ConditionalDefaultServlet;
+import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.LifecycleListener;
+import org.apache.catalina.Wrapper;
+
+/**
+ * Tunes the default servlet for static assets, it serves .gz/.br variants when the client accepts them,
+ * uses sendfile for files over the threshold and answers conditional requests for watched files from memory
+ *
+ * The default servlet is recreated every time the context starts so the init parameters are applied on each
+ * configure_start, before the servlet is loaded.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class DefaultServletListener implements LifecycleListener {
+    private static final String DEFAULT_SERVLET = "default";
+    private final boolean precompressed;
+    private final int sendfileSize;
+
+    /**
+     * Acknowledge the occurrence of the specified event.
+     *
+     * @param event LifecycleEvent that has occurred
+     */
+    @Override
+    public void lifecycleEvent(LifecycleEvent event) {
+        if (!event.getType().equals(Lifecycle.CONFIGURE_START_EVENT)) return;
+        Context context = (Context) event.getLifecycle();
+        Wrapper wrapper = (Wrapper) context.findChild(DEFAULT_SERVLET);
+        if (wrapper == null) {
+            log.warn("No default servlet found on context [{}] so static assets can't be tuned", context.getName());
+            return;
+        }
+        wrapper.setServletClass(ConditionalDefaultServlet.class.getName());
+        wrapper.addInitParameter("precompressed", String.valueOf(precompressed));
+        wrapper.addInitParameter("sendfileSize", String.valueOf(sendfileSize));
+    }
+}
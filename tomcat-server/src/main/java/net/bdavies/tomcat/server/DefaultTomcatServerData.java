@@ -8,8 +8,11 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -21,12 +24,47 @@ import java.util.Properties;
 @ToString
 public class DefaultTomcatServerData implements TomcatServerData {
     private Properties applicationProperties;
+    private File applicationPropertiesFile;
     private String servletPath;
     private File compiledLocation;
     private final File webAppBaseDirectory;
     private final String compileClasspath, runtimeClasspath;
-    private List<File> srcDirectories, webAppResources;
+    private List<File> srcDirectories, webAppResources, precompressedResources;
+    private File buildDirectory;
     private int port, shutdownPort;
+    private int liveReloadHeartbeatInterval;
+    private boolean injectLiveReload;
+    private int sendfileSize;
+    private Map<String, List<File>> bundles;
+    private boolean minifyBundles;
+    private String protocol;
+    private int minSpareThreads, maxThreads, maxQueueSize;
+    private int acceptCount, maxConnections, keepAliveTimeout, maxKeepAliveRequests;
+    private int socketReceiveBufferSize, socketSendBufferSize;
+    private String compression;
+    private int compressionMinSize;
+    private List<String> compressibleMimeTypes;
+    private boolean virtualThreads;
+    @Getter(AccessLevel.NONE)
+    private List<WebAppData> additionalWebApps;
+    private int clusterNodes;
+    private String loadBalancerPolicy;
+    private int throughputReportInterval;
+    private boolean mappedSessions;
+    private boolean watchJsps;
+    private boolean precompileJsps;
+    private int jspPrecompileThreads;
+    private List<String> propertiesRequiringReload;
+    private int metricsPort;
+    private int slowRequestThreshold, slowRequestSampleInterval;
+    private boolean flightRecording;
+    private boolean detectClassLoaderLeaks;
+    private int metaspaceBudget;
+    private String metaspaceBudgetAction;
+    private boolean fastStart;
+    private boolean http2;
+    private int httpsPort;
+    private int http2MaxConcurrentStreams, http2MaxConcurrentStreamExecution, http2InitialWindowSize;
     private String sourceCompatability, targetCompatability;
     private String jarsToSkip, jarsToScan;
 
@@ -40,10 +78,69 @@ public class DefaultTomcatServerData implements TomcatServerData {
         this.srcDirectories = new LinkedList<>(); //Empty by default
         this.port = 8080; //8080 by default
         this.shutdownPort = 8082; //8082 by default
+        this.liveReloadHeartbeatInterval = 30; //30 seconds by default
+        this.injectLiveReload = true;
+        this.buildDirectory = new File(webappBaseDirectory, "build");
+        this.precompressedResources = new LinkedList<>();
+        this.sendfileSize = 48; //48 KB by default, the same as Tomcat
+        this.bundles = new LinkedHashMap<>(); //No bundles by default
+        this.minifyBundles = true;
+        this.protocol = "nio"; //Http11NioProtocol by default
+        this.minSpareThreads = 10;
+        this.maxThreads = 200;
+        this.maxQueueSize = Integer.MAX_VALUE; //Unbounded by default, the same as Tomcat
+        this.acceptCount = 100;
+        this.maxConnections = 10000;
+        this.keepAliveTimeout = 20000; //20 seconds by default, the same as the connection timeout
+        this.maxKeepAliveRequests = 100;
+        this.socketReceiveBufferSize = -1; //OS default
+        this.socketSendBufferSize = -1; //OS default
+        this.compression = "off";
+        this.compressionMinSize = 2048;
+        this.compressibleMimeTypes = new LinkedList<>(); //Use Tomcat's list by default
+        this.virtualThreads = false; //Platform thread pool by default
+        this.http2 = false;
+        this.httpsPort = -1; //No HTTPS connector by default
+        this.http2MaxConcurrentStreams = 100;
+        this.http2MaxConcurrentStreamExecution = 20;
+        this.http2InitialWindowSize = 65535; //The HTTP/2 default window
         this.sourceCompatability = "11"; //Java 11 by default
         this.targetCompatability = "11"; //Java 11 by default
         this.webAppResources = new LinkedList<>();
         this.jarsToSkip = "--";
         this.jarsToScan = "--";
+        this.additionalWebApps = new LinkedList<>(); //Only the primary webapp by default
+        this.clusterNodes = 1; //A single instance by default
+        this.loadBalancerPolicy = "round-robin";
+        this.throughputReportInterval = 10; //10 seconds by default
+        this.mappedSessions = true;
+        this.watchJsps = true;
+        this.precompileJsps = true;
+        this.jspPrecompileThreads = 0; //One per core by default
+        this.propertiesRequiringReload = new LinkedList<>(); //Every property is applied in place by default
+        this.metricsPort = -1; //No metrics by default
+        this.slowRequestThreshold = -1; //No sampling by default
+        this.slowRequestSampleInterval = 20; //20 ms by default
+        this.flightRecording = false;
+        this.detectClassLoaderLeaks = false;
+        this.metaspaceBudget = -1; //No budget by default
+        this.metaspaceBudgetAction = "warn";
+        this.fastStart = false;
+    }
+
+    /**
+     * The primary webapp's runtime classpath is the runner's classpath, it is where the logger comes from
+     */
+    @Override
+    public List<File> getLibraries() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<WebAppData> getWebApps() {
+        List<WebAppData> webApps = new LinkedList<>();
+        webApps.add(this);
+        webApps.addAll(additionalWebApps);
+        return webApps;
     }
 }
@@ -0,0 +1,43 @@
+package net.bdavies.tomcat.server;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * An additional webapp hosted alongside the primary one
+ *
+ * @author ben.davies
+ */
+@Slf4j
+@Getter
+@Setter(AccessLevel.PACKAGE)
+@ToString
+public class DefaultWebAppData implements WebAppData {
+    private Properties applicationProperties;
+    private File applicationPropertiesFile;
+    private String servletPath;
+    private File compiledLocation;
+    private final File webAppBaseDirectory;
+    private String compileClasspath;
+    private List<File> srcDirectories, webAppResources, libraries;
+
+    public DefaultWebAppData(File webappBaseDirectory) {
+        this.webAppBaseDirectory = webappBaseDirectory;
+        this.compileClasspath = "";
+        this.applicationProperties = new Properties();
+        this.servletPath = "/" + webappBaseDirectory.getName(); //Use the directory name by default
+        this.compiledLocation = webappBaseDirectory.toPath().resolve(Path.of("WEB-INF", "classes")).toFile(); //Use WEB-INF/classes by default
+        this.srcDirectories = new LinkedList<>(); //Empty by default
+        this.webAppResources = new LinkedList<>();
+        this.libraries = new LinkedList<>(); //Empty by default
+    }
+}
@@ -0,0 +1,65 @@
+package net.bdavies.tomcat.server;
+
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A self-signed localhost certificate for the HTTPS connector, generated once with the JDK's keytool and kept
+ * in the build directory
+ *
+ * @author ben.davies
+ */
+@Slf4j
+@UtilityClass
+public class DevCertificate {
+    public static final String PASSWORD = "changeit";
+    public static final String TYPE = "PKCS12";
+    private static final String ALIAS = "tomcat";
+    private static final String FILE_NAME = "dev-keystore.p12";
+
+    /**
+     * Get the keystore, generating it if it does not exist yet
+     *
+     * @param directory the directory the keystore is kept in
+     * @return the keystore or null if it could not be generated
+     */
+    public File getKeystore(File directory) {
+        val keystore = new File(directory, FILE_NAME);
+        if (keystore.isFile()) return keystore;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            log.error("Unable to create {} for the development keystore", directory);
+            return null;
+        }
+        val keytool = Path.of(System.getProperty("java.home"), "bin",
+                System.getProperty("os.name").toLowerCase().contains("win") ? "keytool.exe" : "keytool");
+        List<String> command = Arrays.asList(keytool.toString(), "-genkeypair",
+                "-alias", ALIAS, "-keyalg", "RSA", "-keysize", "2048", "-validity", "3650",
+                "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1,ip:0:0:0:0:0:0:0:1",
+                "-storetype", TYPE, "-keystore", keystore.getAbsolutePath(),
+                "-storepass", PASSWORD, "-keypass", PASSWORD);
+        try {
+            val process = new ProcessBuilder(command).redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            if (process.waitFor() != 0 || !keystore.isFile()) {
+                log.error("keytool exited with {} so the development keystore was not generated", process.exitValue());
+                return null;
+            }
+        } catch (IOException e) {
+            log.error("Unable to run {}", keytool, e);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        log.info("Generated a self-signed localhost certificate in {}, trust it in your browser to avoid warnings",
+                keystore);
+        return keystore;
+    }
+}
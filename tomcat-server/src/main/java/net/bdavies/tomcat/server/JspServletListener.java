@@ -0,0 +1,59 @@
+package net.bdavies.tomcat.server;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.bdavies.tomcat.server.jsp.JasperAccess;
+import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.LifecycleListener;
+import org.apache.catalina.Wrapper;
+
+import java.io.File;
+
+/**
+ * Configures Jasper, the generated classes go to a scratch directory in the build directory so they outlive the
+ * runner and, when the file watcher recompiles changed JSPs, Jasper's per request modification checks are turned
+ * off and only a slow background check is kept
+ *
+ * The JSP servlet is recreated every time the context starts so the init parameters are applied on each
+ * configure_start, before the servlet is loaded.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class JspServletListener implements LifecycleListener {
+    /**
+     * Seconds between the background checks of every loaded JSP
+     */
+    private static final int FALLBACK_CHECK_INTERVAL = 30;
+
+    private final File scratchDirectory;
+    private final boolean watchJsps;
+
+    /**
+     * Acknowledge the occurrence of the specified event.
+     *
+     * @param event LifecycleEvent that has occurred
+     */
+    @Override
+    public void lifecycleEvent(LifecycleEvent event) {
+        if (!event.getType().equals(Lifecycle.CONFIGURE_START_EVENT)) return;
+        Context context = (Context) event.getLifecycle();
+        Wrapper wrapper = (Wrapper) context.findChild(JasperAccess.JSP_SERVLET);
+        if (wrapper == null) return;
+        if (scratchDirectory.isDirectory() || scratchDirectory.mkdirs()) {
+            wrapper.addInitParameter("scratchdir", scratchDirectory.getAbsolutePath());
+        } else {
+            log.warn("Unable to create {} so the JSP classes will be generated in the work directory",
+                    scratchDirectory);
+        }
+        if (watchJsps) {
+            wrapper.addInitParameter("development", "false");
+            //The watcher drives the recompiles, the background check only catches a file it couldn't watch
+            wrapper.addInitParameter("checkInterval", String.valueOf(FALLBACK_CHECK_INTERVAL));
+            wrapper.addInitParameter("modificationTestInterval", "0");
+        }
+    }
+}
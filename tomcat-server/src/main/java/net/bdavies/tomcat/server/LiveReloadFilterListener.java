@@ -0,0 +1,53 @@
+package net.bdavies.tomcat.server;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.bdavies.tomcat.server.livereload.LiveReloadInjectionFilter;
+import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.LifecycleListener;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+
+import javax.servlet.DispatcherType;
+
+/**
+ * Registers the {@link LiveReloadInjectionFilter} ahead of the application's own filters
+ *
+ * The context config removes every filter when the context stops, so the filter is added back each time the
+ * context is configured rather than once at setup which would lose it on the first reload.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class LiveReloadFilterListener implements LifecycleListener {
+    private final int liveReloadPort;
+
+    /**
+     * Acknowledge the occurrence of the specified event.
+     *
+     * @param event LifecycleEvent that has occurred
+     */
+    @Override
+    public void lifecycleEvent(LifecycleEvent event) {
+        if (!event.getType().equals(Lifecycle.CONFIGURE_START_EVENT)) return;
+        Context context = (Context) event.getLifecycle();
+        if (context.findFilterDef(LiveReloadInjectionFilter.NAME) != null) return;
+
+        FilterDef def = new FilterDef();
+        def.setFilterName(LiveReloadInjectionFilter.NAME);
+        def.setFilterClass(LiveReloadInjectionFilter.class.getName());
+        def.setFilter(new LiveReloadInjectionFilter(liveReloadPort));
+        def.setAsyncSupported("true");
+        context.addFilterDef(def);
+
+        FilterMap map = new FilterMap();
+        map.setFilterName(LiveReloadInjectionFilter.NAME);
+        map.addURLPattern("/*");
+        map.setDispatcher(DispatcherType.REQUEST.name());
+        context.addFilterMapBefore(map);
+        log.debug("Registered {} on context [{}]", LiveReloadInjectionFilter.NAME, context.getName());
+    }
+}
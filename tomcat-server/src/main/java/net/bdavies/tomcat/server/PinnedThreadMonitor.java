@@ -0,0 +1,103 @@
+package net.bdavies.tomcat.server;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Reports virtual threads that pinned their carrier thread, using the jdk.VirtualThreadPinned JFR event
+ *
+ * Each distinct pinning site is logged with its stack the first time it is seen and a summary of every site
+ * is logged when the server stops. The JFR RecordingStream is used reflectively as it is newer than the JDK
+ * the runner is built for.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+public class PinnedThreadMonitor {
+    private static final String EVENT = "jdk.VirtualThreadPinned";
+    private static final Duration THRESHOLD = Duration.ofMillis(20);
+    private static final int STACK_DEPTH = 8;
+
+    private final Map<String, Site> sites = new ConcurrentHashMap<>();
+    private AutoCloseable stream;
+
+    public synchronized void start() {
+        if (stream != null) return;
+        try {
+            Class<?> streamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+            Object rs = streamClass.getConstructor().newInstance();
+            Class<?> settingsClass = Class.forName("jdk.jfr.EventSettings");
+            Object settings = streamClass.getMethod("enable", String.class).invoke(rs, EVENT);
+            settingsClass.getMethod("withStackTrace").invoke(settings);
+            settingsClass.getMethod("withThreshold", Duration.class).invoke(settings, THRESHOLD);
+            Consumer<RecordedEvent> handler = this::onPinned;
+            streamClass.getMethod("onEvent", String.class, Consumer.class).invoke(rs, EVENT, handler);
+            streamClass.getMethod("startAsync").invoke(rs);
+            stream = (AutoCloseable) rs;
+            log.info("Reporting virtual threads pinned for longer than {} ms", THRESHOLD.toMillis());
+        } catch (ReflectiveOperationException e) {
+            log.warn("Unable to monitor pinned virtual threads", e);
+        }
+    }
+
+    public synchronized void stop() {
+        if (stream == null) return;
+        try {
+            stream.close();
+        } catch (Exception e) {
+            log.debug("Unable to close the pinned thread recording", e);
+        }
+        stream = null;
+        if (sites.isEmpty()) {
+            log.info("No virtual threads were pinned");
+            return;
+        }
+        log.info("Pinned virtual threads by site:\n{}", sites.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue().nanos.sum(), a.getValue().nanos.sum()))
+                .map(e -> String.format("  %6d times %8d ms  %s", e.getValue().count.sum(),
+                        e.getValue().nanos.sum() / 1_000_000, e.getKey()))
+                .collect(Collectors.joining("\n")));
+    }
+
+    private void onPinned(RecordedEvent event) {
+        val stackTrace = event.getStackTrace();
+        val frames = stackTrace == null ? Collections.<RecordedFrame>emptyList() : stackTrace.getFrames();
+        //Attribute the pin to the first frame outside the JDK, that is where the monitor or native call is
+        val site = frames.stream().filter(RecordedFrame::isJavaFrame).map(this::describe)
+                .filter(f -> !f.startsWith("java.") && !f.startsWith("jdk.") && !f.startsWith("sun."))
+                .findFirst().orElse(frames.isEmpty() ? "unknown" : describe(frames.get(0)));
+        val created = new boolean[1];
+        val entry = sites.computeIfAbsent(site, s -> {
+            created[0] = true;
+            return new Site();
+        });
+        entry.count.increment();
+        entry.nanos.add(event.getDuration().toNanos());
+        if (created[0]) {
+            log.warn("Virtual thread {} pinned its carrier for {} ms at\n  {}",
+                    event.getThread() == null ? "?" : event.getThread().getJavaName(),
+                    event.getDuration().toMillis(), frames.stream().limit(STACK_DEPTH).map(this::describe)
+                            .collect(Collectors.joining("\n  ")));
+        }
+    }
+
+    private String describe(RecordedFrame frame) {
+        val method = frame.getMethod();
+        return method.getType().getName() + "." + method.getName() + ":" + frame.getLineNumber();
+    }
+
+    private static class Site {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+    }
+}
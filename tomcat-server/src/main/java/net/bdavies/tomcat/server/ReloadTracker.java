@@ -0,0 +1,53 @@
+package net.bdavies.tomcat.server;
+
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Marks the stages a change goes through, from the file watcher seeing it to the LiveReload frame going out, so
+ * the edit to reload latency can be measured
+ *
+ * Nothing is recorded unless a listener has been set, the reload latency harness in the benchmarks project sets
+ * one when it runs the runner in process.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+@UtilityClass
+public class ReloadTracker {
+    private volatile Listener listener;
+
+    public void setListener(Listener listener) {
+        ReloadTracker.listener = listener;
+    }
+
+    /**
+     * Mark that a change has reached a stage
+     *
+     * @param stage  the stage
+     * @param detail what the stage was for, e.g. the file that changed
+     */
+    public void mark(Stage stage, String detail) {
+        Listener current = listener;
+        if (current != null) {
+            current.onStage(stage, System.nanoTime(), detail);
+        }
+    }
+
+    public enum Stage {
+        WATCH_EVENT,
+        DEBOUNCE_FIRED,
+        COMPILE_DONE,
+        RELOAD_DONE,
+        FRAME_SENT
+    }
+
+    public interface Listener {
+        /**
+         * @param stage    the stage that was reached
+         * @param nanoTime {@link System#nanoTime()} when it was reached
+         * @param detail   what the stage was for
+         */
+        void onStage(Stage stage, long nanoTime, String detail);
+    }
+}
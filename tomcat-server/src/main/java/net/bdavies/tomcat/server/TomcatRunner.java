@@ -2,21 +2,48 @@ package net.bdavies.tomcat.server;
 
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import net.bdavies.tomcat.server.classloader.ClassLoaderLeakDetector;
+import net.bdavies.tomcat.server.cluster.BalancerPolicy;
+import net.bdavies.tomcat.server.cluster.LoadBalancer;
+import net.bdavies.tomcat.server.cluster.Node;
+import net.bdavies.tomcat.server.cluster.RequestCountValve;
+import net.bdavies.tomcat.server.cluster.ThroughputReporter;
+import net.bdavies.tomcat.server.jfr.ContextEventsListener;
+import net.bdavies.tomcat.server.jfr.FlightRecording;
+import net.bdavies.tomcat.server.jsp.JspPrecompiler;
+import net.bdavies.tomcat.server.jsp.JspRecompiler;
 import net.bdavies.tomcat.server.livereload.Constants;
 import net.bdavies.tomcat.server.livereload.Server;
+import net.bdavies.tomcat.server.metrics.MetricsEndpoint;
+import net.bdavies.tomcat.server.metrics.MetricsValve;
+import net.bdavies.tomcat.server.metrics.RequestMetrics;
+import net.bdavies.tomcat.server.metrics.SlowRequestSampler;
+import net.bdavies.tomcat.server.metrics.SlowRequestValve;
+import net.bdavies.tomcat.server.resources.AssetBundler;
+import net.bdavies.tomcat.server.resources.BundleResourceSet;
+import net.bdavies.tomcat.server.resources.ResourceMetadataCache;
+import net.bdavies.tomcat.server.resources.StaticAssetCompressor;
+import net.bdavies.tomcat.server.resources.WatchedResourceRoot;
+import net.bdavies.tomcat.server.session.MappedSessionManager;
+import net.bdavies.tomcat.server.startup.FastStartListener;
+import net.bdavies.tomcat.server.startup.FirstRequestValve;
+import net.bdavies.tomcat.server.startup.StartupTimer;
+import net.bdavies.tomcat.server.startup.TimedContext;
+import net.bdavies.tomcat.server.startup.TimedContextConfig;
+import net.bdavies.tomcat.server.startup.TimedJarScanner;
+import net.bdavies.tomcat.server.startup.WebAppFeatures;
 import net.bdavies.tomcat.server.watcher.ChangeType;
 import net.bdavies.tomcat.server.watcher.FileWatcher;
 import org.apache.catalina.LifecycleException;
 import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.core.StandardHost;
+import org.apache.catalina.core.StandardServer;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.webresources.DirResourceSet;
 import org.apache.catalina.webresources.FileResourceSet;
-import org.apache.catalina.webresources.StandardRoot;
 import org.apache.tomcat.JarScanFilter;
 import org.apache.tomcat.JarScanner;
-import org.apache.tomcat.util.descriptor.web.ContextEnvironment;
 import org.apache.tomcat.util.scan.StandardJarScanFilter;
-import org.apache.tomcat.util.scan.StandardJarScanner;
 import rx.Observable;
 
 import java.io.File;
@@ -24,8 +51,15 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -50,19 +84,40 @@ import java.util.stream.Stream;
  */
 @Slf4j
 public class TomcatRunner implements Runnable {
+    /**
+     * The exit code that tells the Gradle task to start the runner again
+     */
+    public static final int RESTART_EXIT_CODE = 75;
+    /**
+     * The webapp's base directory, an environment entry when naming is on and a context parameter otherwise
+     */
+    private static final String INSTALL_DIR = "installDir";
+
 
     private final Thread thread;
     private final TomcatServerData data;
     private boolean isRunning;
     private final ShutdownHandle handle;
     private final Server server;
+    private final List<StandardContext> startedContexts = new ArrayList<>();
+    private final StartupTimer startupTimer;
+    private final RequestMetrics requestMetrics = new RequestMetrics();
+    private SlowRequestSampler slowRequestSampler;
+    private ClassLoaderLeakDetector leakDetector;
+    private List<Tomcat> tomcats = Collections.emptyList();
+    private volatile boolean restartRequested;
+    private final Map<WebAppData, WebAppFeatures> webAppFeatures = new IdentityHashMap<>();
+    private final List<Runnable> deferredSetup = new ArrayList<>();
 //    private final ClassLoader runtimeClassloader;
 
     public TomcatRunner(TomcatServerData data) {
         this.data = data;
         this.thread = new Thread(this, "TomcatRunner-" + data.getPort());
         this.handle = new ShutdownHandle();
-        this.server = new Server(Constants.DEFAULT_LR_PORT);
+        this.startupTimer = new StartupTimer(data.getBuildDirectory().toPath()
+                .resolve(Path.of("tomcat", "startup-timings.json")).toFile());
+        this.server = new Server(Constants.DEFAULT_LR_PORT,
+                TimeUnit.SECONDS.toMillis(data.getLiveReloadHeartbeatInterval()));
 //        this.runtimeClassloader = getClassLoaderFromClassPath(data.getRuntimeClasspath());
 //        thread.setContextClassLoader(classLoader);
     }
@@ -110,96 +165,422 @@ public class TomcatRunner implements Runnable {
     @Override
     public void run() {
         log.info("Start of the application");
-        Tomcat tomcat = setupTomcat();
+        if (data.isFlightRecording()) {
+            val recording = new FlightRecording(data.getBuildDirectory().toPath()
+                    .resolve(Path.of("tomcat", "runner.jfr")).toFile());
+            recording.start();
+            handle.subscribe(recording::stop);
+        }
+        try {
+            tomcats = setupTomcat();
+        } catch (IOException e) {
+            log.error("Unable to start the server", e);
+            handle.runShutdownHooks();
+            System.exit(1);
+            return;
+        }
         try {
-            tomcat.start();
+            for (val tomcat : tomcats) {
+                try (val ignored = startupTimer.startTotal("tomcat.start :" + tomcat.getConnector().getPort())) {
+                    tomcat.start();
+                }
+            }
         } catch (LifecycleException e) {
             log.error("Unable to start tomcat something went wrong", e);
             stop();
         }
+        if (data.isPrecompileJsps()) {
+            startupTimer.time("precompile JSPs",
+                    () -> new JspPrecompiler(data.getJspPrecompileThreads()).precompile(startedContexts));
+        }
+        startupTimer.report();
+        if (!deferredSetup.isEmpty()) {
+            //Nothing the first requests need so it is done after the server has started
+            val deferred = new Thread(() -> deferredSetup.forEach(Runnable::run), "TomcatRunner-Deferred-Setup");
+            deferred.setDaemon(true);
+            deferred.start();
+        }
+        //The first instance listens for the shutdown command on behalf of every node
+        val tomcat = tomcats.get(0);
         tomcat.getServer().setPort(data.getShutdownPort());
         tomcat.getServer().await();
+        val exitCode = restartRequested ? RESTART_EXIT_CODE : 0;
         //Janky hack mate
-        Observable.just("").delay(3, TimeUnit.SECONDS).subscribe(a -> System.exit(0));
+        Observable.just("").delay(3, TimeUnit.SECONDS).subscribe(a -> System.exit(exitCode));
         handle.runShutdownHooks();
     }
 
-    private Tomcat setupTomcat() {
-        val tomcat = new Tomcat();
-        tomcat.setPort(data.getPort());
+    /**
+     * Stop the runner the same way the shutdown command does but exit with {@link #RESTART_EXIT_CODE} so the
+     * Gradle task starts a new one
+     */
+    private void restart() {
+        if (tomcats.isEmpty()) return;
+        restartRequested = true;
+        ((StandardServer) tomcats.get(0).getServer()).stopAwait();
+    }
 
-        //Enable naming for META-INF/context.xml
-        tomcat.enableNaming();
-        StandardContext context = (StandardContext) tomcat.addWebapp(data.getServletPath(),
-                data.getWebAppBaseDirectory().getAbsolutePath());
-        setupResources(context);
-        context.addLifecycleListener(new TomcatStartListener(data));
+    private List<Tomcat> setupTomcat() throws IOException {
+        if (data.isFastStart()) {
+            startupTimer.time("detect webapp features", () -> {
+                for (val app : data.getWebApps()) {
+                    val features = WebAppFeatures.detect(app, getClasspath(app));
+                    webAppFeatures.put(app, features);
+                    log.info("Fast start: [{}] uses {}", app.getServletPath().isEmpty() ? "ROOT" : app.getServletPath(),
+                            features);
+                }
+            });
+        }
+        List<Tomcat> tomcats = new ArrayList<>();
+        if (data.getClusterNodes() > 1) {
+            List<Node> nodes = new ArrayList<>();
+            val reservedPorts = getReservedPorts();
+            int nodePort = data.getPort();
+            for (int i = 1; i <= data.getClusterNodes(); i++) {
+                do {
+                    nodePort++;
+                } while (reservedPorts.contains(nodePort));
+                if (nodePort > 65535) {
+                    throw new IOException("There are no ports left after " + data.getPort() + " for node" + i);
+                }
+                val node = new Node("node" + i, nodePort);
+                val tomcat = createTomcat(node.getPort(),
+                        data.getBuildDirectory().toPath().resolve(Path.of("tomcat", "node-" + i)).toFile());
+                tomcat.getEngine().setJvmRoute(node.getJvmRoute());
+                tomcat.getEngine().getPipeline().addValve(new RequestCountValve(node));
+                nodes.add(node);
+                tomcats.add(tomcat);
+            }
+            val loadBalancer = new LoadBalancer(data.getPort(), nodes, BalancerPolicy.forName(data.getLoadBalancerPolicy()));
+            try {
+                loadBalancer.start();
+            } catch (IOException e) {
+                throw new IOException("The load balancer could not listen on port " + data.getPort(), e);
+            }
+            handle.subscribe(loadBalancer::stop);
+            val reporter = new ThroughputReporter(nodes, data.getThroughputReportInterval());
+            reporter.start();
+            handle.subscribe(reporter::stop);
+        } else {
+            tomcats.add(createTomcat(data.getPort(), null));
+        }
+        if (data.isDetectClassLoaderLeaks() || data.getMetaspaceBudget() > 0) {
+            leakDetector = new ClassLoaderLeakDetector(data.isDetectClassLoaderLeaks(), data.getMetaspaceBudget(),
+                    data.getMetaspaceBudgetAction(), this::restart);
+            handle.subscribe(leakDetector::stop);
+        }
+        if (data.getSlowRequestThreshold() > 0) {
+            slowRequestSampler = new SlowRequestSampler(data.getSlowRequestThreshold(), data.getSlowRequestSampleInterval());
+            slowRequestSampler.start();
+            handle.subscribe(() -> {
+                slowRequestSampler.stop();
+                slowRequestSampler.dump(data.getBuildDirectory().toPath().resolve(Path.of("tomcat", "slow-requests")).toFile());
+            });
+        }
+        if (data.getMetricsPort() > 0) {
+            for (val tomcat : tomcats) {
+                tomcat.getEngine().getPipeline().addValve(new MetricsValve(requestMetrics));
+            }
+            val metricsEndpoint = new MetricsEndpoint(requestMetrics, slowRequestSampler, data.getMetricsPort());
+            metricsEndpoint.start();
+            handle.subscribe(metricsEndpoint::stop);
+        }
+        if (data.isVirtualThreads() && VirtualThreads.isSupported()) {
+            PinnedThreadMonitor pinnedThreadMonitor = new PinnedThreadMonitor();
+            pinnedThreadMonitor.start();
+            handle.subscribe(pinnedThreadMonitor::stop);
+        }
 
-        StandardJarScanner scanner = new StandardJarScanner();
-        StandardJarScanFilter filter = new StandardJarScanFilter();
-        if (!data.getJarsToSkip().equals("--")) {
-            filter.setPluggabilitySkip(data.getJarsToSkip());
-            filter.setTldSkip(data.getJarsToSkip());
+        startupTimer.time("livereload bind", this::setupLiveReload);
+        for (val app : data.getWebApps()) {
+            setupWebApp(tomcats, app, app == data);
         }
-        if (!data.getJarsToScan().equals("--")) {
-            filter.setPluggabilityScan(data.getJarsToScan());
-            filter.setTldScan(data.getJarsToScan());
+        return tomcats;
+    }
+
+    /**
+     * The ports the runner listens on besides the cluster nodes, the nodes are given the ports in between
+     */
+    private Set<Integer> getReservedPorts() {
+        Set<Integer> ports = new HashSet<>(Arrays.asList(data.getPort(), data.getShutdownPort(),
+                Constants.DEFAULT_LR_PORT));
+        if (data.getHttpsPort() > 0) {
+            ports.add(data.getHttpsPort());
         }
-        scanner.setJarScanFilter(filter);
-        context.setJarScanner(scanner);
+        if (data.getMetricsPort() > 0) {
+            ports.add(data.getMetricsPort());
+        }
+        return ports;
+    }
 
+    private Tomcat createTomcat(int port, File baseDir) {
+        val split = startupTimer.start("create tomcat :" + port);
+        val tomcat = new Tomcat();
+        if (baseDir != null) {
+            tomcat.setBaseDir(baseDir.getAbsolutePath());
+        }
+        tomcat.setPort(port);
+        val connectorFactory = new ConnectorFactory(data);
+        tomcat.setConnector(connectorFactory.create(tomcat.getService(), port));
+        if (data.getHttpsPort() > 0 && data.getClusterNodes() <= 1) {
+            val keystore = DevCertificate.getKeystore(data.getBuildDirectory().toPath().resolve("tomcat").toFile());
+            if (keystore != null) {
+                tomcat.getService().addConnector(connectorFactory.createHttps(tomcat.getService(), keystore));
+            } else {
+                log.warn("HTTPS is disabled because there is no certificate to use");
+            }
+        }
+
+        split.close();
+
+        //Enable naming for META-INF/context.xml
+        if (isNamingUsed()) {
+            startupTimer.time("enableNaming :" + port, tomcat::enableNaming);
+        }
+        //Start the contexts in parallel using a thread per core, the servlets of a context still start in order
+        tomcat.getHost().setStartStopThreads(0);
+        //Every context times its own startup
+        ((StandardHost) tomcat.getHost()).setContextClass(TimedContext.class.getName());
+        tomcat.getEngine().getPipeline().addValve(new FirstRequestValve(startupTimer));
         //Silence Tomcat
         tomcat.setSilent(true);
-        setupLiveReload();
-        setupFileWatching(context);
-
-        //Setup Environment variables
-        data.getApplicationProperties().put("installDir", data.getWebAppBaseDirectory().getAbsolutePath());
-        data.getApplicationProperties().forEach((k, v) -> {
-            ContextEnvironment environment = new ContextEnvironment();
-            environment.setName(String.valueOf(k));
-            environment.setType(v.getClass().getCanonicalName());
-            environment.setValue(String.valueOf(v));
-            context.getNamingResources().addEnvironment(environment);
-        });
         return tomcat;
     }
 
+    /**
+     * The jars and directories a webapp's classes come from besides its compiled location, the runner's classpath
+     * for the primary webapp and the libraries mounted in its context for the others
+     */
+    private List<File> getClasspath(WebAppData app) {
+        if (app != data) return app.getLibraries();
+        val compiled = app.getCompiledLocation().getAbsoluteFile();
+        return Arrays.stream(data.getRuntimeClasspath().split(File.pathSeparator))
+                .filter(entry -> !entry.trim().isEmpty())
+                .map(entry -> new File(entry.trim()).getAbsoluteFile())
+                .filter(file -> !file.equals(compiled))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Naming is set up for the whole server so it is needed when any webapp uses it
+     */
+    private boolean isNamingUsed() {
+        return !data.isFastStart() || webAppFeatures.values().stream().anyMatch(WebAppFeatures::isNaming);
+    }
+
+    private void setupWebApp(List<Tomcat> tomcats, WebAppData app, boolean primary) {
+        val features = webAppFeatures.get(app);
+        ResourceMetadataCache resourceCache = new ResourceMetadataCache(app.getWebAppResources());
+        //Precompression and bundles are only configured for the primary webapp
+        StaticAssetCompressor compressor = new StaticAssetCompressor(
+                primary ? data.getPrecompressedResources() : Collections.emptyList(),
+                data.getBuildDirectory().toPath().resolve(Path.of("tomcat", "precompressed")).toFile());
+        val cName = app.getServletPath().isEmpty() ? "ROOT" : app.getServletPath();
+        startupTimer.time("[" + cName + "] precompress assets", compressor::compressAll);
+        AssetBundler bundler = new AssetBundler(primary ? data.getBundles() : Collections.emptyMap(),
+                data.isMinifyBundles());
+        startupTimer.time("[" + cName + "] build bundles", bundler::buildAll);
+        handle.subscribe(resourceCache::shutdown);
+        //Added after the features are detected so it doesn't keep naming on by itself
+        app.getApplicationProperties().put(INSTALL_DIR, app.getWebAppBaseDirectory().getAbsolutePath());
+
+        List<StandardContext> contexts = new ArrayList<>();
+        for (val tomcat : tomcats) {
+            val route = tomcat.getEngine().getJvmRoute();
+            val timingName = "[" + cName + "]" + (route == null ? "" : " " + route);
+            val addWebapp = startupTimer.start(timingName + " addWebapp");
+            TimedContext context = (TimedContext) tomcat.addWebapp(tomcat.getHost(), app.getServletPath(),
+                    app.getWebAppBaseDirectory().getAbsolutePath(), new TimedContextConfig(startupTimer, timingName));
+            addWebapp.close();
+            context.setStartupTimer(startupTimer);
+            context.setTimingName(timingName);
+            if (data.getMetricsPort() > 0) {
+                requestMetrics.register(context, cName, route);
+            }
+            if (slowRequestSampler != null) {
+                context.getPipeline().addValve(new SlowRequestValve(slowRequestSampler, cName));
+            }
+            context.addLifecycleListener(new ContextEventsListener(timingName));
+            if (leakDetector != null) {
+                leakDetector.track(context, timingName);
+            }
+            if (data.isMappedSessions()) {
+                context.setManager(new MappedSessionManager(
+                        data.getBuildDirectory().toPath().resolve(Path.of("tomcat", "sessions")).toFile()));
+            }
+            startupTimer.time(timingName + " setupResources",
+                    () -> setupResources(app, context, resourceCache, compressor, bundler));
+            if (contexts.isEmpty()) {
+                context.addLifecycleListener(new TomcatStartListener(data, app));
+            }
+            context.addLifecycleListener(new DefaultServletListener(primary && !data.getPrecompressedResources().isEmpty(),
+                    data.getSendfileSize()));
+            if (data.isInjectLiveReload()) {
+                context.addLifecycleListener(new LiveReloadFilterListener(Constants.DEFAULT_LR_PORT));
+            }
+            context.addLifecycleListener(new JspServletListener(getJspScratchDirectory(tomcat, app), data.isWatchJsps()));
+            if (features != null) {
+                context.addLifecycleListener(new FastStartListener(features));
+                List<String> skippedInitializers = new ArrayList<>();
+                if (!features.isJsp()) {
+                    //Jasper's initializer is what scans every jar for TLDs
+                    skippedInitializers.add("org\\.apache\\.jasper\\.servlet\\.JasperInitializer");
+                }
+                if (!features.isWebsocket()) {
+                    skippedInitializers.add("org\\.apache\\.tomcat\\.websocket\\.server\\.WsSci");
+                }
+                if (!skippedInitializers.isEmpty()) {
+                    context.setContainerSciFilter(String.join("|", skippedInitializers));
+                }
+            }
+
+            TimedJarScanner scanner = new TimedJarScanner(startupTimer, timingName);
+            StandardJarScanFilter filter = new StandardJarScanFilter();
+            if (!data.getJarsToSkip().equals("--")) {
+                filter.setPluggabilitySkip(data.getJarsToSkip());
+                filter.setTldSkip(data.getJarsToSkip());
+            }
+            if (!data.getJarsToScan().equals("--")) {
+                filter.setPluggabilityScan(data.getJarsToScan());
+                filter.setTldScan(data.getJarsToScan());
+            }
+            scanner.setJarScanFilter(filter);
+            if (features != null) {
+                //Class-Path entries of manifests are left to the classpath
+                scanner.setScanManifest(false);
+            }
+            context.setJarScanner(scanner);
+
+            //Setup Environment variables
+            if (isNamingUsed()) {
+                app.getApplicationProperties().forEach((k, v) -> context.getNamingResources()
+                        .addEnvironment(ApplicationPropertiesUpdater.toEnvironment(k, v)));
+            } else {
+                //Nothing can look it up without naming so it is a context parameter instead
+                context.addParameter(INSTALL_DIR, app.getWebAppBaseDirectory().getAbsolutePath());
+            }
+            contexts.add(context);
+        }
+        startedContexts.addAll(contexts);
+        JspRecompiler jspRecompiler = null;
+        if (data.isWatchJsps() && (features == null || features.isJsp())) {
+            List<File> roots = new ArrayList<>();
+            roots.add(app.getWebAppBaseDirectory());
+            roots.addAll(app.getWebAppResources());
+            jspRecompiler = new JspRecompiler(contexts, roots);
+            handle.subscribe(jspRecompiler::shutdown);
+        }
+        if (features != null) {
+            val recompiler = jspRecompiler;
+            deferredSetup.add(() -> setupFileWatching(app, contexts, resourceCache, compressor, bundler, recompiler));
+            return;
+        }
+        val watchers = startupTimer.start("[" + cName + "] watcher registration");
+        setupFileWatching(app, contexts, resourceCache, compressor, bundler, jspRecompiler);
+        watchers.close();
+    }
+
+    /**
+     * One directory per context and node, e.g. tomcat/jsp/admin-node1
+     */
+    private File getJspScratchDirectory(Tomcat tomcat, WebAppData app) {
+        val name = app.getServletPath().replaceFirst("^/", "").replace('/', '#');
+        val route = tomcat.getEngine().getJvmRoute();
+        return data.getBuildDirectory().toPath().resolve(Path.of("tomcat", "jsp", (name.isEmpty() ? "ROOT" : name)
+                + (route == null ? "" : "-" + route))).toFile();
+    }
+
     private void setupLiveReload() {
         server.start();
         handle.subscribe(server::stop);
     }
 
-    private void setupResources(StandardContext context) {
-        StandardRoot root = new StandardRoot(context);
-        val absPath = data.getCompiledLocation().getAbsolutePath();
+    private void setupResources(WebAppData app, StandardContext context, ResourceMetadataCache resourceCache,
+                                StaticAssetCompressor compressor, AssetBundler bundler) {
+        WatchedResourceRoot root = new WatchedResourceRoot(context, resourceCache);
+        if (!bundler.isEmpty()) {
+            BundleResourceSet bundles = new BundleResourceSet(root, bundler);
+            root.addPreResources(bundles);
+            root.setBundles(bundles);
+        }
+        val absPath = app.getCompiledLocation().getAbsolutePath();
         DirResourceSet set = new DirResourceSet(root, "/WEB-INF/classes", absPath, "/");
         root.addPreResources(set);
-        data.getWebAppResources().forEach(f -> {
+        Set<String> jarNames = new HashSet<>();
+        for (val library : app.getLibraries()) {
+            if (library.isDirectory()) {
+                root.addPostResources(new DirResourceSet(root, "/WEB-INF/classes", library.getAbsolutePath(), "/"));
+            } else if (library.isFile() && jarNames.add(library.getName())) {
+                root.addPostResources(new FileResourceSet(root, "/WEB-INF/lib/" + library.getName(),
+                        library.getAbsolutePath(), "/"));
+            } else if (library.isFile()) {
+                log.warn("[{}] already has a WEB-INF/lib/{} so {} is left out", context.getName(), library.getName(),
+                        library);
+            }
+        }
+        app.getWebAppResources().forEach(f -> {
             if (f.isFile()) {
                 val rSet = new FileResourceSet(root, "/", f.getAbsolutePath(), "/");
                 root.addPreResources(rSet);
             } else {
                 val rSet = new DirResourceSet(root, "/", f.getAbsolutePath(), "/");
                 root.addPreResources(rSet);
+                val shadow = compressor.getShadowDirectory(f);
+                if (shadow != null && (shadow.isDirectory() || shadow.mkdirs())) {
+                    root.addPreResources(new DirResourceSet(root, "/", shadow.getAbsolutePath(), "/"));
+                }
             }
         });
         context.setResources(root);
     }
 
-    private synchronized void setupFileWatching(StandardContext context) {
+    private synchronized void setupFileWatching(WebAppData app, List<StandardContext> contexts, ResourceMetadataCache resourceCache,
+                                                StaticAssetCompressor compressor, AssetBundler bundler,
+                                                JspRecompiler jspRecompiler) {
         try {
-            FileWatcher watcher = new FileWatcher(Stream.concat(data.getSrcDirectories().stream(), data.getWebAppResources().stream())
+            FileWatcher watcher = new FileWatcher(Stream.concat(app.getSrcDirectories().stream(), app.getWebAppResources().stream())
                     .collect(Collectors.toList()),
-                    data.getCompileClasspath(), data.getCompiledLocation(), data.getSourceCompatability(),
+                    app.getCompileClasspath(), app.getCompiledLocation(), data.getSourceCompatability(),
                     data.getTargetCompatability());
-            val cName = data.getServletPath().isEmpty() ? "ROOT" : data.getServletPath();
+            val cName = app.getServletPath().isEmpty() ? "ROOT" : app.getServletPath();
             watcher.subscribeClasses(() -> {
                 log.info("Reloading context [{}] because of file changes", cName);
-                context.reload();
+                //Every node of a cluster runs the same classes so they all reload together
+                contexts.parallelStream().forEach(StandardContext::reload);
                 log.info("Context [{}] has been reloaded", cName);
+                ReloadTracker.mark(ReloadTracker.Stage.RELOAD_DONE, cName);
                 server.publishChangeToConnections();
             });
+            if (jspRecompiler != null) {
+                //The base directory also holds the build output so only its JSPs are watched
+                val base = app.getWebAppBaseDirectory().getAbsoluteFile().toPath().normalize();
+                watcher.watchTree(base.toFile(), dir -> !JspRecompiler.isSkippedDirectory(base.relativize(dir)),
+                        JspRecompiler::isJsp);
+                watcher.subscribeResourceFiles(jspRecompiler::onChange);
+            }
+            if (app.getApplicationPropertiesFile() != null) {
+                val propertiesUpdater = new ApplicationPropertiesUpdater(app, contexts, data.getPropertiesRequiringReload());
+                watcher.watchFile(app.getApplicationPropertiesFile(), file -> {
+                    if (!propertiesUpdater.onChange(file)) return false;
+                    server.publishChangeToConnections();
+                    return true;
+                });
+            }
+            watcher.subscribeResourceFiles(resourceCache::invalidate);
+            watcher.subscribeResourceFiles(compressor::onChange);
+            watcher.subscribeResourceFiles(bundler::onChange);
+            //Bundle inputs outside the source and resource directories are watched one by one
+            val watchedRoots = Stream.concat(app.getSrcDirectories().stream(), app.getWebAppResources().stream())
+                    .filter(File::isDirectory).map(f -> f.getAbsoluteFile().toPath().normalize())
+                    .collect(Collectors.toList());
+            for (val input : bundler.getInputs()) {
+                if (watchedRoots.stream().anyMatch(input::startsWith)) continue;
+                watcher.watchFile(input.toFile(), file -> {
+                    bundler.onChange(file);
+                    server.publishChangeToConnections();
+                    return true;
+                });
+            }
             watcher.subscribeResources(server::publishChangeToConnections);
             watcher.start();
             handle.subscribe(watcher::stop);
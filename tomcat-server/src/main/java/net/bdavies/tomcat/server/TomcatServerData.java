@@ -2,109 +2,371 @@ package net.bdavies.tomcat.server;
 
 import java.io.File;
 import java.util.List;
-import java.util.Properties;
+import java.util.Map;
 
 /**
+ * The server settings, the webapp methods inherited from {@link WebAppData} describe the primary webapp
+ *
  * @author ben.davies
  */
-public interface TomcatServerData {
+public interface TomcatServerData extends WebAppData {
     /**
-     * Location to the app.properties which sets the {@link javax.naming.InitialContext} data
+     * Get every webapp hosted by the server, the primary webapp first
      *
-     * @return the properties data
+     * @return the webapps
      */
-    Properties getApplicationProperties();
+    List<WebAppData> getWebApps();
 
     /**
-     * Get the servlet path i.e. /location/
+     * Get the webapp runtime classpath
      *
-     * @return the path
+     * @return the file
      */
-    String getServletPath();
+    String getRuntimeClasspath();
 
     /**
-     * Get the compiled directory for the web app classes
+     * Get the webapp jars to skip scanning
      *
-     * @return the file
+     * @return the string ,
      */
-    File getCompiledLocation();
+    String getJarsToSkip();
 
     /**
-     * Get the webapp base directory
+     * Get the webapp jars to ensure scanning
      *
-     * @return the file
+     * @return the string ,
      */
-    File getWebAppBaseDirectory();
+    String getJarsToScan();
 
     /**
-     * Get the webapp runtime classpath
+     * The target java version
      *
-     * @return the file
+     * @return a java version
      */
-    String getCompileClasspath();
+    String getTargetCompatability();
 
     /**
-     * Get the webapp runtime classpath
+     * The source java version
      *
-     * @return the file
+     * @return a java version
      */
-    String getRuntimeClasspath();
+    String getSourceCompatability();
 
     /**
-     * Get the webapp jars to skip scanning
+     * Get the server port
      *
-     * @return the string ,
+     * @return the server port
      */
-    String getJarsToSkip();
+    int getPort();
 
     /**
-     * Get the webapp jars to ensure scanning
+     * Get the shutdown port
      *
-     * @return the string ,
+     * @return the shutdown port
      */
-    String getJarsToScan();
+    int getShutdownPort();
 
     /**
-     * The target java version
+     * Get the number of seconds a LiveReload connection can be idle before it is pinged, a client that does not
+     * reply to the ping is disconnected
      *
-     * @return a java version
+     * @return the heartbeat interval in seconds
      */
-    String getTargetCompatability();
+    int getLiveReloadHeartbeatInterval();
 
     /**
-     * The source java version
+     * Should the livereload.js script tag be injected into html responses
      *
-     * @return a java version
+     * @return true to inject the script
      */
-    String getSourceCompatability();
+    boolean isInjectLiveReload();
 
     /**
-     * Get the src directories that web application uses for the auto reload on file change
+     * Get the project build directory, the runner keeps its generated files under build/tomcat
      *
-     * @return the source directories
+     * @return the build directory
      */
-    List<File> getSrcDirectories();
+    File getBuildDirectory();
 
     /**
-     * Get the webapp resource directories e.g. /css /images /js
-     * they will be mapped to the context root /dirName e.g. {host}:{port}/dirName/file.ext
-     * an actual example http://localhost:8080/css/main.css
+     * Get the webapp resource directories that should have gzip copies of their text assets generated and served
+     * to clients that accept them
      *
-     * @return the web app resources
+     * @return the directories to precompress
      */
-    List<File> getWebAppResources();
+    List<File> getPrecompressedResources();
 
     /**
-     * Get the server port
+     * Get the size in KB over which static files are sent with sendfile instead of being copied through the
+     * response buffer
      *
-     * @return the server port
+     * @return the sendfile threshold in KB
      */
-    int getPort();
+    int getSendfileSize();
 
     /**
-     * Get the shutdown port
+     * Get the css/js bundles to build, the path of each bundle in the webapp mapped to the files that are
+     * concatenated in order to make it
      *
-     * @return the shutdown port
+     * @return the bundles
      */
-    int getShutdownPort();
+    Map<String, List<File>> getBundles();
+
+    /**
+     * Should the bundle inputs be minified before they are concatenated
+     *
+     * @return true to minify
+     */
+    boolean isMinifyBundles();
+
+    /**
+     * Get the connector protocol, nio or nio2
+     *
+     * @return the protocol
+     */
+    String getProtocol();
+
+    /**
+     * Get the number of request threads that are always kept alive
+     *
+     * @return the minimum number of threads
+     */
+    int getMinSpareThreads();
+
+    /**
+     * Get the maximum number of request threads
+     *
+     * @return the maximum number of threads
+     */
+    int getMaxThreads();
+
+    /**
+     * Get the number of requests that can wait for a free thread before they are rejected
+     *
+     * @return the executor queue size
+     */
+    int getMaxQueueSize();
+
+    /**
+     * Get the length of the OS accept queue used when every connection is in use
+     *
+     * @return the accept count
+     */
+    int getAcceptCount();
+
+    /**
+     * Get the number of connections the connector will accept and process at once
+     *
+     * @return the maximum number of connections
+     */
+    int getMaxConnections();
+
+    /**
+     * Get the time in milliseconds an idle keep-alive connection is held open
+     *
+     * @return the keep-alive timeout
+     */
+    int getKeepAliveTimeout();
+
+    /**
+     * Get the number of requests that can be made on one keep-alive connection, -1 for no limit
+     *
+     * @return the maximum number of keep-alive requests
+     */
+    int getMaxKeepAliveRequests();
+
+    /**
+     * Get the socket receive buffer size in bytes, -1 for the OS default
+     *
+     * @return the receive buffer size
+     */
+    int getSocketReceiveBufferSize();
+
+    /**
+     * Get the socket send buffer size in bytes, -1 for the OS default
+     *
+     * @return the send buffer size
+     */
+    int getSocketSendBufferSize();
+
+    /**
+     * Get the connector compression mode, off, on or force
+     *
+     * @return the compression mode
+     */
+    String getCompression();
+
+    /**
+     * Get the smallest response in bytes that is compressed
+     *
+     * @return the minimum size to compress
+     */
+    int getCompressionMinSize();
+
+    /**
+     * Get the mime types that are compressed, empty to use Tomcat's defaults
+     *
+     * @return the compressible mime types
+     */
+    List<String> getCompressibleMimeTypes();
+
+    /**
+     * Should every request run on its own virtual thread instead of the thread pool, only used on JDK 21+
+     *
+     * @return true to use virtual threads
+     */
+    boolean isVirtualThreads();
+
+    /**
+     * Should the connectors accept HTTP/2, h2c upgrades on the HTTP connector and ALPN on the HTTPS one
+     *
+     * @return true to enable HTTP/2
+     */
+    boolean isHttp2();
+
+    /**
+     * Get the port of the HTTPS connector that uses a self-signed localhost certificate
+     *
+     * @return the https port or -1 for no HTTPS connector
+     */
+    int getHttpsPort();
+
+    /**
+     * Get the number of streams a client can have open on one HTTP/2 connection
+     *
+     * @return the maximum number of concurrent streams
+     */
+    int getHttp2MaxConcurrentStreams();
+
+    /**
+     * Get the number of streams of one HTTP/2 connection that can be processed at once
+     *
+     * @return the maximum number of streams being executed
+     */
+    int getHttp2MaxConcurrentStreamExecution();
+
+    /**
+     * Get the initial HTTP/2 flow control window size in bytes
+     *
+     * @return the initial window size
+     */
+    int getHttp2InitialWindowSize();
+
+    /**
+     * Get the number of Tomcat instances to run behind the load balancer, each one listens on the next port
+     * after the server port and has the jvmRoute nodeN
+     *
+     * @return the number of nodes, 1 for a single instance without a load balancer
+     */
+    int getClusterNodes();
+
+    /**
+     * Get how the load balancer picks a node, round-robin, least-connections or sticky
+     *
+     * @return the policy name
+     */
+    String getLoadBalancerPolicy();
+
+    /**
+     * Get the number of seconds between the per node throughput reports of a cluster
+     *
+     * @return the report interval in seconds
+     */
+    int getThroughputReportInterval();
+
+    /**
+     * Should sessions be kept across reloads in a memory mapped store under build/tomcat/sessions instead of
+     * Tomcat's SESSIONS.ser
+     *
+     * @return true to use the mapped session store
+     */
+    boolean isMappedSessions();
+
+    /**
+     * Should the file watcher recompile changed JSPs, Jasper's per request modification checks are turned off
+     * when it does
+     *
+     * @return true to let the watcher drive JSP recompiles
+     */
+    boolean isWatchJsps();
+
+    /**
+     * Should every JSP be compiled when the runner starts instead of on its first request
+     *
+     * @return true to precompile the JSPs
+     */
+    boolean isPrecompileJsps();
+
+    /**
+     * Number of JSPs compiled at once while precompiling
+     *
+     * @return the number of threads, 0 for one per core
+     */
+    int getJspPrecompileThreads();
+
+    /**
+     * Get the application properties that are only read when the webapp starts, a change to one of them reloads
+     * the context instead of being applied in place
+     *
+     * @return the property names
+     */
+    List<String> getPropertiesRequiringReload();
+
+    /**
+     * Get the local port the request metrics are served on in the Prometheus text format
+     *
+     * @return the metrics port or -1 to not record any metrics
+     */
+    int getMetricsPort();
+
+    /**
+     * Get how long a request runs before the threads serving it have their stacks sampled
+     *
+     * @return the threshold in milliseconds or -1 to not sample slow requests
+     */
+    int getSlowRequestThreshold();
+
+    /**
+     * Get the time between stack samples of the slow requests
+     *
+     * @return the interval in milliseconds
+     */
+    int getSlowRequestSampleInterval();
+
+    /**
+     * Should a continuous flight recording be kept while the runner runs, it is written to
+     * build/tomcat/runner.jfr when the runner stops
+     *
+     * @return true to record
+     */
+    boolean isFlightRecording();
+
+    /**
+     * Should the webapp class loaders discarded by a reload be checked for leaks
+     *
+     * @return true to report the class loaders that are still reachable after a GC
+     */
+    boolean isDetectClassLoaderLeaks();
+
+    /**
+     * Get how much metaspace the runner can use before the budget action is taken, checked after every reload
+     *
+     * @return the budget in MB or -1 for no budget
+     */
+    int getMetaspaceBudget();
+
+    /**
+     * Get what is done when metaspace is over the budget, warn or restart
+     *
+     * @return the action
+     */
+    String getMetaspaceBudgetAction();
+
+    /**
+     * Should the webapps be looked at before they start so naming, Jasper and WebSocket are only set up when they
+     * are used and the file watching is set up after the server has started
+     *
+     * @return true for the fast start profile
+     */
+    boolean isFastStart();
 }
@@ -12,6 +12,7 @@ import org.apache.catalina.LifecycleListener;
 @RequiredArgsConstructor
 public class TomcatStartListener implements LifecycleListener {
     private final TomcatServerData data;
+    private final WebAppData app;
     /**
      * Acknowledge the occurrence of the specified event.
      *
@@ -21,7 +22,7 @@ public class TomcatStartListener implements LifecycleListener {
     public void lifecycleEvent(LifecycleEvent event) {
         if (event.getType().equals("after_start")) {
             log.info("Started Tomcat Server");
-            log.info("Server started at http://localhost:{}/{}", data.getPort(), data.getServletPath());
+            log.info("Server started at http://localhost:{}/{}", data.getPort(), app.getServletPath());
             log.info("To cleanly shutdown Tomcat - send \"SHUTDOWN\" as a TCP request to the port: {}", data.getShutdownPort());
         }
     }
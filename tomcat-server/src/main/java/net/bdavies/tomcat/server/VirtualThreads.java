@@ -0,0 +1,50 @@
+package net.bdavies.tomcat.server;
+
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual thread support, looked up reflectively because the runner is built for older JDKs than the one it
+ * may be launched on
+ *
+ * @author ben.davies
+ */
+@Slf4j
+@UtilityClass
+public class VirtualThreads {
+    private static final int MIN_FEATURE_VERSION = 21;
+
+    /**
+     * Is the running JDK new enough to have virtual threads without preview flags
+     *
+     * @return true if virtual threads can be used
+     */
+    public boolean isSupported() {
+        return Runtime.version().feature() >= MIN_FEATURE_VERSION;
+    }
+
+    /**
+     * Create an executor that starts a new named virtual thread for every task
+     *
+     * @param namePrefix the prefix of the thread names, a counter is added to it
+     * @return the executor or null if virtual threads could not be created
+     */
+    public ExecutorService newExecutor(String namePrefix) {
+        if (!isSupported()) return null;
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            log.error("Unable to create a virtual thread executor", e);
+            return null;
+        }
+    }
+}
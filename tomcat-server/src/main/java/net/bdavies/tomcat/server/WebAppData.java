@@ -0,0 +1,78 @@
+package net.bdavies.tomcat.server;
+
+import java.io.File;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A webapp hosted by the server, each one gets its own context, file watcher and reloads
+ *
+ * @author ben.davies
+ */
+public interface WebAppData {
+    /**
+     * Location to the app.properties which sets the {@link javax.naming.InitialContext} data
+     *
+     * @return the properties data
+     */
+    Properties getApplicationProperties();
+
+    /**
+     * Get the app.properties file the application properties were read from, it is watched for changes
+     *
+     * @return the file or null if there is none
+     */
+    File getApplicationPropertiesFile();
+
+    /**
+     * Get the servlet path i.e. /location/
+     *
+     * @return the path
+     */
+    String getServletPath();
+
+    /**
+     * Get the compiled directory for the web app classes
+     *
+     * @return the file
+     */
+    File getCompiledLocation();
+
+    /**
+     * Get the webapp base directory
+     *
+     * @return the file
+     */
+    File getWebAppBaseDirectory();
+
+    /**
+     * Get the webapp runtime classpath
+     *
+     * @return the file
+     */
+    String getCompileClasspath();
+
+    /**
+     * Get the src directories that web application uses for the auto reload on file change
+     *
+     * @return the source directories
+     */
+    List<File> getSrcDirectories();
+
+    /**
+     * Get the webapp resource directories e.g. /css /images /js
+     * they will be mapped to the context root /dirName e.g. {host}:{port}/dirName/file.ext
+     * an actual example http://localhost:8080/css/main.css
+     *
+     * @return the web app resources
+     */
+    List<File> getWebAppResources();
+
+    /**
+     * Get the runtime classpath of the webapp besides its classes, the jars are mounted in WEB-INF/lib and the
+     * directories in WEB-INF/classes of its own context so they can't clash with another webapp's
+     *
+     * @return the jars and directories
+     */
+    List<File> getLibraries();
+}
@@ -0,0 +1,192 @@
+package net.bdavies.tomcat.server.classloader;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.LifecycleListener;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows every webapp class loader a reload discards and reports the ones that are still reachable after a GC
+ *
+ * A loader is only held through a weak reference. A while after its context stopped a GC is asked for, if the
+ * reference hasn't been cleared by then something still holds the loader and with it every class of that
+ * generation, which is what makes metaspace grow with every reload. The usual suspects are looked for with
+ * {@link LeakSuspects}, a heap dump is needed for anything else.
+ *
+ * The metaspace used is checked at the same time against the budget, going over it either logs a warning or
+ * asks for the runner to be restarted.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+public class ClassLoaderLeakDetector implements LifecycleListener {
+    private static final long CHECK_DELAY_SECONDS = 10;
+    private static final long MB = 1024 * 1024;
+
+    private final boolean reportLeaks;
+    private final long metaspaceBudget;
+    private final boolean restartOverBudget;
+    private final Runnable restart;
+    private final List<Generation> discarded = new CopyOnWriteArrayList<>();
+    private final Map<Context, Tracked> contexts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private boolean overBudget;
+
+    /**
+     * @param reportLeaks       should the discarded class loaders that are still reachable be reported
+     * @param metaspaceBudgetMb the metaspace budget in MB, -1 for none
+     * @param budgetAction      warn or restart
+     * @param restart           restarts the runner
+     */
+    public ClassLoaderLeakDetector(boolean reportLeaks, int metaspaceBudgetMb, String budgetAction, Runnable restart) {
+        this.reportLeaks = reportLeaks;
+        this.metaspaceBudget = metaspaceBudgetMb > 0 ? metaspaceBudgetMb * MB : -1;
+        this.restartOverBudget = "restart".equalsIgnoreCase(budgetAction);
+        if (!restartOverBudget && !"warn".equalsIgnoreCase(budgetAction)) {
+            log.warn("Unknown metaspace budget action {} (expected warn or restart) so using warn", budgetAction);
+        }
+        this.restart = restart;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Tomcat-ClassLoader-Leak-Detector");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Follow the class loaders of a context, call before it starts
+     *
+     * @param context the context
+     * @param name    the name used when reporting
+     */
+    public void track(Context context, String name) {
+        contexts.put(context, new Tracked(name));
+        context.addLifecycleListener(this);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public void lifecycleEvent(LifecycleEvent event) {
+        val context = (Context) event.getLifecycle();
+        val tracked = contexts.get(context);
+        if (tracked == null) return;
+        switch (event.getType()) {
+            case Lifecycle.AFTER_START_EVENT:
+                tracked.generation++;
+                break;
+            case Lifecycle.BEFORE_STOP_EVENT:
+                //The loader forgets its class loader when it stops
+                val loader = context.getLoader() == null ? null : context.getLoader().getClassLoader();
+                if (reportLeaks && loader != null) {
+                    discarded.add(new Generation(tracked.name, tracked.generation, System.currentTimeMillis(),
+                            loader.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(loader)),
+                            new WeakReference<>(loader)));
+                }
+                break;
+            case Lifecycle.AFTER_STOP_EVENT:
+                if (!scheduler.isShutdown()) {
+                    scheduler.schedule(this::check, CHECK_DELAY_SECONDS, TimeUnit.SECONDS);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void check() {
+        try {
+            int leaked = 0;
+            if (reportLeaks) {
+                //Asked for rather than waited for, the loaders that are only weakly held are cleared by it
+                System.gc();
+            }
+            for (val generation : discarded) {
+                val loader = generation.loader.get();
+                if (loader == null) {
+                    if (generation.reported) {
+                        log.info("Context [{}] generation {} ({}) has been collected after all", generation.context,
+                                generation.number, generation.description);
+                    }
+                    discarded.remove(generation);
+                    continue;
+                }
+                leaked++;
+                if (generation.reported) continue;
+                generation.reported = true;
+                val suspects = LeakSuspects.find(loader);
+                log.warn("Context [{}] generation {} ({}) is still reachable {} s after it was discarded, "
+                                + "what could be holding it:\n  {}", generation.context, generation.number,
+                        generation.description, (System.currentTimeMillis() - generation.discardedAt) / 1000,
+                        suspects.isEmpty() ? "nothing known, take a heap dump with jcmd <pid> GC.heap_dump and "
+                                + "look at the paths from the GC roots to " + generation.description
+                                : String.join("\n  ", suspects));
+            }
+            checkMetaspace(leaked);
+        } catch (RuntimeException e) {
+            log.warn("Unable to check for class loader leaks", e);
+        }
+    }
+
+    private void checkMetaspace(int leaked) {
+        val used = getMetaspaceUsed();
+        if (used < 0) return;
+        log.info("Metaspace is using {} MB with {} discarded webapp class loaders still reachable", used / MB, leaked);
+        if (metaspaceBudget <= 0) return;
+        if (used <= metaspaceBudget) {
+            overBudget = false;
+            return;
+        }
+        if (restartOverBudget) {
+            log.warn("Metaspace is using {} MB which is over the budget of {} MB, restarting the runner", used / MB,
+                    metaspaceBudget / MB);
+            scheduler.shutdown();
+            restart.run();
+        } else if (!overBudget) {
+            overBudget = true;
+            log.warn("Metaspace is using {} MB which is over the budget of {} MB, restart the runner to get it back",
+                    used / MB, metaspaceBudget / MB);
+        }
+    }
+
+    private long getMetaspaceUsed() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getName().equals("Metaspace")) {
+                return pool.getUsage().getUsed();
+            }
+        }
+        return -1;
+    }
+
+    @RequiredArgsConstructor
+    private static class Tracked {
+        private final String name;
+        private int generation;
+    }
+
+    @RequiredArgsConstructor
+    private static class Generation {
+        private final String context;
+        private final int number;
+        private final long discardedAt;
+        private final String description;
+        private final WeakReference<ClassLoader> loader;
+        private volatile boolean reported;
+    }
+}
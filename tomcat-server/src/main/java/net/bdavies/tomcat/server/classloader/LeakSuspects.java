@@ -0,0 +1,135 @@
+package net.bdavies.tomcat.server.classloader;
+
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Looks for the usual things that keep a discarded webapp class loader alive: threads the webapp started or that
+ * still use it as their context class loader, ThreadLocals holding its objects, JDBC drivers it registered and
+ * shutdown hooks it added
+ *
+ * The ThreadLocals, drivers and shutdown hooks are read with reflection, which needs the runner to be started with
+ * the JDK packages opened, the Gradle task does that.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+@UtilityClass
+class LeakSuspects {
+    private final Field THREAD_LOCALS = getField(Thread.class, "threadLocals");
+    private final Field INHERITABLE_THREAD_LOCALS = getField(Thread.class, "inheritableThreadLocals");
+    private final Field THREAD_LOCAL_TABLE = getField("java.lang.ThreadLocal$ThreadLocalMap", "table");
+    private final Field THREAD_LOCAL_VALUE = getField("java.lang.ThreadLocal$ThreadLocalMap$Entry", "value");
+    private final Field REGISTERED_DRIVERS = getField(DriverManager.class, "registeredDrivers");
+    private final Field DRIVER = getField("java.sql.DriverInfo", "driver");
+    private final Field SHUTDOWN_HOOKS = getField("java.lang.ApplicationShutdownHooks", "hooks");
+
+    /**
+     * @param loader the discarded class loader
+     * @return a line for everything found that holds the loader
+     */
+    List<String> find(ClassLoader loader) {
+        List<String> suspects = new ArrayList<>();
+        for (val thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getClass().getClassLoader() == loader) {
+                suspects.add("Thread '" + thread.getName() + "' is a " + thread.getClass().getName()
+                        + " of the webapp that is still running");
+            } else if (thread.getContextClassLoader() == loader) {
+                suspects.add("Thread '" + thread.getName() + "' still has it as its context class loader");
+            }
+            addThreadLocals(thread, THREAD_LOCALS, loader, suspects);
+            addThreadLocals(thread, INHERITABLE_THREAD_LOCALS, loader, suspects);
+        }
+        addDrivers(loader, suspects);
+        addShutdownHooks(loader, suspects);
+        if (THREAD_LOCAL_VALUE == null || REGISTERED_DRIVERS == null || SHUTDOWN_HOOKS == null) {
+            suspects.add("(ThreadLocals, JDBC drivers or shutdown hooks could not be checked, start the runner with "
+                    + "--add-opens java.base/java.lang=ALL-UNNAMED --add-opens java.sql/java.sql=ALL-UNNAMED)");
+        }
+        return suspects;
+    }
+
+    private void addThreadLocals(Thread thread, Field mapField, ClassLoader loader, List<String> suspects) {
+        if (mapField == null || THREAD_LOCAL_TABLE == null || THREAD_LOCAL_VALUE == null) return;
+        try {
+            val map = mapField.get(thread);
+            if (map == null) return;
+            for (val entry : (Object[]) THREAD_LOCAL_TABLE.get(map)) {
+                if (entry == null) continue;
+                val key = ((Reference<?>) entry).get();
+                val value = THREAD_LOCAL_VALUE.get(entry);
+                if (isFrom(key, loader) || isFrom(value, loader)) {
+                    suspects.add("Thread '" + thread.getName() + "' has a ThreadLocal ("
+                            + (key == null ? "already collected" : key.getClass().getName()) + ") holding "
+                            + (value == null ? "null" : value.getClass().getName()));
+                }
+            }
+        } catch (IllegalAccessException | RuntimeException e) {
+            log.debug("Unable to read the ThreadLocals of {}", thread.getName(), e);
+        }
+    }
+
+    private void addDrivers(ClassLoader loader, List<String> suspects) {
+        if (REGISTERED_DRIVERS == null || DRIVER == null) return;
+        try {
+            for (val info : (Collection<?>) REGISTERED_DRIVERS.get(null)) {
+                val driver = DRIVER.get(info);
+                if (isFrom(driver, loader)) {
+                    suspects.add("JDBC driver " + driver.getClass().getName()
+                            + " is still registered with the DriverManager, deregister it when the webapp stops");
+                }
+            }
+        } catch (IllegalAccessException | RuntimeException e) {
+            log.debug("Unable to read the registered JDBC drivers", e);
+        }
+    }
+
+    private void addShutdownHooks(ClassLoader loader, List<String> suspects) {
+        if (SHUTDOWN_HOOKS == null) return;
+        try {
+            //Hooks are only held by the JDK until it exits so they are kept even though they never run here
+            synchronized (SHUTDOWN_HOOKS.getDeclaringClass()) {
+                for (val hook : ((Map<?, ?>) SHUTDOWN_HOOKS.get(null)).keySet()) {
+                    val thread = (Thread) hook;
+                    if (isFrom(thread, loader) || thread.getContextClassLoader() == loader) {
+                        suspects.add("Shutdown hook '" + thread.getName() + "' (" + thread.getClass().getName()
+                                + ") was added by the webapp and never removed");
+                    }
+                }
+            }
+        } catch (IllegalAccessException | RuntimeException e) {
+            log.debug("Unable to read the shutdown hooks", e);
+        }
+    }
+
+    private boolean isFrom(Object object, ClassLoader loader) {
+        return object != null && object.getClass().getClassLoader() == loader;
+    }
+
+    private Field getField(String className, String name) {
+        try {
+            return getField(Class.forName(className), name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private Field getField(Class<?> type, String name) {
+        try {
+            val field = type.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package net.bdavies.tomcat.server.cluster;
+
+import java.util.List;
+
+/**
+ * Chooses the node a new connection is sent to
+ *
+ * @author ben.davies
+ */
+public interface BalancerPolicy {
+    /**
+     * Choose a node for a connection
+     *
+     * @param nodes    the nodes to choose from
+     * @param jvmRoute the route of the session the first request belongs to or null if it has no session
+     * @return the node
+     */
+    Node choose(List<Node> nodes, String jvmRoute);
+
+    /**
+     * Get a policy by its setting name
+     *
+     * @param name round-robin, least-connections or sticky
+     * @return the policy, round robin when the name is unknown
+     */
+    static BalancerPolicy forName(String name) {
+        switch (name.toLowerCase()) {
+            case "least-connections":
+                return new LeastConnectionsPolicy();
+            case "sticky":
+                return new StickyPolicy(new LeastConnectionsPolicy());
+            default:
+                return new RoundRobinPolicy();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package net.bdavies.tomcat.server.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Sends each connection to the node with the fewest open connections
+ *
+ * @author ben.davies
+ */
+@Slf4j
+public class LeastConnectionsPolicy implements BalancerPolicy {
+    @Override
+    public Node choose(List<Node> nodes, String jvmRoute) {
+        return nodes.stream().min(Comparator.comparingInt(n -> n.getActiveConnections().get())).orElse(nodes.get(0));
+    }
+}
@@ -0,0 +1,177 @@
+package net.bdavies.tomcat.server.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * A small TCP load balancer in front of the cluster nodes
+ *
+ * Routing is per connection, the head of the first request is read to find the session route for the sticky
+ * policy and then bytes are copied both ways untouched, so every request on a keep-alive connection goes to
+ * the same node. It uses blocking sockets and two threads per connection which is plenty for local testing.
+ * A client has {@link #HEAD_TIMEOUT} milliseconds to send the head of its first request.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+public class LoadBalancer implements Runnable {
+    private static final int MAX_HEAD_SIZE = 8192;
+    private static final int HEAD_TIMEOUT = 20000;
+    private static final int BUFFER_SIZE = 16384;
+    private static final Pattern SESSION_ID = Pattern.compile("(?i)jsessionid=([^;,\\s&?#]+)");
+
+    private final int port;
+    private final List<Node> nodes;
+    private final BalancerPolicy policy;
+    private final ExecutorService service;
+    private final Thread acceptThread;
+    private volatile boolean isRunning;
+    private ServerSocket socket;
+
+    public LoadBalancer(int port, List<Node> nodes, BalancerPolicy policy) {
+        this.port = port;
+        this.nodes = nodes;
+        this.policy = policy;
+        this.service = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "Tomcat-LB-Connection");
+            t.setDaemon(true);
+            return t;
+        });
+        this.acceptThread = new Thread(this, "Tomcat-LB-" + port);
+        acceptThread.setDaemon(true);
+    }
+
+    /**
+     * Bind the port and start accepting connections
+     *
+     * @throws IOException if the port can't be bound
+     */
+    public synchronized void start() throws IOException {
+        if (isRunning) return;
+        socket = new ServerSocket(port);
+        isRunning = true;
+        acceptThread.start();
+    }
+
+    public synchronized void stop() {
+        if (!isRunning) return;
+        isRunning = false;
+        try {
+            if (socket != null) socket.close();
+        } catch (IOException e) {
+            log.error("Failed to stop the load balancer", e);
+        }
+        service.shutdownNow();
+    }
+
+    @Override
+    public void run() {
+        try {
+            log.info("Load balancing port {} over {} nodes using {}", port, nodes.size(),
+                    policy.getClass().getSimpleName());
+            while (isRunning && !socket.isClosed()) {
+                val client = socket.accept();
+                service.execute(() -> handle(client));
+            }
+        } catch (IOException e) {
+            if (isRunning) {
+                log.error("The load balancer on port {} stopped accepting connections", port, e);
+            }
+        }
+    }
+
+    private void handle(Socket client) {
+        Node node = null;
+        try (Socket c = client) {
+            c.setTcpNoDelay(true);
+            val head = new byte[MAX_HEAD_SIZE];
+            c.setSoTimeout(HEAD_TIMEOUT);
+            val headLength = readHead(c.getInputStream(), head);
+            if (headLength <= 0) return;
+            //Once it is piped the node's keep alive timeout closes idle connections
+            c.setSoTimeout(0);
+            node = policy.choose(nodes, jvmRoute(new String(head, 0, headLength, StandardCharsets.ISO_8859_1)));
+            node.getActiveConnections().incrementAndGet();
+            try (Socket backend = new Socket(InetAddress.getLoopbackAddress(), node.getPort())) {
+                backend.setTcpNoDelay(true);
+                backend.getOutputStream().write(head, 0, headLength);
+                Future<?> response = service.submit(() -> pipe(backend, c));
+                pipe(c, backend);
+                response.get();
+            }
+        } catch (IOException | ExecutionException e) {
+            log.debug("Connection through the load balancer failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (node != null) {
+                node.getActiveConnections().decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Read until the end of the first request's headers, the buffer being full or the client closing
+     */
+    private int readHead(InputStream is, byte[] head) throws IOException {
+        int length = 0;
+        while (length < head.length) {
+            int read = is.read(head, length, head.length - length);
+            if (read == -1) break;
+            length += read;
+            if (endsHead(head, length)) break;
+        }
+        return length;
+    }
+
+    private boolean endsHead(byte[] head, int length) {
+        for (int i = 3; i < length; i++) {
+            if (head[i] == '\n' && head[i - 1] == '\r' && head[i - 2] == '\n' && head[i - 3] == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tomcat appends .jvmRoute to the session id, look for one in the cookie header or the url
+     */
+    static String jvmRoute(String head) {
+        val matcher = SESSION_ID.matcher(head);
+        if (!matcher.find()) return null;
+        val sessionId = matcher.group(1);
+        val dot = sessionId.lastIndexOf('.');
+        return dot == -1 ? null : sessionId.substring(dot + 1);
+    }
+
+    private void pipe(Socket from, Socket to) {
+        try {
+            InputStream is = from.getInputStream();
+            OutputStream os = to.getOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                os.write(buffer, 0, read);
+                os.flush();
+            }
+            //Pass the half close on so the other side sees the end of the stream
+            to.shutdownOutput();
+        } catch (IOException e) {
+            log.trace("Stopped copying between {} and {}", from, to, e);
+        }
+    }
+}
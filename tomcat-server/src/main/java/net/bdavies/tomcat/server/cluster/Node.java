@@ -0,0 +1,23 @@
+package net.bdavies.tomcat.server.cluster;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Tomcat instance behind the {@link LoadBalancer}
+ *
+ * @author ben.davies
+ */
+@Slf4j
+@Getter
+@RequiredArgsConstructor
+public class Node {
+    private final String jvmRoute;
+    private final int port;
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final LongAdder requests = new LongAdder();
+}
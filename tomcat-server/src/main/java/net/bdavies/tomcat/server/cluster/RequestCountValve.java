@@ -0,0 +1,33 @@
+package net.bdavies.tomcat.server.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+
+/**
+ * Counts the requests a node has served for the throughput report
+ *
+ * @author ben.davies
+ */
+@Slf4j
+public class RequestCountValve extends ValveBase {
+    private final Node node;
+
+    public RequestCountValve(Node node) {
+        super(true);
+        this.node = node;
+    }
+
+    @Override
+    public void invoke(Request request, Response response) throws IOException, ServletException {
+        try {
+            getNext().invoke(request, response);
+        } finally {
+            node.getRequests().increment();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package net.bdavies.tomcat.server.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends each connection to the next node in turn
+ *
+ * @author ben.davies
+ */
+@Slf4j
+public class RoundRobinPolicy implements BalancerPolicy {
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Override
+    public Node choose(List<Node> nodes, String jvmRoute) {
+        return nodes.get(Math.floorMod(next.getAndIncrement(), nodes.size()));
+    }
+}
@@ -0,0 +1,29 @@
+package net.bdavies.tomcat.server.cluster;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * Sends connections that carry a session to the node that created it, the same as mod_jk and mod_proxy's
+ * stickysession, anything else is left to the fallback policy
+ *
+ * @author ben.davies
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class StickyPolicy implements BalancerPolicy {
+    private final BalancerPolicy fallback;
+
+    @Override
+    public Node choose(List<Node> nodes, String jvmRoute) {
+        if (jvmRoute != null) {
+            for (Node node : nodes) {
+                if (node.getJvmRoute().equals(jvmRoute)) return node;
+            }
+            log.debug("No node with the route {} so the session will fail over", jvmRoute);
+        }
+        return fallback.choose(nodes, null);
+    }
+}
@@ -0,0 +1,63 @@
+package net.bdavies.tomcat.server.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs the requests per second each node has served since the last report
+ *
+ * @author ben.davies
+ */
+@Slf4j
+public class ThroughputReporter {
+    private final List<Node> nodes;
+    private final long intervalSeconds;
+    private final long[] lastCounts;
+    private final ScheduledExecutorService scheduler;
+    private long lastReport;
+
+    public ThroughputReporter(List<Node> nodes, long intervalSeconds) {
+        this.nodes = nodes;
+        this.intervalSeconds = intervalSeconds;
+        this.lastCounts = new long[nodes.size()];
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Tomcat-Cluster-Throughput");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void start() {
+        lastReport = System.nanoTime();
+        scheduler.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    private void report() {
+        long now = System.nanoTime();
+        double seconds = (now - lastReport) / 1e9;
+        lastReport = now;
+        val sb = new StringBuilder();
+        long total = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            val node = nodes.get(i);
+            long count = node.getRequests().sum();
+            long served = count - lastCounts[i];
+            lastCounts[i] = count;
+            total += served;
+            sb.append(String.format("%n  %-8s %10.1f req/s %6d connections", node.getJvmRoute(), served / seconds,
+                    node.getActiveConnections().get()));
+        }
+        if (total == 0) return;
+        log.info("Cluster throughput over the last {}s, {} req/s in total:{}", intervalSeconds,
+                String.format("%.1f", total / seconds), sb);
+    }
+}
@@ -0,0 +1,43 @@
+package net.bdavies.tomcat.server.jfr;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out the correlation id that ties together the flight recorder events of one change
+ *
+ * A change set begins when the watcher receives a file event it is going to act on and ends when LiveReload tells
+ * the browsers, or when the change turns out to need no broadcast. Every event acted on in between belongs to the
+ * same change set the same way the watcher's debounce folds them into one reload.
+ *
+ * @author ben.davies
+ */
+@UtilityClass
+public class ChangeSets {
+    private final AtomicLong ids = new AtomicLong();
+    private volatile long current;
+
+    /**
+     * @return the id of the change set in progress, 0 when there is none
+     */
+    public long current() {
+        return current;
+    }
+
+    /**
+     * Begin a change set unless one is already in progress
+     *
+     * @return the id of the change set in progress
+     */
+    public synchronized long begin() {
+        if (current == 0) {
+            current = ids.incrementAndGet();
+        }
+        return current;
+    }
+
+    public synchronized void end() {
+        current = 0;
+    }
+}
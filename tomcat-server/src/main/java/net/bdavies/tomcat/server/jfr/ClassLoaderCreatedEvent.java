@@ -0,0 +1,29 @@
+package net.bdavies.tomcat.server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * A context started with a new webapp class loader
+ *
+ * @author ben.davies
+ */
+@Name("net.bdavies.tomcat.ClassLoaderCreated")
+@Label("Webapp Class Loader Created")
+@Category({"Tomcat Runner", "Class Loading"})
+@StackTrace(false)
+@Setter
+public class ClassLoaderCreatedEvent extends Event {
+    @Label("Change Set")
+    private long changeSet;
+
+    @Label("Context")
+    private String context;
+
+    @Label("Class Loader")
+    private String classLoader;
+}
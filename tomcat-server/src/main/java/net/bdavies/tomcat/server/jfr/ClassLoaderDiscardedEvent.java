@@ -0,0 +1,29 @@
+package net.bdavies.tomcat.server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * A context stopped and let go of its webapp class loader, it can be collected unless something still holds on to it
+ *
+ * @author ben.davies
+ */
+@Name("net.bdavies.tomcat.ClassLoaderDiscarded")
+@Label("Webapp Class Loader Discarded")
+@Category({"Tomcat Runner", "Class Loading"})
+@StackTrace(false)
+@Setter
+public class ClassLoaderDiscardedEvent extends Event {
+    @Label("Change Set")
+    private long changeSet;
+
+    @Label("Context")
+    private String context;
+
+    @Label("Class Loader")
+    private String classLoader;
+}
@@ -0,0 +1,32 @@
+package net.bdavies.tomcat.server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * A compile of changed source files by the watcher
+ *
+ * @author ben.davies
+ */
+@Name("net.bdavies.tomcat.Compile")
+@Label("Compile")
+@Category({"Tomcat Runner", "Reload"})
+@StackTrace(false)
+@Setter
+public class CompileEvent extends Event {
+    @Label("Change Set")
+    private long changeSet;
+
+    @Label("File")
+    private String file;
+
+    @Label("Files")
+    private int files;
+
+    @Label("Errors")
+    private int errors;
+}
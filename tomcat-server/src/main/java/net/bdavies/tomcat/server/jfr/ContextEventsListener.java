@@ -0,0 +1,78 @@
+package net.bdavies.tomcat.server.jfr;
+
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.LifecycleListener;
+
+/**
+ * Emits the flight recorder events for a context stopping and starting and for its webapp class loaders
+ *
+ * @author ben.davies
+ */
+@RequiredArgsConstructor
+public class ContextEventsListener implements LifecycleListener {
+    private final String contextName;
+    private ContextStopEvent stopEvent;
+    private ContextStartEvent startEvent;
+    private String stoppingClassLoader;
+
+    @Override
+    public void lifecycleEvent(LifecycleEvent event) {
+        val context = (Context) event.getLifecycle();
+        switch (event.getType()) {
+            case Lifecycle.BEFORE_STOP_EVENT:
+                stopEvent = new ContextStopEvent();
+                stopEvent.setChangeSet(ChangeSets.current());
+                stopEvent.setContext(contextName);
+                //The loader forgets its class loader when it stops
+                stoppingClassLoader = describeClassLoader(context);
+                stopEvent.begin();
+                break;
+            case Lifecycle.AFTER_STOP_EVENT:
+                if (stopEvent != null) {
+                    stopEvent.commit();
+                    stopEvent = null;
+                }
+                if (stoppingClassLoader != null) {
+                    val discarded = new ClassLoaderDiscardedEvent();
+                    discarded.setChangeSet(ChangeSets.current());
+                    discarded.setContext(contextName);
+                    discarded.setClassLoader(stoppingClassLoader);
+                    discarded.commit();
+                    stoppingClassLoader = null;
+                }
+                break;
+            case Lifecycle.BEFORE_START_EVENT:
+                startEvent = new ContextStartEvent();
+                startEvent.setChangeSet(ChangeSets.current());
+                startEvent.setContext(contextName);
+                startEvent.begin();
+                break;
+            case Lifecycle.AFTER_START_EVENT:
+                if (startEvent != null) {
+                    startEvent.commit();
+                    startEvent = null;
+                }
+                val classLoader = describeClassLoader(context);
+                if (classLoader != null) {
+                    val created = new ClassLoaderCreatedEvent();
+                    created.setChangeSet(ChangeSets.current());
+                    created.setContext(contextName);
+                    created.setClassLoader(classLoader);
+                    created.commit();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private String describeClassLoader(Context context) {
+        val loader = context.getLoader() == null ? null : context.getLoader().getClassLoader();
+        return loader == null ? null
+                : loader.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(loader));
+    }
+}
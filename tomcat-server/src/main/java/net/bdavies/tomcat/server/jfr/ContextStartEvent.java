@@ -0,0 +1,26 @@
+package net.bdavies.tomcat.server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * A context starting, when the runner starts or for a reload
+ *
+ * @author ben.davies
+ */
+@Name("net.bdavies.tomcat.ContextStart")
+@Label("Context Start")
+@Category({"Tomcat Runner", "Reload"})
+@StackTrace(false)
+@Setter
+public class ContextStartEvent extends Event {
+    @Label("Change Set")
+    private long changeSet;
+
+    @Label("Context")
+    private String context;
+}
@@ -0,0 +1,26 @@
+package net.bdavies.tomcat.server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * A context stopping, for a reload or when the runner shuts down
+ *
+ * @author ben.davies
+ */
+@Name("net.bdavies.tomcat.ContextStop")
+@Label("Context Stop")
+@Category({"Tomcat Runner", "Reload"})
+@StackTrace(false)
+@Setter
+public class ContextStopEvent extends Event {
+    @Label("Change Set")
+    private long changeSet;
+
+    @Label("Context")
+    private String context;
+}
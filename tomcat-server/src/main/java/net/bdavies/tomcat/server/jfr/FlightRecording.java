@@ -0,0 +1,68 @@
+package net.bdavies.tomcat.server.jfr;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * A continuous flight recording of the runner, Java's default settings plus the runner's own events
+ *
+ * Only the last hour is kept, it is written to the file when the runner stops. A dump of what has been recorded
+ * so far can be taken at any time with jcmd &lt;pid&gt; JFR.dump.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+public class FlightRecording {
+    private static final Duration MAX_AGE = Duration.ofHours(1);
+    private static final long MAX_SIZE = 256L * 1024 * 1024;
+
+    private final File file;
+    private Recording recording;
+
+    /**
+     * @param file where the recording is written when the runner stops
+     */
+    public FlightRecording(File file) {
+        this.file = file;
+    }
+
+    public void start() {
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            recording = new Recording(Configuration.getConfiguration("default"));
+            recording.setName("EmbeddedTomcat");
+            recording.setToDisk(true);
+            recording.setMaxAge(MAX_AGE);
+            recording.setMaxSize(MAX_SIZE);
+            recording.setDestination(file.toPath());
+            recording.setDumpOnExit(true);
+            Arrays.asList(WatchBatchEvent.class, CompileEvent.class, ContextStopEvent.class, ContextStartEvent.class,
+                    ClassLoaderCreatedEvent.class, ClassLoaderDiscardedEvent.class, LiveReloadBroadcastEvent.class)
+                    .forEach(recording::enable);
+            recording.start();
+            log.info("Flight recording started, it will be written to {}", file);
+        } catch (IOException | ParseException | IllegalStateException | SecurityException e) {
+            log.error("Unable to start the flight recording", e);
+            recording = null;
+        }
+    }
+
+    public void stop() {
+        val current = recording;
+        if (current == null) return;
+        recording = null;
+        //Writes the destination
+        current.stop();
+        current.close();
+        log.info("Flight recording written to {}", file);
+    }
+}
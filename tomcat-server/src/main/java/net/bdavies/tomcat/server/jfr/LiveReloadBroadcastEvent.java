@@ -0,0 +1,31 @@
+package net.bdavies.tomcat.server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * The reload command being sent to every LiveReload client
+ *
+ * @author ben.davies
+ */
+@Name("net.bdavies.tomcat.LiveReloadBroadcast")
+@Label("LiveReload Broadcast")
+@Category({"Tomcat Runner", "Reload"})
+@StackTrace(false)
+@Setter
+public class LiveReloadBroadcastEvent extends Event {
+    @Label("Change Set")
+    private long changeSet;
+
+    @Label("Clients")
+    private int clients;
+
+    @Label("Payload Bytes")
+    @DataAmount
+    private long bytes;
+}
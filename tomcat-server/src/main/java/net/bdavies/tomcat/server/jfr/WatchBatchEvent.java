@@ -0,0 +1,31 @@
+package net.bdavies.tomcat.server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * The file events the watcher received in one batch
+ *
+ * @author ben.davies
+ */
+@Name("net.bdavies.tomcat.WatchBatch")
+@Label("Watch Batch Received")
+@Category({"Tomcat Runner", "Reload"})
+@StackTrace(false)
+@Setter
+public class WatchBatchEvent extends Event {
+    @Label("Change Set")
+    @Description("Ties together the events of one change, see ChangeSets")
+    private long changeSet;
+
+    @Label("Directory")
+    private String directory;
+
+    @Label("Events")
+    private int events;
+}
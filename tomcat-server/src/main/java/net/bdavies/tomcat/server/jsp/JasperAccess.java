@@ -0,0 +1,115 @@
+package net.bdavies.tomcat.server.jsp;
+
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.catalina.Context;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.core.StandardWrapper;
+import org.apache.jasper.Options;
+import org.apache.jasper.compiler.JspRuntimeContext;
+import org.apache.jasper.servlet.JspServlet;
+import org.apache.jasper.servlet.JspServletWrapper;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Reaches the Jasper state the JspServlet keeps to itself, the runtime context and its map of loaded JSPs
+ *
+ * @author ben.davies
+ */
+@Slf4j
+@UtilityClass
+public class JasperAccess {
+    public static final String JSP_SERVLET = "jsp";
+
+    /**
+     * Get the Jasper runtime context of a context's JSP servlet
+     *
+     * @param context the context
+     * @return the runtime context or null if the JSP servlet is not loaded
+     */
+    public JspRuntimeContext getRuntimeContext(Context context) {
+        JspServlet servlet = getJspServlet(context);
+        return servlet == null ? null : getRuntimeContext(servlet);
+    }
+
+    /**
+     * Get the Jasper runtime context of a JSP servlet
+     *
+     * @param servlet the JSP servlet
+     * @return the runtime context
+     */
+    public JspRuntimeContext getRuntimeContext(JspServlet servlet) {
+        return (JspRuntimeContext) getField(JspServlet.class, servlet, "rctxt");
+    }
+
+    /**
+     * Get the JSP servlet of a context
+     *
+     * @param context the context
+     * @return the servlet or null if it is not loaded
+     */
+    public JspServlet getJspServlet(Context context) {
+        Wrapper wrapper = (Wrapper) context.findChild(JSP_SERVLET);
+        if (!(wrapper instanceof StandardWrapper)) return null;
+        Object servlet = ((StandardWrapper) wrapper).getServlet();
+        return servlet instanceof JspServlet ? (JspServlet) servlet : null;
+    }
+
+    /**
+     * Get the options the JSP servlet was configured with
+     *
+     * @param servlet the JSP servlet
+     * @return the options
+     */
+    public Options getOptions(JspServlet servlet) {
+        return (Options) getField(JspServlet.class, servlet, "options");
+    }
+
+    /**
+     * Get the wrappers of every JSP that has been loaded, keyed by the JSP uri
+     *
+     * @param runtimeContext the Jasper runtime context
+     * @return the wrappers
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, JspServletWrapper> getWrappers(JspRuntimeContext runtimeContext) {
+        Object jsps = getField(JspRuntimeContext.class, runtimeContext, "jsps");
+        return jsps == null ? Collections.emptyMap() : (Map<String, JspServletWrapper>) jsps;
+    }
+
+    /**
+     * Get the wrapper of a JSP, creating it the same way the JSP servlet does for a request if it isn't loaded
+     *
+     * @param servlet        the JSP servlet
+     * @param options        the options of the JSP servlet
+     * @param runtimeContext the Jasper runtime context
+     * @param jspUri         the uri of the JSP
+     * @return the wrapper
+     */
+    public JspServletWrapper getOrCreateWrapper(JspServlet servlet, Options options, JspRuntimeContext runtimeContext,
+                                                String jspUri) {
+        //The same lock JspServlet takes before it creates a wrapper for a request
+        synchronized (servlet) {
+            JspServletWrapper wrapper = runtimeContext.getWrapper(jspUri);
+            if (wrapper == null) {
+                wrapper = new JspServletWrapper(servlet.getServletConfig(), options, jspUri, runtimeContext);
+                runtimeContext.addWrapper(jspUri, wrapper);
+            }
+            return wrapper;
+        }
+    }
+
+    private Object getField(Class<?> type, Object target, String name) {
+        try {
+            Field field = type.getDeclaredField(name);
+            field.setAccessible(true);
+            return field.get(target);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Unable to read {}.{} from Jasper", type.getSimpleName(), name, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package net.bdavies.tomcat.server.jsp;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.catalina.Context;
+import org.apache.catalina.WebResourceRoot;
+import org.apache.jasper.Options;
+import org.apache.jasper.compiler.JspRuntimeContext;
+import org.apache.jasper.servlet.JspServlet;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles every JSP of the started contexts in parallel so the first hit to a page doesn't pay for the
+ * translation and compile
+ *
+ * The generated classes are kept in the persistent scratch directory of each context together with a manifest of
+ * the content hash of every JSP and the files it depends on. On the next start a JSP whose hash hasn't changed has
+ * its class file re-stamped with the time of the JSP, so Jasper's timestamp check accepts it without translating
+ * it again even when a checkout or a copy has touched the file. A JSP whose content changed has its class file
+ * removed so it is always recompiled.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class JspPrecompiler {
+    private static final String MANIFEST = "jsp-hashes.properties";
+    private static final List<String> PAGE_EXTENSIONS = Arrays.asList(".jsp", ".jspx");
+    private static final List<String> SKIPPED_PATHS = Arrays.asList("/WEB-INF/classes/", "/WEB-INF/lib/",
+            "/META-INF/");
+
+    /**
+     * Number of JSPs compiled at once, 0 for one per core
+     */
+    private final int threads;
+
+    /**
+     * Compile the JSPs of the contexts, waiting until all of them are done
+     *
+     * @param contexts the started contexts
+     */
+    public void precompile(List<? extends Context> contexts) {
+        long start = System.nanoTime();
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(poolSize, r -> {
+            Thread t = new Thread(r, "Tomcat-Jsp-Precompiler");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            val cached = new AtomicInteger();
+            List<Callable<Boolean>> compiles = new ArrayList<>();
+            Map<File, Map<String, String>> manifests = new LinkedHashMap<>();
+            for (val context : contexts) {
+                addCompiles(context, compiles, manifests, cached);
+            }
+            //Every page of every context shares the one pool so the number of compiles at once stays bounded
+            int compiled = 0;
+            for (val result : pool.invokeAll(compiles)) {
+                if (Boolean.TRUE.equals(result.get())) compiled++;
+            }
+            manifests.forEach(this::saveManifest);
+            log.info("Precompiled {} JSPs ({} unchanged since the last start) on {} threads in {} ms", compiled,
+                    cached.get(), poolSize, (System.nanoTime() - start) / 1_000_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Unable to precompile the JSPs", e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void addCompiles(Context context, List<Callable<Boolean>> compiles,
+                             Map<File, Map<String, String>> manifests, AtomicInteger cached) {
+        val servlet = JasperAccess.getJspServlet(context);
+        if (servlet == null || !context.getState().isAvailable()) return;
+        val options = JasperAccess.getOptions(servlet);
+        val runtimeContext = JasperAccess.getRuntimeContext(servlet);
+        if (options == null || runtimeContext == null) return;
+
+        val manifestFile = new File(options.getScratchDir(), MANIFEST);
+        val manifest = loadManifest(manifestFile);
+        Map<String, String> updated = new ConcurrentHashMap<>();
+        manifests.put(manifestFile, updated);
+        for (val uri : findPages(context.getResources())) {
+            compiles.add(() -> compile(context, servlet, options, runtimeContext, uri, manifest.get(uri), updated,
+                    cached));
+        }
+    }
+
+    private boolean compile(Context context, JspServlet servlet, Options options, JspRuntimeContext runtimeContext,
+                            String uri, String previous, Map<String, String> updated, AtomicInteger cached) {
+        val resources = context.getResources();
+        try {
+            val wrapper = JasperAccess.getOrCreateWrapper(servlet, options, runtimeContext, uri);
+            synchronized (wrapper) {
+                val compilationContext = wrapper.getJspEngineContext();
+                val classFile = new File(compilationContext.getClassFileName());
+                if (previous != null && classFile.isFile()) {
+                    val separator = previous.indexOf('|');
+                    val dependants = previous.substring(separator + 1);
+                    if (previous.substring(0, separator).equals(hash(resources, uri, dependants))) {
+                        classFile.setLastModified(resources.getResource(uri).getLastModified());
+                        cached.incrementAndGet();
+                    } else if (!classFile.delete()) {
+                        log.debug("Unable to remove the stale class of {}", uri);
+                    }
+                }
+                compilationContext.compile();
+            }
+            //Loads the page the same way jsp_precompile does, which is also how the dependencies are found
+            val dependants = wrapper.getDependants();
+            val names = dependants == null ? "" : String.join(",", new TreeSet<>(dependants.keySet()));
+            updated.put(uri, hash(resources, uri, names) + "|" + names);
+            return true;
+        } catch (FileNotFoundException e) {
+            runtimeContext.removeWrapper(uri);
+        } catch (Exception e) {
+            //Left for the first request to compile and report to the browser
+            log.warn("Unable to precompile {}: {}", uri, e.getMessage());
+        }
+        return false;
+    }
+
+    private List<String> findPages(WebResourceRoot resources) {
+        List<String> pages = new ArrayList<>();
+        Deque<String> directories = new ArrayDeque<>(Collections.singleton("/"));
+        while (!directories.isEmpty()) {
+            for (val path : resources.listWebAppPaths(directories.pop())) {
+                if (path.endsWith("/")) {
+                    val skipped = JspRecompiler.isSkippedDirectory(Paths.get(path.substring(1)));
+                    if (!SKIPPED_PATHS.contains(path) && !skipped) {
+                        directories.push(path);
+                    }
+                } else if (PAGE_EXTENSIONS.stream().anyMatch(path::endsWith)) {
+                    pages.add(path);
+                }
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * Hash of the page and every file it depends on, dependencies inside jars are only identified by their name
+     */
+    private String hash(WebResourceRoot resources, String uri, String dependants) throws IOException {
+        try {
+            val digest = MessageDigest.getInstance("SHA-1");
+            val buffer = new byte[8192];
+            List<String> paths = new ArrayList<>();
+            paths.add(uri);
+            if (!dependants.isEmpty()) {
+                paths.addAll(Arrays.asList(dependants.split(",")));
+            }
+            for (val path : paths) {
+                digest.update(path.getBytes(StandardCharsets.UTF_8));
+                if (!path.startsWith("/")) continue;
+                val resource = resources.getResource(path);
+                if (!resource.isFile()) continue;
+                try (InputStream is = resource.getInputStream()) {
+                    int read;
+                    while ((read = is.read(buffer)) != -1) {
+                        digest.update(buffer, 0, read);
+                    }
+                }
+            }
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Map<String, String> loadManifest(File file) {
+        Map<String, String> manifest = new HashMap<>();
+        if (!file.isFile()) return manifest;
+        val properties = new Properties();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+            properties.stringPropertyNames().forEach(k -> manifest.put(k, properties.getProperty(k)));
+        } catch (IOException e) {
+            log.warn("Unable to read the JSP manifest {}, every JSP will be compiled", file, e);
+        }
+        return manifest;
+    }
+
+    private void saveManifest(File file, Map<String, String> manifest) {
+        val properties = new Properties();
+        properties.putAll(manifest);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            properties.store(writer, "Content hashes of the precompiled JSPs");
+        } catch (IOException e) {
+            log.warn("Unable to write the JSP manifest {}", file, e);
+        }
+    }
+}
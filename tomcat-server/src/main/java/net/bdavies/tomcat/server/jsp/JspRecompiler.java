@@ -0,0 +1,178 @@
+package net.bdavies.tomcat.server.jsp;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import net.bdavies.tomcat.server.resources.WatchedResourceRoot;
+import org.apache.catalina.Context;
+import org.apache.jasper.Options;
+import org.apache.jasper.compiler.JspRuntimeContext;
+import org.apache.jasper.servlet.JspServlet;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Recompiles the JSPs affected by a file change as soon as the watcher sees it, so Jasper can run with its
+ * per request modification checks turned off
+ *
+ * A changed file is mapped to its uri in each webapp root, a JSP is recompiled if it is that uri or depends on
+ * it through an include or a tag file. Its wrapper is dropped straight away, so a request that comes in before the
+ * compile is done waits for it or compiles the page itself, and the compile runs on a small pool of its own so the
+ * watcher can carry on with the next change.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+public class JspRecompiler {
+    /**
+     * Skipped wherever they are found
+     */
+    private static final Set<String> TOOL_DIRECTORIES = new HashSet<>(Arrays.asList(
+            "node_modules", ".gradle", ".git", ".idea"));
+    /**
+     * Only skipped directly under the base directory, a src or build directory deeper down can hold JSPs
+     */
+    private static final Set<String> OUTPUT_DIRECTORIES = new HashSet<>(Arrays.asList("build", "out"));
+    private static final List<String> JSP_EXTENSIONS = Arrays.asList(".jsp", ".jspx", ".jspf", ".tag", ".tagx");
+
+    private final List<? extends Context> contexts;
+    private final List<Path> roots;
+    private final ExecutorService compiler;
+
+    /**
+     * @param contexts the contexts running the webapp, one per node
+     * @param roots    the directories mounted at the root of the webapp
+     */
+    public JspRecompiler(List<? extends Context> contexts, List<File> roots) {
+        this.contexts = contexts;
+        this.roots = roots.stream().filter(File::isDirectory).map(f -> f.getAbsoluteFile().toPath().normalize())
+                .collect(Collectors.toList());
+        this.compiler = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2), r -> {
+            Thread t = new Thread(r, "Tomcat-Jsp-Compiler");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Called by the file watcher when a file is created, modified or deleted, the compiles are started but not
+     * waited for
+     *
+     * @param file the file that changed
+     */
+    public void onChange(Path file) {
+        val path = file.toAbsolutePath().normalize();
+        val uris = roots.stream().filter(path::startsWith)
+                .map(r -> "/" + r.relativize(path).toString().replace(File.separatorChar, '/'))
+                .collect(Collectors.toList());
+        if (uris.isEmpty()) return;
+        long start = System.nanoTime();
+        List<CompletableFuture<Boolean>> compiles = new ArrayList<>();
+        for (val context : contexts) {
+            if (context.getResources() instanceof WatchedResourceRoot) {
+                uris.forEach(((WatchedResourceRoot) context.getResources())::invalidate);
+            }
+            val servlet = JasperAccess.getJspServlet(context);
+            if (servlet == null) continue;
+            val options = JasperAccess.getOptions(servlet);
+            val runtimeContext = JasperAccess.getRuntimeContext(servlet);
+            if (options == null || runtimeContext == null) continue;
+            List<String> affected = new ArrayList<>();
+            JasperAccess.getWrappers(runtimeContext).forEach((jspUri, wrapper) -> {
+                val dependants = wrapper.getDependants();
+                if (uris.contains(jspUri) || (dependants != null && uris.stream().anyMatch(dependants::containsKey))) {
+                    affected.add(jspUri);
+                }
+            });
+            for (val jspUri : affected) {
+                //A new wrapper always compiles before it serves, a request still using the old one finishes with it
+                runtimeContext.removeWrapper(jspUri);
+                compiles.add(CompletableFuture.supplyAsync(
+                        () -> compile(servlet, options, runtimeContext, jspUri), compiler));
+            }
+        }
+        if (compiles.isEmpty()) return;
+        CompletableFuture.allOf(compiles.toArray(new CompletableFuture[0])).whenComplete((v, e) -> {
+            val compiled = compiles.stream().filter(c -> Boolean.TRUE.equals(c.getNow(false))).count();
+            log.info("Recompiled {} of {} JSPs affected by {} in {} ms", compiled, compiles.size(), uris,
+                    (System.nanoTime() - start) / 1_000_000);
+        });
+    }
+
+    /**
+     * Find the directories under the webapp base directory that hold JSPs, tag files or fragments, skipping the
+     * build output and the tool directories
+     *
+     * @param baseDirectory the webapp base directory
+     * @return the directories
+     */
+    public static List<File> findJspDirectories(File baseDirectory) {
+        val base = baseDirectory.toPath();
+        try (Stream<Path> files = Files.walk(base)) {
+            return files.filter(p -> isJsp(p) && !isSkippedDirectory(base.relativize(p.getParent())))
+                    .map(p -> p.getParent().toFile())
+                    .distinct()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            log.warn("Unable to look for JSPs in {}", baseDirectory, e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Whether a directory is left out when looking for JSPs, the tool directories are skipped at any depth but
+     * the build output only directly under the base directory so src/main/webapp is still looked in
+     *
+     * @param relativePath the directory relative to the webapp base directory or root
+     * @return true if it is skipped
+     */
+    public static boolean isSkippedDirectory(Path relativePath) {
+        boolean first = true;
+        for (val part : relativePath) {
+            val name = part.toString();
+            if (TOOL_DIRECTORIES.contains(name) || (first && OUTPUT_DIRECTORIES.contains(name))) return true;
+            first = false;
+        }
+        return false;
+    }
+
+    /**
+     * @param file the file
+     * @return true if it is a JSP, a tag file or a fragment
+     */
+    public static boolean isJsp(Path file) {
+        val name = file.getFileName();
+        return name != null && JSP_EXTENSIONS.stream().anyMatch(name.toString()::endsWith);
+    }
+
+    public void shutdown() {
+        compiler.shutdownNow();
+    }
+
+    private boolean compile(JspServlet servlet, Options options, JspRuntimeContext runtimeContext, String jspUri) {
+        val wrapper = JasperAccess.getOrCreateWrapper(servlet, options, runtimeContext, jspUri);
+        //The wrapper lock is what JspServletWrapper.service takes before it compiles
+        synchronized (wrapper) {
+            try {
+                wrapper.getJspEngineContext().compile();
+                return true;
+            } catch (FileNotFoundException e) {
+                log.debug("{} has been removed", jspUri);
+                runtimeContext.removeWrapper(jspUri);
+            } catch (Exception e) {
+                //Left for the next request to compile and report to the browser
+                log.warn("Unable to compile {}: {}", jspUri, e.getMessage());
+            }
+            return false;
+        }
+    }
+}
@@ -30,7 +30,8 @@ public class ConnectionHandler implements Runnable {
 
     private void setupConnection(InputStream is) throws Exception {
         try(OutputStream os = socket.getOutputStream()) {
-            WebsocketConnection connection = WebsocketConnectionFactory.createConnection(socket, is, os);
+            WebsocketConnection connection = WebsocketConnectionFactory.createConnection(socket, is, os,
+                    server.getHeartbeatTimer(), server.getService(), server.getHeartbeatInterval());
             runWebSocket(connection);
         } finally {
             socket.close();
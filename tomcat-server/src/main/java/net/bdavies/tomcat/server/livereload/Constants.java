@@ -9,7 +9,12 @@ import lombok.extern.slf4j.Slf4j;
 public class Constants {
     public static final int DEFAULT_LR_PORT = 35729;
     public static final int READ_DATA_TIMEOUT = 4000; // 4 seconds
+    public static final int DEFAULT_HEARTBEAT_INTERVAL = 30000; // 30 seconds
     public static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
     public static final byte[] EMPTY_BYTE_ARRAY = new byte[0];
     public static final FrameType DEFAULT_FRAME_TYPE = FrameType.TEXT;
+    public static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024; // 16 MiB
+    public static final int MAX_FRAME_PAYLOAD = 64 * 1024; // Outgoing messages larger than this are fragmented
+    public static final int DEFLATE_THRESHOLD = 256; // Smaller messages are not worth compressing
+    public static final String PERMESSAGE_DEFLATE = "permessage-deflate";
 }
@@ -24,6 +24,16 @@ public enum FrameType {
         this.code = i;
     }
 
+    /**
+     * Control frames (close, ping and pong) can be interleaved with the fragments of a data message and
+     * can never be fragmented or compressed themselves
+     *
+     * @return true if this is a control frame type
+     */
+    boolean isControl() {
+        return (code & 0x08) != 0;
+    }
+
     static FrameType fromCode(int code) {
         for (val t : values()) {
             if (t.code == code) {
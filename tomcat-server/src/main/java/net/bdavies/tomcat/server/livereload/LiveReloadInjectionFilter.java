@@ -0,0 +1,65 @@
+package net.bdavies.tomcat.server.livereload;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Adds the livereload.js script tag to html responses so pages reload without a browser extension
+ *
+ * The response is never buffered, bytes are streamed through a {@link LiveReloadResponseWrapper} which holds
+ * back at most the few bytes of a partially matched closing body tag. Responses that are not html or are
+ * already content encoded are passed straight through.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class LiveReloadInjectionFilter implements Filter {
+    public static final String NAME = "LiveReloadInjectionFilter";
+    private final int liveReloadPort;
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+        log.debug("Injecting the livereload.js script into html responses using port {}", liveReloadPort);
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)
+                || !acceptsHtml((HttpServletRequest) request)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletRequest req = (HttpServletRequest) request;
+        LiveReloadResponseWrapper wrapper = new LiveReloadResponseWrapper((HttpServletResponse) response,
+                //The LiveReload server is plain http even when the page is served over https
+                "<script src=\"http://" + req.getServerName() + ":" + liveReloadPort + "/livereload.js\"></script>");
+        chain.doFilter(request, wrapper);
+        //An async response is still being written so it only gets the tag if the body tag streams past
+        if (!req.isAsyncStarted()) {
+            wrapper.finish();
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private boolean acceptsHtml(HttpServletRequest request) {
+        if (request.getHeader("Upgrade") != null) {
+            return false;
+        }
+        //Static files with a known non html type are left unwrapped so the default servlet can still use sendfile
+        String mimeType = request.getServletContext().getMimeType(request.getRequestURI());
+        if (mimeType != null && !mimeType.startsWith("text/html")) {
+            return false;
+        }
+        String accept = request.getHeader("Accept");
+        return accept == null || accept.contains("html") || accept.contains("*/*");
+    }
+}
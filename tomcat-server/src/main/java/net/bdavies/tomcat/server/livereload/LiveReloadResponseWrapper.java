@@ -0,0 +1,299 @@
+package net.bdavies.tomcat.server.livereload;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Response wrapper that decides on the first write whether the response is html that can take the script tag
+ *
+ * The tag is written in front of the first closing body tag, if the page never closes its body the tag is
+ * appended when the response finishes. Because the tag is always written exactly once a declared
+ * Content-Length is held back until the decision and then adjusted by the length of the tag.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+class LiveReloadResponseWrapper extends HttpServletResponseWrapper {
+    private static final byte[] BODY_CLOSE = "</body>".getBytes(StandardCharsets.US_ASCII);
+
+    private final String tag;
+    private Boolean inject;
+    private byte[] tagBytes;
+    private long declaredLength = -1;
+    private InjectingOutputStream stream;
+    private PrintWriter writer;
+
+    LiveReloadResponseWrapper(HttpServletResponse response, String tag) {
+        super(response);
+        this.tag = tag;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called for this response");
+        }
+        if (stream == null) {
+            stream = new InjectingOutputStream(super.getOutputStream());
+        }
+        return stream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            if (stream != null) {
+                throw new IllegalStateException("getOutputStream() has already been called for this response");
+            }
+            //Mirror what the container does for getWriter() so the charset still ends up in the Content-Type
+            String encoding = getCharacterEncoding();
+            super.setCharacterEncoding(encoding);
+            stream = new InjectingOutputStream(super.getOutputStream());
+            writer = new PrintWriter(new OutputStreamWriter(stream, encoding));
+        }
+        return writer;
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        setContentLengthLong(len);
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        if (inject == null) {
+            declaredLength = len;
+        } else {
+            super.setContentLengthLong(inject ? len + tagBytes.length : len);
+        }
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (isContentLength(name)) {
+            setContentLengthLong(value == null ? -1 : Long.parseLong(value.trim()));
+        } else {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (isContentLength(name)) {
+            setHeader(name, value);
+        } else {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        if (isContentLength(name)) {
+            setContentLengthLong(value);
+        } else {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        if (isContentLength(name)) {
+            setContentLengthLong(value);
+        } else {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        decide();
+        super.flushBuffer();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        declaredLength = -1;
+        inject = null;
+        if (stream != null) {
+            stream.reset();
+        }
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        if (stream != null) {
+            stream.reset();
+        }
+    }
+
+    /**
+     * Called once the filter chain has finished to write anything that was held back
+     *
+     * @throws IOException if the response cannot be written to
+     */
+    void finish() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (isCommitted() && inject == null) {
+            //Nothing was written through us, e.g. sendError or sendRedirect
+            return;
+        }
+        decide();
+        if (inject) {
+            if (stream == null) {
+                stream = new InjectingOutputStream(super.getOutputStream());
+            }
+            stream.finish();
+        }
+    }
+
+    private void decide() {
+        if (inject != null) return;
+        inject = isInjectable();
+        if (inject) {
+            tagBytes = tag.getBytes(Charset.forName(getCharacterEncoding()));
+        }
+        if (declaredLength >= 0) {
+            super.setContentLengthLong(inject ? declaredLength + tagBytes.length : declaredLength);
+        }
+    }
+
+    private boolean isInjectable() {
+        String contentType = getContentType();
+        if (contentType == null || !contentType.toLowerCase().startsWith("text/html")) {
+            return false;
+        }
+        String encoding = getHeader("Content-Encoding");
+        if (encoding != null && !encoding.equalsIgnoreCase("identity")) {
+            return false;
+        }
+        int status = getStatus();
+        if (status < 200 || status == HttpServletResponse.SC_NO_CONTENT || status == HttpServletResponse.SC_PARTIAL_CONTENT
+                || status == HttpServletResponse.SC_NOT_MODIFIED) {
+            return false;
+        }
+        //The byte level scan only works for charsets that encode ascii as ascii
+        try {
+            return Arrays.equals(BODY_CLOSE, "</body>".getBytes(Charset.forName(getCharacterEncoding())));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static boolean isContentLength(String name) {
+        return "Content-Length".equalsIgnoreCase(name);
+    }
+
+    /**
+     * Streams bytes through while looking for the closing body tag, a partial match at the end of a write is
+     * held back until the next write shows whether it really was the tag
+     */
+    private class InjectingOutputStream extends ServletOutputStream {
+        private final ServletOutputStream out;
+        private final byte[] pending = new byte[BODY_CLOSE.length];
+        private final byte[] single = new byte[1];
+        private int matched;
+        private boolean done;
+
+        InjectingOutputStream(ServletOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            decide();
+            if (done || !inject) {
+                out.write(b, off, len);
+                return;
+            }
+            int end = off + len;
+            int runStart = off;
+            for (int i = off; i < end; i++) {
+                byte x = b[i];
+                if (lower(x) != BODY_CLOSE[matched] && matched > 0) {
+                    out.write(pending, 0, matched);
+                    matched = 0;
+                }
+                if (lower(x) == BODY_CLOSE[matched]) {
+                    if (matched == 0) {
+                        out.write(b, runStart, i - runStart);
+                    }
+                    pending[matched++] = x;
+                    runStart = i + 1;
+                    if (matched == BODY_CLOSE.length) {
+                        out.write(tagBytes);
+                        out.write(pending, 0, matched);
+                        matched = 0;
+                        done = true;
+                        out.write(b, runStart, end - runStart);
+                        return;
+                    }
+                }
+            }
+            out.write(b, runStart, end - runStart);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            out.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return out.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            out.setWriteListener(writeListener);
+        }
+
+        void finish() throws IOException {
+            decide();
+            if (done || !inject) return;
+            done = true;
+            if (matched > 0) {
+                out.write(pending, 0, matched);
+                matched = 0;
+            }
+            out.write(tagBytes);
+        }
+
+        void reset() {
+            matched = 0;
+            done = false;
+        }
+
+        private int lower(byte b) {
+            return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+        }
+    }
+}
@@ -1,6 +1,12 @@
 package net.bdavies.tomcat.server.livereload;
 
+import lombok.AccessLevel;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import net.bdavies.tomcat.server.ReloadTracker;
+import net.bdavies.tomcat.server.jfr.ChangeSets;
+import net.bdavies.tomcat.server.jfr.LiveReloadBroadcastEvent;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -8,26 +14,46 @@ import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author ben.davies
  */
 @Slf4j
 public class Server implements Runnable {
+    @Getter(AccessLevel.PACKAGE)
     private final ExecutorService service;
     private final List<WebsocketConnection> connections;
+    @Getter(AccessLevel.PACKAGE)
+    private final HashedWheelTimer heartbeatTimer;
+    @Getter(AccessLevel.PACKAGE)
+    private final long heartbeatInterval;
     private final int serverPort;
     private ServerSocket socket;
     private final Thread connectionThread;
     private boolean isRunning;
 
     public Server(int serverPort) {
+        this(serverPort, Constants.DEFAULT_HEARTBEAT_INTERVAL);
+    }
+
+    /**
+     * @param serverPort        the port to listen on
+     * @param heartbeatInterval milliseconds a connection can be idle before it is pinged, 0 or less turns the
+     *                          heartbeat off
+     */
+    public Server(int serverPort, long heartbeatInterval) {
         this.serverPort = serverPort;
-        this.connections = new LinkedList<>();
+        this.heartbeatInterval = heartbeatInterval;
+        if (heartbeatInterval <= 0) {
+            log.info("LiveReload heartbeats are off, idle connections are only dropped when the client closes them");
+        }
+        this.heartbeatTimer = new HashedWheelTimer("Tomcat-LR-Heartbeat-" + serverPort, 100, TimeUnit.MILLISECONDS, 512);
+        this.connections = new CopyOnWriteArrayList<>();
         this.service = Executors.newCachedThreadPool();
         connectionThread = new Thread(this, "Tomcat-LR-Server-" + serverPort);
         connectionThread.setDaemon(true);
@@ -36,6 +62,7 @@ public class Server implements Runnable {
     public synchronized void start() {
         if (isRunning) return;
         isRunning = true;
+        heartbeatTimer.start();
         connectionThread.start();
     }
 
@@ -53,6 +80,7 @@ public class Server implements Runnable {
             });
 
             service.shutdownNow();
+            heartbeatTimer.stop();
             connectionThread.join(10);
         } catch (InterruptedException | IOException e) {
             log.error("Failed to stop the live reload server", e);
@@ -74,7 +102,8 @@ public class Server implements Runnable {
         while (isRunning && !socket.isClosed()) {
             try {
                 Socket userSocket = this.socket.accept();
-                userSocket.setSoTimeout(Constants.DEFAULT_LR_PORT);
+                //Only until the HTTP header has been read, a client that never sends one would hold a thread forever
+                userSocket.setSoTimeout(Constants.READ_DATA_TIMEOUT);
                 this.service.execute(new ConnectionHandler(userSocket, this));
             } catch (SocketTimeoutException e) {
                 //Ignore sockets timing out
@@ -85,7 +114,23 @@ public class Server implements Runnable {
     }
 
     public void publishChangeToConnections() {
-        this.connections.forEach(WebsocketConnection::publishChange);
+        val event = new LiveReloadBroadcastEvent();
+        event.setChangeSet(ChangeSets.current());
+        event.begin();
+        int clients = 0;
+        long bytes = 0;
+        for (val connection : connections) {
+            int written = connection.publishChange();
+            if (written > 0) {
+                clients++;
+                bytes += written;
+            }
+        }
+        event.setClients(clients);
+        event.setBytes(bytes);
+        event.commit();
+        ReloadTracker.mark(ReloadTracker.Stage.FRAME_SENT, connections.size() + " connections");
+        ChangeSets.end();
     }
 
     public void addConnection(WebsocketConnection connection) {
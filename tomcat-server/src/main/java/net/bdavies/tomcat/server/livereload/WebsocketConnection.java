@@ -4,17 +4,20 @@ import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 
 import java.awt.*;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
-import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 /**
@@ -26,16 +29,28 @@ public class WebsocketConnection implements Runnable {
     private final WebsocketInputStream is;
     private final WebsocketOutputStream os;
     private final String header;
+    private final HashedWheelTimer heartbeatTimer;
+    private final Executor heartbeatExecutor;
+    private final long heartbeatInterval;
+    private WebsocketFrameCodec codec;
     private volatile boolean webSocket;
     private volatile boolean running;
+    private volatile long lastSeen;
+    private volatile long pingSent;
+    private volatile HashedWheelTimer.Timeout heartbeat;
 
     private static final Pattern WEBSOCKET_KEY_PATTERN = Pattern.compile("^sec-websocket-key:(.*)$",
             Pattern.MULTILINE | Pattern.CASE_INSENSITIVE);
+    private static final Pattern WEBSOCKET_EXTENSIONS_PATTERN = Pattern.compile("^sec-websocket-extensions:(.*)$",
+            Pattern.MULTILINE | Pattern.CASE_INSENSITIVE);
 
-
-    public WebsocketConnection(Socket socket, InputStream is, OutputStream os) throws IOException {
+    public WebsocketConnection(Socket socket, InputStream is, OutputStream os, HashedWheelTimer heartbeatTimer,
+                               Executor heartbeatExecutor, long heartbeatInterval) throws IOException {
         this.socket = socket;
-        this.is = new WebsocketInputStream(is);
+        this.heartbeatTimer = heartbeatTimer;
+        this.heartbeatExecutor = heartbeatExecutor;
+        this.heartbeatInterval = TimeUnit.MILLISECONDS.toNanos(heartbeatInterval);
+        this.is = new WebsocketInputStream(new BufferedInputStream(is));
         this.os = new WebsocketOutputStream(os);
 
         String header = this.is.readHTTPHeader();
@@ -65,49 +80,156 @@ public class WebsocketConnection implements Runnable {
                 }
             }
         } catch (Exception e) {
-            if (e instanceof ConnectionLostException) {
+            if (e instanceof ConnectionLostException || !running) {
                 log.debug("Lost connection to: {}:{}", socket.getInetAddress(), socket.getPort());
             } else {
                 log.error("Something went wrong while trying to run the connection {}:{}", this.socket.getInetAddress(), this.socket.getPort(), e);
             }
+        } finally {
+            //Released on the reader thread so it can't happen while a frame is being inflated
+            if (this.codec != null) {
+                this.codec.close();
+            }
         }
     }
 
     private void runWebSocket() throws Exception {
-        this.webSocket = true;
         String accept = getAcceptRes();
-        this.os.writeHeaders("HTTP/1.1 101 Switching Protocols", "Upgrade: websocket", "Connection: Upgrade",
-                "Sec-WebSocket-Accept: " + accept);
-        new WebsocketFrame("{\"command\":\"hello\",\"protocols\":[\"http://livereload.com/protocols/official-7\"],"
-                + "\"serverName\":\"EmbeddedTomcat\"}").write(this.os);
+        String extensions = negotiateExtensions();
+        if (extensions == null) {
+            this.codec = new WebsocketFrameCodec();
+            this.os.writeHeaders("HTTP/1.1 101 Switching Protocols", "Upgrade: websocket", "Connection: Upgrade",
+                    "Sec-WebSocket-Accept: " + accept);
+        } else {
+            this.codec = new WebsocketFrameCodec(true, extensions.contains("server_no_context_takeover"),
+                    Constants.MAX_MESSAGE_SIZE);
+            this.os.writeHeaders("HTTP/1.1 101 Switching Protocols", "Upgrade: websocket", "Connection: Upgrade",
+                    "Sec-WebSocket-Accept: " + accept, "Sec-WebSocket-Extensions: " + extensions);
+        }
+        log.debug("Negotiated livereload connection [{}:{}] with compression: {}", socket.getInetAddress(),
+                socket.getPort(), codec.isDeflate());
+        //Idle clients are found by the heartbeat from here on
+        this.socket.setSoTimeout(0);
+        this.webSocket = true;
+        writeFrame(new WebsocketFrame("{\"command\":\"hello\",\"protocols\":[\"http://livereload.com/protocols/official-7\"],"
+                + "\"serverName\":\"EmbeddedTomcat\"}"));
+        this.lastSeen = System.nanoTime();
+        schedulePing(heartbeatInterval);
         while (this.running) {
             readFrame();
         }
     }
 
     private void readFrame() throws Exception {
+        WebsocketFrame frame = codec.read(this.is);
+        this.lastSeen = System.nanoTime();
+        if (frame.getType() == FrameType.PING) {
+            writeFrame(new WebsocketFrame(FrameType.PONG));
+        } else if (frame.getType() == FrameType.PONG) {
+            log.trace("Received PONG from {}:{}", socket.getInetAddress(), socket.getPort());
+        } else if (frame.getType() == FrameType.CLOSE) {
+            throw new ConnectionLostException(socket.getInetAddress().toString(), socket.getPort());
+        } else if (frame.getType() == FrameType.TEXT) {
+            log.trace("Received LR Text frame: {}", frame);
+        } else {
+            throw new IOException("Unknown frame type " + frame + " : " + frame.getType());
+        }
+    }
+
+    private void schedulePing(long delayNanos) {
+        if (!running || heartbeatInterval <= 0) return;
+        heartbeat = heartbeatTimer.schedule(this::ping, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Ping event from the heartbeat wheel, only pings if nothing has been heard from the client for a full
+     * interval. The write can block on a slow client so it is handed to the executor instead of holding up the
+     * wheel thread that every other connection's heartbeat runs on
+     */
+    private void ping() {
+        if (!running) return;
+        long idle = System.nanoTime() - lastSeen;
+        if (idle < heartbeatInterval) {
+            schedulePing(heartbeatInterval - idle);
+            return;
+        }
         try {
-            WebsocketFrame frame = WebsocketFrame.readFromStream(this.is);
-            if (frame.getType() == FrameType.PING) {
-                writeFrame(new WebsocketFrame(FrameType.PONG));
-            } else if (frame.getType() == FrameType.CLOSE) {
-                throw new ConnectionLostException(socket.getInetAddress().toString(), socket.getPort());
-            } else if (frame.getType() == FrameType.TEXT) {
-                log.trace("Received LR Text frame: {}", frame);
-            } else {
-                throw new IOException("Unknown frame type " + frame + " : " + frame.getType());
-            }
-        } catch (SocketTimeoutException e) {
+            heartbeatExecutor.execute(this::sendPing);
+        } catch (RejectedExecutionException e) {
+            //The server is shutting down
+        }
+    }
+
+    /**
+     * Write the ping, the deadline for the reply is scheduled first so a write that never completes is reaped too
+     */
+    private void sendPing() {
+        if (!running) return;
+        try {
+            pingSent = System.nanoTime();
+            heartbeat = heartbeatTimer.schedule(this::deadline, Constants.READ_DATA_TIMEOUT, TimeUnit.MILLISECONDS);
             writeFrame(new WebsocketFrame(FrameType.PING));
-            val f = WebsocketFrame.readFromStream(is);
-            if (f.getType() != FrameType.PONG) {
-                throw new IllegalStateException("The host did not return PONG something went wrong");
-            }
+        } catch (IOException e) {
+            log.debug("Unable to ping {}:{}", socket.getInetAddress(), socket.getPort());
+            reap();
+        }
+    }
+
+    /**
+     * Deadline event from the heartbeat wheel, the client has to have sent something since the ping
+     */
+    private void deadline() {
+        if (!running) return;
+        if (lastSeen - pingSent < 0) {
+            log.debug("No reply to PING from {}:{} closing the connection", socket.getInetAddress(), socket.getPort());
+            reap();
+        } else {
+            schedulePing(heartbeatInterval - (System.nanoTime() - lastSeen));
+        }
+    }
+
+    private void reap() {
+        try {
+            close();
+        } catch (IOException e) {
+            log.error("Failed to close dead connection {}:{}", socket.getInetAddress(), socket.getPort(), e);
         }
     }
 
     private void writeFrame(WebsocketFrame websocketFrame) throws IOException {
-        websocketFrame.write(this.os);
+        codec.write(this.os, websocketFrame);
+    }
+
+    /**
+     * Pick the first permessage-deflate offer we can honour, the JDK deflater always uses a 32K window so
+     * offers that restrict the server window are declined
+     *
+     * @return the extension response or null if compression should not be used
+     */
+    private String negotiateExtensions() {
+        val m = WEBSOCKET_EXTENSIONS_PATTERN.matcher(this.header);
+        while (m.find()) {
+            for (String offer : m.group(1).split(",")) {
+                val params = offer.split(";");
+                if (!params[0].trim().equalsIgnoreCase(Constants.PERMESSAGE_DEFLATE)) continue;
+                boolean acceptable = true;
+                boolean serverNoContextTakeover = false;
+                for (int i = 1; i < params.length; i++) {
+                    val param = params[i].trim().toLowerCase();
+                    if (param.startsWith("server_max_window_bits") && !param.replace(" ", "")
+                            .equals("server_max_window_bits=15")) {
+                        acceptable = false;
+                    } else if (param.equals("server_no_context_takeover")) {
+                        serverNoContextTakeover = true;
+                    }
+                }
+                if (acceptable) {
+                    return serverNoContextTakeover ? Constants.PERMESSAGE_DEFLATE + "; server_no_context_takeover"
+                            : Constants.PERMESSAGE_DEFLATE;
+                }
+            }
+        }
+        return null;
     }
 
     private String getAcceptRes() throws NoSuchAlgorithmException {
@@ -122,15 +244,23 @@ public class WebsocketConnection implements Runnable {
         return Base64.getEncoder().encodeToString(messageDigest.digest());
     }
 
-    public void publishChange() {
+    /**
+     * Tell the browser to reload
+     *
+     * @return the payload bytes written, 0 if the connection isn't a websocket or the write failed
+     */
+    public int publishChange() {
         if (this.webSocket) {
             log.debug("Triggering LiveReload");
             try {
-                writeFrame(new WebsocketFrame("{\"command\":\"reload\",\"path\":\"/\"}"));
+                val frame = new WebsocketFrame("{\"command\":\"reload\",\"path\":\"/\"}");
+                writeFrame(frame);
+                return frame.getLength();
             } catch (IOException e) {
                 log.error("Failed to write frame to socket {}:{}", socket.getInetAddress().toString(), socket.getPort());
             }
         }
+        return 0;
     }
 
     @Override
@@ -144,9 +274,15 @@ public class WebsocketConnection implements Runnable {
                 : that.socket == null;
     }
 
+    /**
+     * Close the socket, which ends the reader thread, the codec is released by the reader thread once it stops
+     */
     void close() throws IOException {
         this.running = false;
         this.webSocket = false;
+        if (this.heartbeat != null) {
+            this.heartbeat.cancel();
+        }
         this.socket.close();
     }
 }
@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.util.concurrent.Executor;
 
 /**
  * @author ben.davies
@@ -14,7 +15,9 @@ import java.net.Socket;
 @Slf4j
 @UtilityClass
 public class WebsocketConnectionFactory {
-    static WebsocketConnection createConnection(Socket socket, InputStream is, OutputStream os) throws IOException {
-        return new WebsocketConnection(socket, is, os);
+    static WebsocketConnection createConnection(Socket socket, InputStream is, OutputStream os,
+                                                HashedWheelTimer heartbeatTimer, Executor heartbeatExecutor,
+                                                long heartbeatInterval) throws IOException {
+        return new WebsocketConnection(socket, is, os, heartbeatTimer, heartbeatExecutor, heartbeatInterval);
     }
 }
@@ -0,0 +1,313 @@
+package net.bdavies.tomcat.server.livereload;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static net.bdavies.tomcat.server.livereload.Constants.*;
+
+/**
+ * RFC 6455 frame reader/writer for a single connection
+ *
+ * Reads go into buffers that are reused for the lifetime of the connection, continuation frames are
+ * reassembled into one message and control frames are returned as soon as they arrive even in the middle
+ * of a fragmented message. When permessage-deflate (RFC 7692) has been negotiated data messages over
+ * {@link Constants#DEFLATE_THRESHOLD} bytes are compressed and compressed messages from the client are
+ * inflated.
+ *
+ * Reads are expected to happen on one thread, writes are synchronized so they can come from any thread.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+class WebsocketFrameCodec {
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final byte[] DEFLATE_TAIL = {0x00, 0x00, (byte) 0xFF, (byte) 0xFF};
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    private static final int MAX_CONTROL_PAYLOAD = 125;
+
+    private final Deflater deflater;
+    private final Inflater inflater;
+    private final boolean serverNoContextTakeover;
+    private final int maxMessageSize;
+    private final byte[] header = new byte[10];
+    private final byte[] controlBuffer = new byte[MAX_CONTROL_PAYLOAD];
+    private byte[] messageBuffer = new byte[INITIAL_BUFFER_SIZE];
+    private byte[] inflateBuffer = EMPTY_BYTE_ARRAY;
+    private byte[] deflateBuffer = EMPTY_BYTE_ARRAY;
+    private boolean closed;
+
+    //State of a fragmented message that is still being received
+    private FrameType messageType;
+    private boolean messageCompressed;
+    private int messageLength;
+
+    WebsocketFrameCodec() {
+        this(false, false, MAX_MESSAGE_SIZE);
+    }
+
+    WebsocketFrameCodec(boolean deflate, boolean serverNoContextTakeover, int maxMessageSize) {
+        this.deflater = deflate ? new Deflater(Deflater.DEFAULT_COMPRESSION, true) : null;
+        this.inflater = deflate ? new Inflater(true) : null;
+        this.serverNoContextTakeover = serverNoContextTakeover;
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    boolean isDeflate() {
+        return deflater != null;
+    }
+
+    /**
+     * Read the next complete message or control frame from the stream
+     *
+     * @param is the stream to read from
+     * @return the frame, backed by this codec's buffers
+     * @throws IOException if the stream ends or the client breaks the protocol
+     */
+    WebsocketFrame read(WebsocketInputStream is) throws IOException {
+        while (true) {
+            int first = is.checkedRead();
+            int second = is.checkedRead();
+            boolean fin = (first & 0x80) != 0;
+            boolean rsv1 = (first & 0x40) != 0;
+            if ((first & 0x30) != 0) {
+                throw new IOException("Reserved bits are set but no extension defines them");
+            }
+            FrameType type = FrameType.fromCode(first & 0x0F);
+            boolean masked = (second & 0x80) != 0;
+            long length = second & 0x7F;
+            if (length == 126) {
+                length = readUnsigned(is, 2);
+            } else if (length == 127) {
+                length = readUnsigned(is, 8);
+                if (length < 0) {
+                    throw new IOException("Frame length has the most significant bit set");
+                }
+            }
+            int mask = masked ? (int) readUnsigned(is, 4) : 0;
+
+            if (type.isControl()) {
+                if (!fin || rsv1 || length > MAX_CONTROL_PAYLOAD) {
+                    throw new IOException("Invalid " + type + " frame, control frames must be small and unfragmented");
+                }
+                int len = (int) length;
+                is.readFully(controlBuffer, 0, len);
+                if (masked) {
+                    unmask(controlBuffer, 0, len, mask);
+                }
+                return new WebsocketFrame(type, controlBuffer, len);
+            }
+
+            if (type == FrameType.CONT) {
+                if (messageType == null) {
+                    throw new IOException("Continuation frame received without a message to continue");
+                }
+                if (rsv1) {
+                    throw new IOException("RSV1 can only be set on the first frame of a message");
+                }
+            } else {
+                if (messageType != null) {
+                    throw new IOException("New " + type + " message started before " + messageType + " was finished");
+                }
+                if (rsv1 && inflater == null) {
+                    throw new IOException("Compressed frame received but permessage-deflate was not negotiated");
+                }
+                messageType = type;
+                messageCompressed = rsv1;
+                messageLength = 0;
+            }
+
+            if (length > maxMessageSize - messageLength) {
+                throw new IOException("Message is larger than the maximum of " + maxMessageSize + " bytes");
+            }
+            int len = (int) length;
+            ensureMessageCapacity(messageLength + len);
+            is.readFully(messageBuffer, messageLength, len);
+            if (masked) {
+                unmask(messageBuffer, messageLength, len, mask);
+            }
+            messageLength += len;
+
+            if (fin) {
+                FrameType completed = messageType;
+                messageType = null;
+                if (messageCompressed) {
+                    //Inflating can replace the buffer so it is only read afterwards
+                    int inflated = inflate(messageLength);
+                    return new WebsocketFrame(completed, inflateBuffer, inflated);
+                }
+                return new WebsocketFrame(completed, messageBuffer, messageLength);
+            }
+        }
+    }
+
+    /**
+     * Write a message, compressing and fragmenting it where needed
+     *
+     * @param os    the stream to write to
+     * @param frame the message to write
+     * @throws IOException if the stream cannot be written to
+     */
+    void write(OutputStream os, WebsocketFrame frame) throws IOException {
+        write(os, frame.getType(), frame.getPayload(), 0, frame.getLength());
+    }
+
+    synchronized void write(OutputStream os, FrameType type, byte[] payload, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("The connection has been closed");
+        }
+        boolean compress = deflater != null && !type.isControl() && length >= DEFLATE_THRESHOLD;
+        if (compress) {
+            length = deflate(payload, offset, length);
+            payload = deflateBuffer;
+            offset = 0;
+        }
+        int remaining = length;
+        boolean first = true;
+        do {
+            int chunk = type.isControl() ? remaining : Math.min(remaining, MAX_FRAME_PAYLOAD);
+            boolean fin = chunk == remaining;
+            int opcode = first ? type.getCode() : FrameType.CONT.getCode();
+            writeHeader(os, (fin ? 0x80 : 0) | (first && compress ? 0x40 : 0) | opcode, chunk);
+            os.write(payload, offset, chunk);
+            offset += chunk;
+            remaining -= chunk;
+            first = false;
+        } while (remaining > 0);
+        os.flush();
+    }
+
+    /**
+     * Release the native zlib resources held by the codec
+     */
+    synchronized void close() {
+        if (closed) return;
+        closed = true;
+        if (deflater != null) {
+            deflater.end();
+        }
+        if (inflater != null) {
+            inflater.end();
+        }
+    }
+
+    private void writeHeader(OutputStream os, int firstByte, int length) throws IOException {
+        int i = 0;
+        header[i++] = (byte) firstByte;
+        if (length < 126) {
+            header[i++] = (byte) length;
+        } else if (length <= 0xFFFF) {
+            header[i++] = 126;
+            header[i++] = (byte) (length >>> 8);
+            header[i++] = (byte) length;
+        } else {
+            header[i++] = 127;
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                header[i++] = (byte) ((long) length >>> shift);
+            }
+        }
+        os.write(header, 0, i);
+    }
+
+    private int inflate(int length) throws IOException {
+        ensureMessageCapacity(length + DEFLATE_TAIL.length);
+        System.arraycopy(DEFLATE_TAIL, 0, messageBuffer, length, DEFLATE_TAIL.length);
+        inflater.setInput(messageBuffer, 0, length + DEFLATE_TAIL.length);
+        int out = 0;
+        try {
+            while (true) {
+                if (out == inflateBuffer.length) {
+                    if (out >= maxMessageSize) {
+                        throw new IOException("Inflated message is larger than the maximum of " + maxMessageSize + " bytes");
+                    }
+                    inflateBuffer = grow(inflateBuffer, Math.min(maxMessageSize, Math.max(INITIAL_BUFFER_SIZE, out * 2)));
+                }
+                int read = inflater.inflate(inflateBuffer, out, inflateBuffer.length - out);
+                out += read;
+                if (read == 0) {
+                    if (inflater.needsDictionary()) {
+                        throw new IOException("Compressed message requires a preset dictionary");
+                    }
+                    if (inflater.needsInput() || inflater.finished()) {
+                        break;
+                    }
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Unable to inflate compressed message", e);
+        }
+        if (inflater.finished()) {
+            inflater.reset();
+        }
+        return out;
+    }
+
+    private int deflate(byte[] payload, int offset, int length) {
+        deflater.setInput(payload, offset, length);
+        int out = 0;
+        while (true) {
+            if (deflateBuffer.length - out < DEFLATE_TAIL.length + 1) {
+                deflateBuffer = grow(deflateBuffer, Math.max(INITIAL_BUFFER_SIZE, deflateBuffer.length * 2));
+            }
+            int space = deflateBuffer.length - out;
+            int written = deflater.deflate(deflateBuffer, out, space, Deflater.SYNC_FLUSH);
+            out += written;
+            if (written < space) {
+                break;
+            }
+        }
+        if (serverNoContextTakeover) {
+            deflater.reset();
+        }
+        //A sync flush always ends in an empty stored block which RFC 7692 says must be removed
+        return out - DEFLATE_TAIL.length;
+    }
+
+    private void ensureMessageCapacity(int capacity) {
+        if (capacity > messageBuffer.length) {
+            messageBuffer = grow(messageBuffer, Math.max(capacity, Math.min(maxMessageSize + DEFLATE_TAIL.length,
+                    messageBuffer.length * 2)));
+        }
+    }
+
+    private static byte[] grow(byte[] buffer, int capacity) {
+        return Arrays.copyOf(buffer, capacity);
+    }
+
+    private static long readUnsigned(WebsocketInputStream is, int bytes) throws IOException {
+        long value = 0;
+        for (int i = 0; i < bytes; i++) {
+            value = (value << 8) | is.checkedRead();
+        }
+        return value;
+    }
+
+    /**
+     * XOR the client mask over the payload eight bytes at a time, the mask always starts at offset
+     *
+     * @param buffer the buffer containing the payload
+     * @param offset the start of the payload
+     * @param length the length of the payload
+     * @param mask   the 4 byte masking key in network order
+     */
+    static void unmask(byte[] buffer, int offset, int length, int mask) {
+        long wideMask = ((long) mask << 32) | (mask & 0xFFFFFFFFL);
+        int end = offset + length;
+        int i = offset;
+        for (; i + 8 <= end; i += 8) {
+            long word = (long) LONG_VIEW.get(buffer, i);
+            LONG_VIEW.set(buffer, i, word ^ wideMask);
+        }
+        for (; i < end; i++) {
+            buffer[i] ^= (byte) (mask >>> (24 - ((i - offset) & 3) * 8));
+        }
+    }
+}
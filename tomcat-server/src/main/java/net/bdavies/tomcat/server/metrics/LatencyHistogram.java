@@ -0,0 +1,61 @@
+package net.bdavies.tomcat.server.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed bucket latency histogram that can be recorded from any number of threads without allocating
+ *
+ * Every bucket is a {@link LongAdder} so threads recording at the same time update different cells instead of
+ * contending on one counter. The buckets are Prometheus' default ones.
+ *
+ * @author ben.davies
+ */
+public class LatencyHistogram {
+    /**
+     * Upper bounds of the buckets in seconds, the last bucket is +Inf
+     */
+    static final double[] BOUNDS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    private static final long[] BOUNDS_NANOS = new long[BOUNDS.length];
+
+    static {
+        for (int i = 0; i < BOUNDS.length; i++) {
+            BOUNDS_NANOS[i] = (long) (BOUNDS[i] * 1e9);
+        }
+    }
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param nanos how long the request took
+     */
+    public void record(long nanos) {
+        int bucket = 0;
+        while (bucket < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * @return the count of each bucket, not cumulative, the last one is +Inf
+     */
+    long[] getBucketCounts() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    double getSumSeconds() {
+        return sumNanos.sum() / 1e9;
+    }
+}
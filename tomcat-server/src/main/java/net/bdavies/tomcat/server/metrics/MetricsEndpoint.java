@@ -0,0 +1,70 @@
+package net.bdavies.tomcat.server.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves the request metrics on /metrics in the Prometheus text format, only on the loopback address
+ *
+ * When slow requests are sampled their collapsed stacks are served on /slow, ready for flamegraph.pl or speedscope.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+public class MetricsEndpoint {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final RequestMetrics metrics;
+    private final SlowRequestSampler sampler;
+    private final int port;
+    private HttpServer server;
+
+    /**
+     * @param metrics the request metrics
+     * @param sampler the slow request sampler, null when slow requests aren't sampled
+     * @param port    the port to listen on
+     */
+    public MetricsEndpoint(RequestMetrics metrics, SlowRequestSampler sampler, int port) {
+        this.metrics = metrics;
+        this.sampler = sampler;
+        this.port = port;
+    }
+
+    public void start() {
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException e) {
+            log.error("Unable to serve the request metrics on port {}", port, e);
+            return;
+        }
+        server.createContext("/metrics", exchange -> send(exchange, CONTENT_TYPE, metrics.render()));
+        if (sampler != null) {
+            server.createContext("/slow", exchange -> send(exchange, "text/plain; charset=utf-8", sampler.render()));
+        }
+        server.start();
+        log.info("Request metrics are available at http://localhost:{}/metrics", port);
+    }
+
+    private void send(HttpExchange exchange, String contentType, String content) throws IOException {
+        val body = content.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+}
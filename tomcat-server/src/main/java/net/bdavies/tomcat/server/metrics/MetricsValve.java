@@ -0,0 +1,38 @@
+package net.bdavies.tomcat.server.metrics;
+
+import lombok.val;
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+
+/**
+ * Records the latency, bytes and in-flight count of every request that reaches the engine
+ *
+ * An async request is measured until the servlet returns, not until the response completes.
+ *
+ * @author ben.davies
+ */
+public class MetricsValve extends ValveBase {
+    private final RequestMetrics metrics;
+
+    public MetricsValve(RequestMetrics metrics) {
+        super(true);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void invoke(Request request, Response response) throws IOException, ServletException {
+        long start = System.nanoTime();
+        val series = metrics.getSeries(request);
+        series.requestStarted();
+        try {
+            getNext().invoke(request, response);
+        } finally {
+            series.requestFinished(System.nanoTime() - start, request.getCoyoteRequest().getBytesRead(),
+                    response.getBytesWritten(false), response.getStatus());
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package net.bdavies.tomcat.server.metrics;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.LifecycleListener;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.connector.Request;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.function.ToLongFunction;
+
+/**
+ * The request metrics of every context, kept per generation
+ *
+ * A context starts a new generation every time it starts, so a reload resets its numbers. The last few generations
+ * are kept and exported with a generation label so the numbers before and after a change can be compared. Requests
+ * are grouped by the url patterns of the servlet they were mapped to, the series is looked up by the wrapper so
+ * recording a request doesn't allocate.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+public class RequestMetrics implements LifecycleListener {
+    private static final int HISTORY = 10;
+
+    private final Map<Context, ContextMetrics> contexts = new ConcurrentHashMap<>();
+    private final RequestSeries unmapped = new RequestSeries("");
+
+    /**
+     * Start recording the requests of a context, call before it starts
+     *
+     * @param context the context
+     * @param name    the name used in the context label
+     * @param node    the jvmRoute of the node the context runs on, null when there is no cluster
+     */
+    public void register(Context context, String name, String node) {
+        contexts.put(context, new ContextMetrics(name, node));
+        context.addLifecycleListener(this);
+    }
+
+    /**
+     * Find the series a request is recorded in, the request has to be mapped already
+     *
+     * @param request the request
+     * @return the series
+     */
+    public RequestSeries getSeries(Request request) {
+        val context = request.getContext();
+        val metrics = context == null ? null : contexts.get(context);
+        val generation = metrics == null ? null : metrics.current;
+        if (generation == null) return unmapped;
+        val wrapper = request.getWrapper();
+        if (wrapper == null) return generation.unmapped;
+        val series = generation.series.get(wrapper);
+        return series != null ? series : generation.series.computeIfAbsent(wrapper,
+                w -> new RequestSeries(String.join(",", w.findMappings())));
+    }
+
+    @Override
+    public void lifecycleEvent(LifecycleEvent event) {
+        if (event.getType().equals(Lifecycle.AFTER_START_EVENT)) {
+            val metrics = contexts.get((Context) event.getLifecycle());
+            if (metrics != null) {
+                metrics.nextGeneration();
+            }
+        }
+    }
+
+    /**
+     * Snapshot of every generation in the Prometheus text format
+     *
+     * @return the exposition
+     */
+    public String render() {
+        List<Labelled> series = new ArrayList<>();
+        List<Labelled> generations = new ArrayList<>();
+        series.add(new Labelled(labels("", null, null) + ",pattern=\"\"", unmapped, null));
+        for (val metrics : contexts.values()) {
+            val current = metrics.current;
+            List<Generation> kept = new ArrayList<>(metrics.history);
+            if (current != null) {
+                kept.add(0, current);
+            }
+            for (val generation : kept) {
+                val labels = labels(metrics.name, metrics.node, generation.number);
+                generations.add(new Labelled(labels, generation.unmapped, generation));
+                series.add(new Labelled(labels + ",pattern=\"\"", generation.unmapped, generation));
+                generation.series.values().forEach(s -> series.add(new Labelled(labels + ",pattern=\""
+                        + escape(s.getPattern()) + "\"", s, generation)));
+            }
+        }
+
+        val sb = new StringBuilder();
+        family(sb, "tomcat_request_duration_seconds", "histogram", "Time taken to serve a request");
+        for (val labelled : series) {
+            val counts = labelled.series.getLatency().getBucketCounts();
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                val le = i < LatencyHistogram.BOUNDS.length
+                        ? BigDecimal.valueOf(LatencyHistogram.BOUNDS[i]).toPlainString() : "+Inf";
+                sb.append("tomcat_request_duration_seconds_bucket{").append(labelled.labels).append(",le=\"")
+                        .append(le).append("\"} ").append(cumulative).append('\n');
+            }
+            sb.append("tomcat_request_duration_seconds_sum{").append(labelled.labels).append("} ")
+                    .append(labelled.series.getLatency().getSumSeconds()).append('\n');
+            sb.append("tomcat_request_duration_seconds_count{").append(labelled.labels).append("} ")
+                    .append(cumulative).append('\n');
+        }
+        counter(sb, series, "tomcat_request_received_bytes_total", "Request body bytes read",
+                s -> s.getBytesReceived().sum());
+        counter(sb, series, "tomcat_response_sent_bytes_total", "Response bytes written",
+                s -> s.getBytesSent().sum());
+        counter(sb, series, "tomcat_request_errors_total", "Requests answered with a 5xx status",
+                s -> s.getErrors().sum());
+        family(sb, "tomcat_requests_in_flight", "gauge", "Requests being served");
+        for (val labelled : series) {
+            sb.append("tomcat_requests_in_flight{").append(labelled.labels).append("} ")
+                    .append(labelled.series.getInFlight().sum()).append('\n');
+        }
+        family(sb, "tomcat_context_generation_start_time_seconds", "gauge",
+                "When the generation started, a context starts a new generation every time it is reloaded");
+        for (val labelled : generations) {
+            sb.append("tomcat_context_generation_start_time_seconds{").append(labelled.labels).append("} ")
+                    .append(labelled.generation.startMillis / 1000.0).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private void counter(StringBuilder sb, List<Labelled> series, String name, String help,
+                         ToLongFunction<RequestSeries> value) {
+        family(sb, name, "counter", help);
+        for (val labelled : series) {
+            sb.append(name).append('{').append(labelled.labels).append("} ")
+                    .append(value.applyAsLong(labelled.series)).append('\n');
+        }
+    }
+
+    private void family(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private String labels(String context, String node, Integer generation) {
+        return "context=\"" + escape(context) + "\",node=\"" + (node == null ? "" : escape(node))
+                + "\",generation=\"" + (generation == null ? "" : generation) + "\"";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    @RequiredArgsConstructor
+    private static class ContextMetrics {
+        private final String name;
+        private final String node;
+        private final Deque<Generation> history = new ConcurrentLinkedDeque<>();
+        private volatile Generation current;
+
+        private synchronized void nextGeneration() {
+            val previous = current;
+            current = new Generation(previous == null ? 1 : previous.number + 1);
+            if (previous != null) {
+                history.addFirst(previous);
+                while (history.size() > HISTORY) {
+                    history.removeLast();
+                }
+                log.debug("Context [{}] started generation {} of its request metrics", name, current.number);
+            }
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class Generation {
+        private final int number;
+        private final long startMillis = System.currentTimeMillis();
+        private final Map<Wrapper, RequestSeries> series = new ConcurrentHashMap<>();
+        private final RequestSeries unmapped = new RequestSeries("");
+    }
+
+    @RequiredArgsConstructor
+    private static class Labelled {
+        private final String labels;
+        private final RequestSeries series;
+        private final Generation generation;
+    }
+}
@@ -0,0 +1,46 @@
+package net.bdavies.tomcat.server.metrics;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What has been recorded for one URL pattern of a context generation
+ *
+ * @author ben.davies
+ */
+@Getter(AccessLevel.PACKAGE)
+@RequiredArgsConstructor
+public class RequestSeries {
+    /**
+     * The url patterns of the servlet the requests were mapped to
+     */
+    private final String pattern;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+
+    public void requestStarted() {
+        inFlight.increment();
+    }
+
+    /**
+     * @param nanos         how long the request took
+     * @param bytesReceived the bytes of the request body that were read
+     * @param bytesSent     the bytes of the response that were written
+     * @param status        the response status
+     */
+    public void requestFinished(long nanos, long bytesReceived, long bytesSent, int status) {
+        inFlight.decrement();
+        latency.record(nanos);
+        this.bytesReceived.add(bytesReceived);
+        this.bytesSent.add(bytesSent);
+        if (status >= 500) {
+            errors.increment();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package net.bdavies.tomcat.server.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.catalina.Wrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Takes stack samples of the requests that are taking longer than the threshold
+ *
+ * Every request puts itself in a fixed size table of slots with a compare and set, starting at a slot picked by
+ * its thread so requests on different threads don't touch the same slot. A background thread walks the table at
+ * the sample interval and only the threads whose request is over the threshold have their stacks taken, all of
+ * them in one go. The samples are collapsed per endpoint, context and url patterns, into the format flame graph
+ * tools read: the frames from the root down joined with ; followed by the number of samples.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+public class SlowRequestSampler {
+    private static final int SLOTS = 1024;
+    private static final int MAX_DEPTH = 256;
+
+    private final long thresholdNanos;
+    private final long intervalMillis;
+    private final AtomicReferenceArray<InFlight> slots = new AtomicReferenceArray<>(SLOTS);
+    private final ThreadLocal<InFlight> records = ThreadLocal.withInitial(InFlight::new);
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    //Only the sampler thread adds to it, dumps lock it
+    private final Map<String, Map<String, Long>> stacks = new TreeMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param thresholdMillis how long a request runs before it is sampled
+     * @param intervalMillis  time between samples
+     */
+    public SlowRequestSampler(long thresholdMillis, long intervalMillis) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.intervalMillis = intervalMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Tomcat-Slow-Request-Sampler");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void start() {
+        scheduler.scheduleAtFixedRate(this::sample, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        log.info("Requests taking longer than {} ms will be sampled every {} ms",
+                TimeUnit.NANOSECONDS.toMillis(thresholdNanos), intervalMillis);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Called on the request thread before the request is served
+     *
+     * @param context the name of the context
+     * @param wrapper the servlet the request was mapped to, may be null
+     * @param method  the request method
+     * @param uri     the request uri
+     * @return the entry to pass to {@link #end(InFlight)}, null when the table is full and the request isn't sampled
+     */
+    public InFlight begin(String context, Wrapper wrapper, String method, String uri) {
+        val record = records.get();
+        record.thread = Thread.currentThread();
+        record.context = context;
+        record.wrapper = wrapper;
+        record.method = method;
+        record.uri = uri;
+        record.samples = 0;
+        record.startNanos = System.nanoTime();
+        //Published by the compare and set, the sampler reads the fields after reading the slot
+        int slot = (int) record.thread.getId() & (SLOTS - 1);
+        for (int i = 0; i < SLOTS; i++, slot = (slot + 1) & (SLOTS - 1)) {
+            if (slots.compareAndSet(slot, null, record)) {
+                record.slot = slot;
+                return record;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Called on the request thread once the request has been served
+     *
+     * @param record what {@link #begin} returned
+     */
+    public void end(InFlight record) {
+        if (record == null) return;
+        slots.set(record.slot, null);
+        long nanos = System.nanoTime() - record.startNanos;
+        if (nanos > thresholdNanos) {
+            log.warn("Slow request {} {} took {} ms, {} stack samples taken", record.method, record.uri,
+                    TimeUnit.NANOSECONDS.toMillis(nanos), record.samples);
+        }
+        //Nothing keeps the webapp's classes alive from a pooled thread
+        record.wrapper = null;
+    }
+
+    private void sample() {
+        try {
+            long now = System.nanoTime();
+            List<InFlight> slow = new ArrayList<>();
+            List<Long> starts = new ArrayList<>();
+            for (int i = 0; i < SLOTS; i++) {
+                val record = slots.get(i);
+                if (record != null && now - record.startNanos > thresholdNanos) {
+                    slow.add(record);
+                    starts.add(record.startNanos);
+                }
+            }
+            if (slow.isEmpty()) return;
+
+            long[] ids = slow.stream().mapToLong(r -> r.thread.getId()).toArray();
+            //One safepoint for every thread instead of one each
+            ThreadInfo[] infos = threads.getThreadInfo(ids, MAX_DEPTH);
+            for (int i = 0; i < slow.size(); i++) {
+                val record = slow.get(i);
+                //Virtual threads aren't known to the thread bean
+                StackTraceElement[] stack = infos[i] != null ? infos[i].getStackTrace() : record.thread.getStackTrace();
+                val context = record.context;
+                val wrapper = record.wrapper;
+                //The request may have ended while the stacks were taken
+                if (record.startNanos != starts.get(i) || slots.get(record.slot) != record) continue;
+                record.samples++;
+                add(getEndpoint(context, wrapper), stack);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Unable to sample the slow requests", e);
+        }
+    }
+
+    private synchronized void add(String endpoint, StackTraceElement[] stack) {
+        val sb = new StringBuilder();
+        for (int i = stack.length - 1; i >= 0; i--) {
+            sb.append(stack[i].getClassName()).append('.').append(stack[i].getMethodName());
+            if (i > 0) sb.append(';');
+        }
+        stacks.computeIfAbsent(endpoint, e -> new HashMap<>()).merge(sb.toString(), 1L, Long::sum);
+    }
+
+    /**
+     * Every endpoint's collapsed stacks with the endpoint as the root frame
+     *
+     * @return the collapsed stacks, one per line
+     */
+    public synchronized String render() {
+        val sb = new StringBuilder();
+        stacks.forEach((endpoint, collapsed) -> collapsed.forEach((stack, count) ->
+                sb.append(endpoint.replace(';', ',')).append(';').append(stack).append(' ').append(count).append('\n')));
+        return sb.toString();
+    }
+
+    /**
+     * Write a collapsed stack file per endpoint
+     *
+     * @param directory where the files are written
+     */
+    public synchronized void dump(File directory) {
+        if (stacks.isEmpty()) return;
+        try {
+            Files.createDirectories(directory.toPath());
+            for (val entry : stacks.entrySet()) {
+                val sb = new StringBuilder();
+                entry.getValue().forEach((stack, count) -> sb.append(stack).append(' ').append(count).append('\n'));
+                val name = entry.getKey().replaceAll("[^A-Za-z0-9._-]+", "_") + ".collapsed";
+                Files.write(directory.toPath().resolve(name), sb.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            log.info("Wrote the stack samples of {} slow endpoints to {}", stacks.size(), directory);
+        } catch (IOException e) {
+            log.warn("Unable to write the slow request samples to {}", directory, e);
+        }
+    }
+
+    private String getEndpoint(String context, Wrapper wrapper) {
+        return wrapper == null ? context : context + " " + String.join(",", wrapper.findMappings());
+    }
+
+    /**
+     * A request being served, reused by its thread
+     */
+    public static class InFlight {
+        private volatile Thread thread;
+        private volatile String context;
+        private volatile Wrapper wrapper;
+        private volatile String method;
+        private volatile String uri;
+        private volatile long startNanos;
+        private volatile int samples;
+        private int slot;
+    }
+}
@@ -0,0 +1,39 @@
+package net.bdavies.tomcat.server.metrics;
+
+import lombok.val;
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+
+/**
+ * Puts the requests of a context in the slow request sampler's table while they are served
+ *
+ * @author ben.davies
+ */
+public class SlowRequestValve extends ValveBase {
+    private final SlowRequestSampler sampler;
+    private final String contextName;
+
+    /**
+     * @param sampler     the sampler
+     * @param contextName the name the context's endpoints are grouped under
+     */
+    public SlowRequestValve(SlowRequestSampler sampler, String contextName) {
+        super(true);
+        this.sampler = sampler;
+        this.contextName = contextName;
+    }
+
+    @Override
+    public void invoke(Request request, Response response) throws IOException, ServletException {
+        val record = sampler.begin(contextName, request.getWrapper(), request.getMethod(), request.getRequestURI());
+        try {
+            getNext().invoke(request, response);
+        } finally {
+            sampler.end(record);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package net.bdavies.tomcat.server.resources;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the configured CSS/JS bundles and keeps them in memory
+ *
+ * The minified output of every input file is cached against its size and timestamp, so a change to one file
+ * only re-minifies that file and only the bundles that include it are concatenated again.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+public class AssetBundler {
+    private final Map<String, List<Path>> definitions = new LinkedHashMap<>();
+    private final Map<String, Bundle> bundles = new ConcurrentHashMap<>();
+    private final Map<Path, MinifiedFile> minified = new ConcurrentHashMap<>();
+    private final boolean minify;
+
+    /**
+     * @param definitions the bundle path in the webapp mapped to the files it is made from, in order
+     * @param minify      should the inputs be minified
+     */
+    public AssetBundler(Map<String, List<File>> definitions, boolean minify) {
+        this.minify = minify;
+        definitions.forEach((name, files) -> this.definitions.put(name.startsWith("/") ? name : "/" + name,
+                files.stream().map(f -> f.getAbsoluteFile().toPath().normalize()).collect(Collectors.toList())));
+    }
+
+    public boolean isEmpty() {
+        return definitions.isEmpty();
+    }
+
+    /**
+     * Get a bundle that has been built
+     *
+     * @param webPath the path of the bundle in the webapp
+     * @return the bundle or null if there is no bundle at that path
+     */
+    public Bundle getBundle(String webPath) {
+        return bundles.get(webPath);
+    }
+
+    /**
+     * Get the paths of every bundle
+     *
+     * @return the bundle paths
+     */
+    public Set<String> getBundlePaths() {
+        return definitions.keySet();
+    }
+
+    /**
+     * Get the files the bundles are made from
+     *
+     * @return the absolute path of every input
+     */
+    public Set<Path> getInputs() {
+        return definitions.values().stream().flatMap(List::stream)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    public void buildAll() {
+        definitions.keySet().forEach(this::build);
+    }
+
+    /**
+     * Called by the file watcher when a file is created, modified or deleted
+     *
+     * @param file the file that changed
+     */
+    public void onChange(Path file) {
+        val path = file.toAbsolutePath().normalize();
+        minified.remove(path);
+        definitions.forEach((name, inputs) -> {
+            if (inputs.contains(path)) {
+                build(name);
+            }
+        });
+    }
+
+    private void build(String name) {
+        long start = System.nanoTime();
+        val isJs = name.endsWith(".js");
+        val sb = new StringBuilder();
+        long lastModified = 0;
+        for (val input : definitions.get(name)) {
+            val part = getMinified(input, isJs);
+            if (part == null) continue;
+            sb.append(part.getContent());
+            //Guard against an input without a trailing semicolon running into the next one
+            sb.append(isJs ? ";\n" : "\n");
+            lastModified = Math.max(lastModified, part.getLastModified());
+        }
+        val content = sb.toString().getBytes(StandardCharsets.UTF_8);
+        bundles.put(name, new Bundle(content, eTag(content), lastModified));
+        log.info("Rebuilt bundle {} ({} bytes) in {} ms", name, content.length, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private String eTag(byte[] content) {
+        try {
+            val digest = MessageDigest.getInstance("SHA-1").digest(content);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private MinifiedFile getMinified(Path input, boolean isJs) {
+        try {
+            if (!Files.isRegularFile(input)) {
+                log.warn("Bundle input {} does not exist", input);
+                return null;
+            }
+            long lastModified = Files.getLastModifiedTime(input).toMillis();
+            long size = Files.size(input);
+            val cached = minified.get(input);
+            if (cached != null && cached.getLastModified() == lastModified && cached.getSize() == size) {
+                return cached;
+            }
+            String source = new String(Files.readAllBytes(input), StandardCharsets.UTF_8);
+            String content = !minify ? source : isJs ? Minifier.minifyJs(source) : Minifier.minifyCss(source);
+            val result = new MinifiedFile(content, lastModified, size);
+            minified.put(input, result);
+            return result;
+        } catch (IOException e) {
+            log.error("Unable to read bundle input {}", input, e);
+            return null;
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class MinifiedFile {
+        private final String content;
+        private final long lastModified;
+        private final long size;
+    }
+
+    /**
+     * The built output of a bundle
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class Bundle {
+        private final byte[] content;
+        private final String eTag;
+        private final long lastModified;
+    }
+}
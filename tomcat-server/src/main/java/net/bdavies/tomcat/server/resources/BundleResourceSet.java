@@ -0,0 +1,108 @@
+package net.bdavies.tomcat.server.resources;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.WebResource;
+import org.apache.catalina.WebResourceRoot;
+import org.apache.catalina.webresources.AbstractResourceSet;
+import org.apache.catalina.webresources.EmptyResource;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Read only resource set that serves the bundles built by an {@link AssetBundler} straight from memory
+ *
+ * @author ben.davies
+ */
+@Slf4j
+public class BundleResourceSet extends AbstractResourceSet {
+    private final AssetBundler bundler;
+
+    public BundleResourceSet(WebResourceRoot root, AssetBundler bundler) {
+        this.bundler = bundler;
+        setRoot(root);
+        setWebAppMount("/");
+        setBase("bundles");
+    }
+
+    /**
+     * Is there a bundle at the path, checked without going through the resource cache
+     *
+     * @param path the path in the webapp
+     * @return true if this set serves the path
+     */
+    boolean contains(String path) {
+        return bundler.getBundle(path) != null;
+    }
+
+    @Override
+    public WebResource getResource(String path) {
+        checkPath(path);
+        val bundle = bundler.getBundle(path);
+        if (bundle == null) {
+            return new EmptyResource(getRoot(), path);
+        }
+        return new InMemoryResource(getRoot(), path, bundle);
+    }
+
+    @Override
+    public String[] list(String path) {
+        return listWebAppPaths(path).stream()
+                .map(p -> p.substring(p.lastIndexOf('/') + 1))
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public Set<String> listWebAppPaths(String path) {
+        checkPath(path);
+        val dir = path.endsWith("/") ? path : path + "/";
+        Set<String> result = new LinkedHashSet<>();
+        for (val bundlePath : bundler.getBundlePaths()) {
+            if (bundlePath.startsWith(dir) && bundlePath.indexOf('/', dir.length()) == -1) {
+                result.add(bundlePath);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean mkdir(String path) {
+        checkPath(path);
+        return false;
+    }
+
+    @Override
+    public boolean write(String path, InputStream is, boolean overwrite) {
+        checkPath(path);
+        return false;
+    }
+
+    @Override
+    public URL getBaseUrl() {
+        return null;
+    }
+
+    @Override
+    public void setReadOnly(boolean readOnly) {
+        //Always read only
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public void gc() {
+        //Nothing to release
+    }
+
+    @Override
+    protected void initInternal() throws LifecycleException {
+        //Bundles are built before the context starts
+    }
+}
@@ -0,0 +1,60 @@
+package net.bdavies.tomcat.server.resources;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.catalina.servlets.DefaultServlet;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Default servlet that answers conditional GET and HEAD requests for watched resources from the
+ * {@link ResourceMetadataCache}, so an unchanged file is never looked up on disk
+ *
+ * It runs at the end of the filter chain like any other servlet so the webapp's filters see every request,
+ * whether or not it ends up as a 304.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+public class ConditionalDefaultServlet extends DefaultServlet {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void serveResource(HttpServletRequest request, HttpServletResponse response, boolean content,
+                                 String inputEncoding) throws IOException, ServletException {
+        val ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null && isRead(request) && resources instanceof WatchedResourceRoot) {
+            val cache = ((WatchedResourceRoot) resources).getMetadataCache();
+            val metadata = cache.lookup(getRelativePath(request, true));
+            if (metadata != null && matches(ifNoneMatch, metadata.getETag())) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                response.setHeader("ETag", metadata.getETag());
+                return;
+            }
+        }
+        super.serveResource(request, response, content, inputEncoding);
+    }
+
+    private boolean isRead(HttpServletRequest request) {
+        val method = request.getMethod();
+        return "GET".equals(method) || "HEAD".equals(method);
+    }
+
+    /**
+     * If-None-Match uses the weak comparison so a W/ prefix on either side is ignored
+     */
+    private boolean matches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch.trim().equals("*")) return true;
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(eTag)) return true;
+        }
+        return false;
+    }
+}
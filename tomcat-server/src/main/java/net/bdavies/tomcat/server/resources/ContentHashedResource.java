@@ -0,0 +1,139 @@
+package net.bdavies.tomcat.server.resources;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.catalina.WebResource;
+import org.apache.catalina.WebResourceRoot;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.security.cert.Certificate;
+import java.util.jar.Manifest;
+
+/**
+ * A watched resource that reports a strong content hash ETag instead of the weak length and timestamp one
+ *
+ * @author ben.davies
+ */
+@Slf4j
+@RequiredArgsConstructor
+class ContentHashedResource implements WebResource {
+    private final WebResource resource;
+    private final ResourceMetadataCache cache;
+
+    @Override
+    public String getETag() {
+        String eTag = cache.getETag(resource);
+        return eTag == null ? resource.getETag() : eTag;
+    }
+
+    @Override
+    public long getLastModified() {
+        return resource.getLastModified();
+    }
+
+    @Override
+    public String getLastModifiedHttp() {
+        return resource.getLastModifiedHttp();
+    }
+
+    @Override
+    public boolean exists() {
+        return resource.exists();
+    }
+
+    @Override
+    public boolean isVirtual() {
+        return resource.isVirtual();
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return resource.isDirectory();
+    }
+
+    @Override
+    public boolean isFile() {
+        return resource.isFile();
+    }
+
+    @Override
+    public boolean delete() {
+        return resource.delete();
+    }
+
+    @Override
+    public String getName() {
+        return resource.getName();
+    }
+
+    @Override
+    public long getContentLength() {
+        return resource.getContentLength();
+    }
+
+    @Override
+    public String getCanonicalPath() {
+        return resource.getCanonicalPath();
+    }
+
+    @Override
+    public boolean canRead() {
+        return resource.canRead();
+    }
+
+    @Override
+    public String getWebappPath() {
+        return resource.getWebappPath();
+    }
+
+    @Override
+    public void setMimeType(String mimeType) {
+        resource.setMimeType(mimeType);
+    }
+
+    @Override
+    public String getMimeType() {
+        return resource.getMimeType();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return resource.getInputStream();
+    }
+
+    @Override
+    public byte[] getContent() {
+        return resource.getContent();
+    }
+
+    @Override
+    public long getCreation() {
+        return resource.getCreation();
+    }
+
+    @Override
+    public URL getURL() {
+        return resource.getURL();
+    }
+
+    @Override
+    public URL getCodeBase() {
+        return resource.getCodeBase();
+    }
+
+    @Override
+    public WebResourceRoot getWebResourceRoot() {
+        return resource.getWebResourceRoot();
+    }
+
+    @Override
+    public Certificate[] getCertificates() {
+        return resource.getCertificates();
+    }
+
+    @Override
+    public Manifest getManifest() {
+        return resource.getManifest();
+    }
+}
@@ -0,0 +1,142 @@
+package net.bdavies.tomcat.server.resources;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.catalina.WebResource;
+import org.apache.catalina.WebResourceRoot;
+import org.apache.tomcat.util.http.FastHttpDateFormat;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.cert.Certificate;
+import java.util.jar.Manifest;
+
+/**
+ * A built bundle served from memory, it has no file on disk so it can never be sent with sendfile
+ *
+ * @author ben.davies
+ */
+@Slf4j
+@RequiredArgsConstructor
+class InMemoryResource implements WebResource {
+    private final WebResourceRoot root;
+    private final String webappPath;
+    private final AssetBundler.Bundle bundle;
+    private String mimeType;
+
+    @Override
+    public String getETag() {
+        return bundle.getETag();
+    }
+
+    @Override
+    public long getLastModified() {
+        return bundle.getLastModified();
+    }
+
+    @Override
+    public String getLastModifiedHttp() {
+        return FastHttpDateFormat.formatDate(getLastModified());
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public boolean isVirtual() {
+        return false;
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return false;
+    }
+
+    @Override
+    public boolean isFile() {
+        return true;
+    }
+
+    @Override
+    public boolean delete() {
+        return false;
+    }
+
+    @Override
+    public String getName() {
+        return webappPath.substring(webappPath.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    public long getContentLength() {
+        return bundle.getContent().length;
+    }
+
+    @Override
+    public String getCanonicalPath() {
+        return null;
+    }
+
+    @Override
+    public boolean canRead() {
+        return true;
+    }
+
+    @Override
+    public String getWebappPath() {
+        return webappPath;
+    }
+
+    @Override
+    public void setMimeType(String mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    @Override
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(bundle.getContent());
+    }
+
+    @Override
+    public byte[] getContent() {
+        return bundle.getContent();
+    }
+
+    @Override
+    public long getCreation() {
+        return getLastModified();
+    }
+
+    @Override
+    public URL getURL() {
+        return null;
+    }
+
+    @Override
+    public URL getCodeBase() {
+        return null;
+    }
+
+    @Override
+    public WebResourceRoot getWebResourceRoot() {
+        return root;
+    }
+
+    @Override
+    public Certificate[] getCertificates() {
+        return null;
+    }
+
+    @Override
+    public Manifest getManifest() {
+        return null;
+    }
+}
@@ -0,0 +1,165 @@
+package net.bdavies.tomcat.server.resources;
+
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Conservative CSS and JavaScript minification
+ *
+ * Only changes that can never alter behaviour are made: comments are removed and whitespace is collapsed,
+ * strings, template literals and regular expression literals are copied untouched. JavaScript keeps its line
+ * breaks so automatic semicolon insertion works exactly as it did before.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+@UtilityClass
+public class Minifier {
+    private static final String CSS_TIGHT = "{};,>";
+    private static final String REGEX_PRECEDERS = "(,=:[!&|?{};+-*%<>~^";
+
+    public String minifyCss(String css) {
+        StringBuilder out = new StringBuilder(css.length());
+        int len = css.length();
+        boolean pendingSpace = false;
+        for (int i = 0; i < len; i++) {
+            char c = css.charAt(i);
+            if (c == '/' && i + 1 < len && css.charAt(i + 1) == '*') {
+                int end = css.indexOf("*/", i + 2);
+                i = end == -1 ? len : end + 1;
+                pendingSpace = true;
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace) {
+                pendingSpace = false;
+                char prev = out.length() == 0 ? '{' : out.charAt(out.length() - 1);
+                if (CSS_TIGHT.indexOf(prev) == -1 && prev != ':' && CSS_TIGHT.indexOf(c) == -1) {
+                    out.append(' ');
+                }
+            }
+            if (c == '}' && out.length() > 0 && out.charAt(out.length() - 1) == ';') {
+                out.setLength(out.length() - 1);
+            }
+            if (c == '"' || c == '\'') {
+                i = copyQuoted(css, i, c, out);
+                continue;
+            }
+            out.append(c);
+        }
+        return out.toString();
+    }
+
+    public String minifyJs(String js) {
+        StringBuilder out = new StringBuilder(js.length());
+        int len = js.length();
+        boolean pendingSpace = false;
+        boolean pendingNewline = false;
+        for (int i = 0; i < len; i++) {
+            char c = js.charAt(i);
+            char next = i + 1 < len ? js.charAt(i + 1) : 0;
+            if (c == '/' && next == '/') {
+                int end = js.indexOf('\n', i);
+                i = (end == -1 ? len : end) - 1;
+                continue;
+            }
+            if (c == '/' && next == '*') {
+                int end = js.indexOf("*/", i + 2);
+                if (end != -1 && js.substring(i, end).indexOf('\n') != -1) {
+                    pendingNewline = true;
+                } else {
+                    pendingSpace = true;
+                }
+                i = end == -1 ? len : end + 1;
+                continue;
+            }
+            if (c == '\n' || c == '\r') {
+                pendingNewline = true;
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                continue;
+            }
+            if (out.length() > 0) {
+                if (pendingNewline) {
+                    out.append('\n');
+                } else if (pendingSpace) {
+                    out.append(' ');
+                }
+            }
+            pendingNewline = false;
+            pendingSpace = false;
+            if (c == '"' || c == '\'' || c == '`') {
+                i = copyQuoted(js, i, c, out);
+            } else if (c == '/' && isRegexStart(out)) {
+                i = copyRegex(js, i, out);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    private int copyQuoted(String src, int start, char quote, StringBuilder out) {
+        int i = start;
+        out.append(src.charAt(i++));
+        while (i < src.length()) {
+            char c = src.charAt(i);
+            out.append(c);
+            if (c == '\\' && i + 1 < src.length()) {
+                out.append(src.charAt(++i));
+            } else if (c == quote) {
+                return i;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private int copyRegex(String src, int start, StringBuilder out) {
+        int i = start;
+        boolean inClass = false;
+        out.append(src.charAt(i++));
+        while (i < src.length()) {
+            char c = src.charAt(i);
+            if (c == '\n') {
+                //Not a regex after all, whatever it was is copied as is
+                return i - 1;
+            }
+            out.append(c);
+            if (c == '\\' && i + 1 < src.length()) {
+                out.append(src.charAt(++i));
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == ']') {
+                inClass = false;
+            } else if (c == '/' && !inClass) {
+                return i;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private boolean isRegexStart(StringBuilder out) {
+        int i = out.length() - 1;
+        while (i >= 0 && Character.isWhitespace(out.charAt(i))) {
+            i--;
+        }
+        if (i < 0) return true;
+        char prev = out.charAt(i);
+        if (REGEX_PRECEDERS.indexOf(prev) != -1) return true;
+        //Keywords that can be followed by an expression
+        int end = i + 1;
+        while (i >= 0 && Character.isJavaIdentifierPart(out.charAt(i))) {
+            i--;
+        }
+        String word = out.substring(i + 1, end);
+        return word.equals("return") || word.equals("typeof") || word.equals("case") || word.equals("in")
+                || word.equals("of") || word.equals("void") || word.equals("delete") || word.equals("throw");
+    }
+}
@@ -0,0 +1,196 @@
+package net.bdavies.tomcat.server.resources;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.catalina.WebResource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Strong content hash ETags for the files under the watched webapp resource directories
+ *
+ * Entries are keyed by the path in the webapp and are only ever replaced when the file watcher reports a
+ * change, so a conditional request can be answered from memory without touching the filesystem. The hash of a
+ * changed file is recomputed in the background as soon as the change is seen.
+ *
+ * Files are tracked by their real path. The watcher reports the path under the watched directory and the
+ * resource sets report the canonical one, which are different when a symlink is involved.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+public class ResourceMetadataCache {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final List<Path> watchedRoots;
+    private final List<Path> realRoots;
+    private final Map<String, Metadata> byWebPath = new ConcurrentHashMap<>();
+    private final Map<Path, Set<String>> webPathsByFile = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> watchedByWebPath = new ConcurrentHashMap<>();
+    private final ExecutorService hasher;
+
+    public ResourceMetadataCache(List<File> watchedRoots) {
+        this.watchedRoots = watchedRoots.stream().map(f -> f.getAbsoluteFile().toPath().normalize())
+                .collect(Collectors.toList());
+        this.realRoots = this.watchedRoots.stream().map(ResourceMetadataCache::toRealPath)
+                .collect(Collectors.toList());
+        this.hasher = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "Tomcat-Resource-Hasher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Is the file of a resource under one of the watched roots, only those files can be cached because nothing else
+     * will tell us when they change. The answer is kept for the path in the webapp until the watcher reports a change
+     *
+     * @param resource the resource being served
+     * @return true if changes to the file are watched
+     */
+    public boolean isWatched(WebResource resource) {
+        return watchedByWebPath.computeIfAbsent(resource.getWebappPath(),
+                p -> isUnderWatchedRoot(resource.getCanonicalPath()));
+    }
+
+    private boolean isUnderWatchedRoot(String canonicalPath) {
+        if (canonicalPath == null) return false;
+        //The canonical path already has every symlink resolved
+        val path = Path.of(canonicalPath);
+        return realRoots.stream().anyMatch(path::startsWith);
+    }
+
+    /**
+     * Look up a cached entry without touching the filesystem
+     *
+     * @param webPath the path within the webapp
+     * @return the cached metadata or null if nothing is known about the path
+     */
+    public Metadata lookup(String webPath) {
+        return byWebPath.get(webPath);
+    }
+
+    /**
+     * Get the strong ETag for a resource, hashing the file the first time it is seen
+     *
+     * @param resource the resource being served
+     * @return the ETag or null if the resource is out of step with the file on disk
+     */
+    String getETag(WebResource resource) {
+        val webPath = resource.getWebappPath();
+        Metadata metadata = byWebPath.get(webPath);
+        if (metadata == null) {
+            val file = toRealPath(Path.of(resource.getCanonicalPath()));
+            metadata = hash(file);
+            if (metadata == null) return null;
+            byWebPath.put(webPath, metadata);
+            webPathsByFile.computeIfAbsent(file, f -> ConcurrentHashMap.newKeySet()).add(webPath);
+        }
+        //The StandardRoot cache can hand out a resource that is older than the file we hashed
+        return metadata.getLastModified() == resource.getLastModified() ? metadata.getETag() : null;
+    }
+
+    /**
+     * Called by the file watcher when a file is created, modified or deleted
+     *
+     * @param file the file that changed
+     */
+    public void invalidate(Path file) {
+        val absolute = file.toAbsolutePath().normalize();
+        val path = toRealPath(absolute);
+        //A new or deleted file can change which resource set a path is served from
+        watchedByWebPath.clear();
+        //A symlink that now points somewhere else is only known by where it is in the watched directory
+        Set<String> stale = new HashSet<>();
+        for (val root : watchedRoots) {
+            if (absolute.startsWith(root) && !absolute.equals(root)) {
+                stale.add("/" + root.relativize(absolute).toString().replace(File.separatorChar, '/'));
+            }
+        }
+        stale.forEach(byWebPath::remove);
+        val webPaths = webPathsByFile.get(path);
+        if (webPaths == null) return;
+        webPaths.forEach(byWebPath::remove);
+        hasher.execute(() -> {
+            val metadata = hash(path);
+            if (metadata == null) {
+                webPathsByFile.remove(path);
+                return;
+            }
+            webPaths.forEach(p -> byWebPath.put(p, metadata));
+            log.debug("Updated ETag of {} to {}", path, metadata.getETag());
+        });
+    }
+
+    public void shutdown() {
+        hasher.shutdownNow();
+    }
+
+    /**
+     * The path with every symlink resolved, a file that no longer exists only has its directory resolved
+     */
+    private static Path toRealPath(Path file) {
+        val absolute = file.toAbsolutePath().normalize();
+        try {
+            return absolute.toRealPath();
+        } catch (IOException e) {
+            val parent = absolute.getParent();
+            if (parent == null || absolute.getFileName() == null) return absolute;
+            try {
+                return parent.toRealPath().resolve(absolute.getFileName());
+            } catch (IOException ignored) {
+                return absolute;
+            }
+        }
+    }
+
+    private Metadata hash(Path file) {
+        if (!Files.isRegularFile(file)) return null;
+        try {
+            val digest = MessageDigest.getInstance("SHA-1");
+            long lastModified = Files.getLastModifiedTime(file).toMillis();
+            long length = 0;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (InputStream is = Files.newInputStream(file)) {
+                int read;
+                while ((read = is.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                    length += read;
+                }
+            }
+            val etag = "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest()) + "\"";
+            return new Metadata(etag, lastModified, length);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            log.warn("Unable to hash resource {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * What is known about a resource file the last time it changed
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class Metadata {
+        private final String eTag;
+        private final long lastModified;
+        private final long length;
+    }
+}
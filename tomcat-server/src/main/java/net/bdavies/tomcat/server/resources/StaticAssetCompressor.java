@@ -0,0 +1,148 @@
+package net.bdavies.tomcat.server.resources;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps gzip side files for the text assets in the precompressed resource directories
+ *
+ * The side files are written to a shadow directory per resource directory under the build directory, so the
+ * source tree is never touched, and the shadow directory is mounted at the same place as its source so the
+ * default servlet finds file.ext.gz next to file.ext. Files are compressed once at startup if their side file
+ * is missing or stale and again whenever the watcher reports a change.
+ *
+ * There is no brotli encoder in the JDK so only gzip side files are generated, .br files that already exist
+ * in a resource directory are still served by the default servlet.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+public class StaticAssetCompressor {
+    private static final String GZIP_EXTENSION = ".gz";
+    private static final int MIN_SIZE = 256;
+    private static final Set<String> COMPRESSIBLE = new HashSet<>(Arrays.asList(
+            "css", "js", "mjs", "map", "html", "htm", "svg", "json", "xml", "txt"));
+
+    private final Map<Path, Path> shadows = new LinkedHashMap<>();
+
+    public StaticAssetCompressor(List<File> directories, File outputDirectory) {
+        int i = 0;
+        for (val dir : directories) {
+            if (!dir.isDirectory()) {
+                log.warn("Only directories can be precompressed, skipping {}", dir);
+                continue;
+            }
+            shadows.put(dir.getAbsoluteFile().toPath().normalize(),
+                    outputDirectory.toPath().resolve(i++ + "-" + dir.getName()));
+        }
+    }
+
+    /**
+     * Get the shadow directory that holds the side files for a resource directory
+     *
+     * @param directory the resource directory
+     * @return the shadow directory or null if the directory is not precompressed
+     */
+    public File getShadowDirectory(File directory) {
+        val shadow = shadows.get(directory.getAbsoluteFile().toPath().normalize());
+        return shadow == null ? null : shadow.toFile();
+    }
+
+    /**
+     * Bring every side file up to date, called once before the server starts
+     */
+    public void compressAll() {
+        long start = System.nanoTime();
+        int[] count = {0};
+        shadows.forEach((source, shadow) -> {
+            try (Stream<Path> files = Files.walk(source)) {
+                files.filter(Files::isRegularFile).forEach(f -> {
+                    if (compress(source, shadow, f, false)) count[0]++;
+                });
+            } catch (IOException e) {
+                log.error("Unable to precompress the resources in {}", source, e);
+            }
+        });
+        log.info("Precompressed {} static assets in {} ms", count[0], (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Called by the file watcher when a file is created, modified or deleted
+     *
+     * @param file the file that changed
+     */
+    public void onChange(Path file) {
+        val path = file.toAbsolutePath().normalize();
+        shadows.forEach((source, shadow) -> {
+            if (!path.startsWith(source)) return;
+            if (Files.isRegularFile(path)) {
+                compress(source, shadow, path, true);
+            } else {
+                try {
+                    Files.deleteIfExists(sideFile(source, shadow, path));
+                } catch (IOException e) {
+                    log.warn("Unable to remove the precompressed copy of {}", path, e);
+                }
+            }
+        });
+    }
+
+    private boolean compress(Path source, Path shadow, Path file, boolean force) {
+        if (!isCompressible(file)) return false;
+        val target = sideFile(source, shadow, file);
+        try {
+            if (Files.size(file) < MIN_SIZE) {
+                Files.deleteIfExists(target);
+                return false;
+            }
+            if (!force && Files.exists(target)
+                    && Files.getLastModifiedTime(target).compareTo(Files.getLastModifiedTime(file)) >= 0) {
+                return false;
+            }
+            Files.createDirectories(target.getParent());
+            //Write next to the target and move so a request never sees a half written file
+            val tmp = target.resolveSibling(target.getFileName() + ".tmp");
+            try (InputStream is = Files.newInputStream(file);
+                 OutputStream os = new GZIPOutputStream(Files.newOutputStream(tmp), 8192) {{
+                     def.setLevel(Deflater.BEST_COMPRESSION);
+                 }}) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = is.read(buffer)) != -1) {
+                    os.write(buffer, 0, read);
+                }
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Precompressed {} to {}", file, target);
+            return true;
+        } catch (IOException e) {
+            log.warn("Unable to precompress {}", file, e);
+            return false;
+        }
+    }
+
+    private Path sideFile(Path source, Path shadow, Path file) {
+        return shadow.resolve(source.relativize(file).toString() + GZIP_EXTENSION);
+    }
+
+    private boolean isCompressible(Path file) {
+        val name = file.getFileName().toString();
+        val dot = name.lastIndexOf('.');
+        return dot > 0 && COMPRESSIBLE.contains(name.substring(dot + 1).toLowerCase());
+    }
+}
@@ -0,0 +1,66 @@
+package net.bdavies.tomcat.server.resources;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.catalina.Context;
+import org.apache.catalina.WebResource;
+import org.apache.catalina.webresources.StandardRoot;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resource root that gives files under the watched resource directories content hash ETags, whichever
+ * resource set they are served from, and serves the built bundles ahead of everything else
+ *
+ * @author ben.davies
+ */
+@Slf4j
+public class WatchedResourceRoot extends StandardRoot {
+    @Getter(AccessLevel.PACKAGE)
+    private final ResourceMetadataCache metadataCache;
+    @Setter
+    private BundleResourceSet bundles;
+    private final Map<String, Long> bypassCacheUntil = new ConcurrentHashMap<>();
+
+    public WatchedResourceRoot(Context context, ResourceMetadataCache cache) {
+        super(context);
+        this.metadataCache = cache;
+    }
+
+    @Override
+    public WebResource getResource(String path) {
+        //Bundles are rebuilt in memory so they skip the resource cache, a stale entry would outlive the rebuild
+        if (bundles != null && bundles.contains(path)) {
+            return bundles.getResource(path);
+        }
+        WebResource resource = isBypassingCache(path) ? getResourceInternal(path, false) : super.getResource(path);
+        if (resource.isFile() && metadataCache.isWatched(resource)) {
+            return new ContentHashedResource(resource, metadataCache);
+        }
+        return resource;
+    }
+
+    /**
+     * Read a path from its resource set rather than the cache until the cache entry for it has expired, used when
+     * the watcher sees a file change so Jasper and the default servlet see the new file straight away
+     *
+     * @param path the path in the webapp
+     */
+    public void invalidate(String path) {
+        bypassCacheUntil.put(path, System.currentTimeMillis() + getCacheTtl());
+    }
+
+    private boolean isBypassingCache(String path) {
+        if (bypassCacheUntil.isEmpty()) return false;
+        Long until = bypassCacheUntil.get(path);
+        if (until == null) return false;
+        if (until < System.currentTimeMillis()) {
+            bypassCacheUntil.remove(path);
+            return false;
+        }
+        return true;
+    }
+}
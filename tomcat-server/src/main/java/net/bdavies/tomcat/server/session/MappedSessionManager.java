@@ -0,0 +1,300 @@
+package net.bdavies.tomcat.server.session;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.catalina.Session;
+import org.apache.catalina.session.StandardManager;
+import org.apache.catalina.session.StandardSession;
+import org.apache.catalina.util.CustomObjectInputStream;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps sessions across reloads in a memory mapped file instead of SESSIONS.ser
+ *
+ * When the context stops every session is serialized in parallel and written as one record to the file. When it
+ * starts again only the index of the file is read, a session is deserialized with the new webapp class loader the
+ * first time it is looked up, so a reload costs nothing for sessions that are never used again. Sessions that were
+ * never re-attached are copied as raw bytes to the next file. Attributes that can't be serialized are reported.
+ *
+ * Each unload writes a new generation of the file instead of replacing the one that is still mapped, the JVM
+ * only unmaps a file when the buffer is collected and until then Windows won't let it be replaced. Older
+ * generations are removed once they can be.
+ *
+ * Record layout: id length (short), id (utf-8), last accessed (long), max inactive interval (int), data length
+ * (int), the data written by {@link StandardSession#writeObjectData(ObjectOutputStream)}
+ *
+ * @author ben.davies
+ */
+@Slf4j
+public class MappedSessionManager extends StandardManager {
+    static final int MAGIC = 0x544D5331;
+    private static final int HEADER_SIZE = 8;
+    private static final String EXTENSION = ".sessions";
+
+    private final File directory;
+    private final Map<String, Record> pending = new ConcurrentHashMap<>();
+    private ByteBuffer mapped;
+
+    /**
+     * @param directory where the session files are kept, one per context
+     */
+    public MappedSessionManager(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public Session findSession(String id) throws IOException {
+        Session session = super.findSession(id);
+        if (session != null || id == null) return session;
+        val record = pending.get(id);
+        if (record == null) return super.findSession(id);
+        //Concurrent requests for the same session wait for the first one to re-attach it
+        synchronized (record) {
+            session = super.findSession(id);
+            if (session == null && pending.get(id) == record) {
+                session = attach(record);
+                //Only removed once the session is live so there is no moment where it can't be found
+                pending.remove(id, record);
+            }
+            return session;
+        }
+    }
+
+    @Override
+    public int getActiveSessions() {
+        return super.getActiveSessions() + pending.size();
+    }
+
+    @Override
+    public void processExpires() {
+        super.processExpires();
+        long now = System.currentTimeMillis();
+        pending.values().removeIf(r -> r.maxInactiveInterval > 0
+                && now - r.lastAccessedTime > r.maxInactiveInterval * 1000L);
+    }
+
+    @Override
+    protected void doLoad() throws IOException {
+        pending.clear();
+        mapped = null;
+        val generations = findGenerations();
+        if (generations.isEmpty()) return;
+        val file = generations.remove(generations.size() - 1);
+        deleteQuietly(generations);
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        val records = index(mapped);
+        if (records == null) {
+            log.warn("Ignoring {} as it is not a session store", file);
+            mapped = null;
+            return;
+        }
+        records.forEach(r -> pending.put(r.id, r));
+        log.info("{} sessions of [{}] will be re-attached when they are next used, indexed in {} ms", records.size(),
+                getContext().getName(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Override
+    protected void doUnload() throws IOException {
+        long start = System.nanoTime();
+        val sessions = Arrays.stream(findSessions()).map(s -> (StandardSession) s).collect(Collectors.toList());
+        //Activation listeners are application code so they run on this thread with the webapp class loader
+        sessions.forEach(StandardSession::passivate);
+        List<String> problems = Collections.synchronizedList(new ArrayList<>());
+        List<byte[]> records = sessions.parallelStream().map(s -> serialize(s, problems))
+                .filter(Objects::nonNull).collect(Collectors.toCollection(ArrayList::new));
+        int serialized = records.size();
+        //Sessions nobody asked for since the last reload are copied without deserializing them
+        val live = sessions.stream().map(StandardSession::getIdInternal).collect(Collectors.toSet());
+        pending.values().stream().filter(r -> !live.contains(r.id))
+                .forEach(r -> records.add(encode(r.id, r.lastAccessedTime, r.maxInactiveInterval, read(mapped, r))));
+        pending.clear();
+        mapped = null;
+        write(records);
+        //Same as StandardManager, they are stored so nothing is told they have ended
+        sessions.forEach(s -> s.expire(false));
+        if (!problems.isEmpty()) {
+            log.warn("Some session data of [{}] could not be kept across the reload:\n  {}", getContext().getName(),
+                    String.join("\n  ", problems));
+        }
+        log.info("Stored {} sessions of [{}] ({} not re-attached since the last reload) in {} ms", records.size(),
+                getContext().getName(), records.size() - serialized, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private byte[] serialize(StandardSession session, List<String> problems) {
+        val id = session.getIdInternal();
+        try {
+            for (val name : Collections.list(session.getAttributeNames())) {
+                val value = session.getAttribute(name);
+                if (value != null && !(value instanceof Serializable)) {
+                    problems.add(id + ": attribute " + name + " (" + value.getClass().getName()
+                            + ") is not serializable and was dropped");
+                }
+            }
+            val bos = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+                session.writeObjectData(oos);
+            }
+            return encode(id, session.getLastAccessedTimeInternal(), session.getMaxInactiveInterval(),
+                    bos.toByteArray());
+        } catch (IOException | IllegalStateException e) {
+            problems.add(id + ": the session was dropped, " + e);
+            return null;
+        }
+    }
+
+    private Session attach(Record record) {
+        val session = (StandardSession) createEmptySession();
+        val loader = getContext().getLoader() == null ? null : getContext().getLoader().getClassLoader();
+        try (ObjectInputStream ois = new CustomObjectInputStream(new ByteArrayInputStream(read(mapped, record)),
+                loader)) {
+            session.readObjectData(ois);
+        } catch (IOException | ClassNotFoundException e) {
+            log.warn("Session {} of [{}] could not be re-attached after the reload, it has been dropped", record.id,
+                    getContext().getName(), e);
+            return null;
+        }
+        session.setManager(this);
+        add(session);
+        session.activate();
+        //Checking the validity expires it if it timed out while it was stored
+        return session.isValid() ? session : null;
+    }
+
+    /**
+     * Read the index of a session store, the records point at the data in the buffer
+     *
+     * @param buffer the store, positioned at its start
+     * @return the records in the order they were written or null if it isn't a session store
+     */
+    static List<Record> index(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) return null;
+        int count = buffer.getInt();
+        List<Record> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] id = new byte[buffer.getShort()];
+            buffer.get(id);
+            long lastAccessedTime = buffer.getLong();
+            int maxInactiveInterval = buffer.getInt();
+            int length = buffer.getInt();
+            records.add(new Record(new String(id, StandardCharsets.UTF_8), lastAccessedTime, maxInactiveInterval,
+                    buffer.position(), length));
+            buffer.position(buffer.position() + length);
+        }
+        return records;
+    }
+
+    static byte[] read(ByteBuffer buffer, Record record) {
+        val data = new byte[record.length];
+        val view = buffer.duplicate();
+        view.position(record.offset);
+        view.get(data);
+        return data;
+    }
+
+    static byte[] encode(String id, long lastAccessedTime, int maxInactiveInterval, byte[] data) {
+        val idBytes = id.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(2 + idBytes.length + 8 + 4 + 4 + data.length)
+                .putShort((short) idBytes.length).put(idBytes)
+                .putLong(lastAccessedTime).putInt(maxInactiveInterval)
+                .putInt(data.length).put(data)
+                .array();
+    }
+
+    private void write(List<byte[]> records) throws IOException {
+        val previous = findGenerations();
+        if (records.isEmpty()) {
+            deleteQuietly(previous);
+            return;
+        }
+        val file = getStore(previous.isEmpty() ? 1 : generationOf(previous.get(previous.size() - 1)) + 1);
+        Files.createDirectories(file.getParent());
+        long size = HEADER_SIZE + records.stream().mapToLong(r -> r.length).sum();
+        val tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC).putInt(records.size());
+            records.forEach(buffer::put);
+            buffer.force();
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        deleteQuietly(previous);
+    }
+
+    /**
+     * The generations of the store of this context, oldest first
+     */
+    private List<Path> findGenerations() throws IOException {
+        if (!directory.isDirectory()) return new ArrayList<>();
+        val prefix = getStoreName() + ".";
+        try (val files = Files.list(directory.toPath())) {
+            return files.filter(f -> {
+                val name = f.getFileName().toString();
+                return name.startsWith(prefix) && name.endsWith(EXTENSION) && generationOf(f) > 0;
+            }).sorted(Comparator.comparingLong(this::generationOf)).collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    private long generationOf(Path file) {
+        val name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(getStoreName().length() + 1, name.length() - EXTENSION.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A generation that is still mapped can't be deleted on Windows, it is tried again on the next load or unload
+     */
+    private void deleteQuietly(List<Path> files) {
+        for (val file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.debug("Unable to remove the old session store {} yet", file);
+            }
+        }
+    }
+
+    /**
+     * One file per context, node and generation, e.g. admin-node1.3.sessions
+     */
+    private Path getStore(long generation) {
+        return directory.toPath().resolve(getStoreName() + "." + generation + EXTENSION);
+    }
+
+    private String getStoreName() {
+        val name = getContext().getName().replaceFirst("^/", "").replace('/', '#');
+        val route = getEngine() == null ? null : getEngine().getJvmRoute();
+        return (name.isEmpty() ? "ROOT" : name) + (route == null ? "" : "-" + route);
+    }
+
+    @Getter(AccessLevel.PACKAGE)
+    @RequiredArgsConstructor
+    static class Record {
+        private final String id;
+        private final long lastAccessedTime;
+        private final int maxInactiveInterval;
+        private final int offset;
+        private final int length;
+    }
+}
@@ -0,0 +1,37 @@
+package net.bdavies.tomcat.server.startup;
+
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+import net.bdavies.tomcat.server.jsp.JasperAccess;
+import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.LifecycleListener;
+
+/**
+ * Takes the JSP servlet back out of a context that has no JSPs
+ *
+ * Tomcat adds the JSP servlet, its mappings and index.jsp with the rest of the default web.xml just before the
+ * context starts, this runs straight after so Jasper is never loaded or initialised.
+ *
+ * @author ben.davies
+ */
+@RequiredArgsConstructor
+public class FastStartListener implements LifecycleListener {
+    private final WebAppFeatures features;
+
+    @Override
+    public void lifecycleEvent(LifecycleEvent event) {
+        if (!event.getType().equals(Lifecycle.BEFORE_START_EVENT) || features.isJsp()) return;
+        val context = (Context) event.getLifecycle();
+        val jsp = context.findChild(JasperAccess.JSP_SERVLET);
+        if (jsp == null) return;
+        for (val pattern : context.findServletMappings()) {
+            if (JasperAccess.JSP_SERVLET.equals(context.findServletMapping(pattern))) {
+                context.removeServletMapping(pattern);
+            }
+        }
+        context.removeChild(jsp);
+        context.removeWelcomeFile("index.jsp");
+    }
+}
@@ -0,0 +1,28 @@
+package net.bdavies.tomcat.server.startup;
+
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+
+/**
+ * Tells the startup timer when the first request has been accepted
+ *
+ * @author ben.davies
+ */
+public class FirstRequestValve extends ValveBase {
+    private final StartupTimer timer;
+
+    public FirstRequestValve(StartupTimer timer) {
+        super(true);
+        this.timer = timer;
+    }
+
+    @Override
+    public void invoke(Request request, Response response) throws IOException, ServletException {
+        timer.onRequest();
+        getNext().invoke(request, response);
+    }
+}
@@ -0,0 +1,193 @@
+package net.bdavies.tomcat.server.startup;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Records how long each phase of the runner's startup takes, measured from when the JVM started
+ *
+ * Phases can overlap, the context phases run inside tomcat.start and contexts start in parallel, so each one is
+ * shown with when it started as well as how long it took. Totals are phases that contain others, they are left out
+ * when looking for the slowest phases. The summary is logged as a table and written as JSON once the server has
+ * started and again when the first request has been served, anything timed after that (reloads) is ignored.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+public class StartupTimer {
+    private final long jvmStartNanos;
+    private final List<Phase> phases = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean firstRequest = new AtomicBoolean();
+    private final File reportFile;
+    private volatile boolean reported;
+    private volatile double readyMillis = -1;
+    private volatile double firstRequestMillis = -1;
+
+    /**
+     * @param reportFile where the JSON is written
+     */
+    public StartupTimer(File reportFile) {
+        this.reportFile = reportFile;
+        long sinceJvmStart = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        this.jvmStartNanos = System.nanoTime() - sinceJvmStart * 1_000_000;
+    }
+
+    /**
+     * Start timing a phase, use with try-with-resources
+     *
+     * @param name the phase
+     * @return the running phase, closing it records it
+     */
+    public Split start(String name) {
+        return new Split(name, false, System.nanoTime());
+    }
+
+    /**
+     * Start timing a phase that contains other phases
+     *
+     * @param name the phase
+     * @return the running phase, closing it records it
+     */
+    public Split startTotal(String name) {
+        return new Split(name, true, System.nanoTime());
+    }
+
+    public void time(String name, Runnable phase) {
+        try (Split ignored = start(name)) {
+            phase.run();
+        }
+    }
+
+    public <T> T time(String name, Supplier<T> phase) {
+        try (Split ignored = start(name)) {
+            return phase.get();
+        }
+    }
+
+    /**
+     * Record a phase that was timed elsewhere
+     *
+     * @param name       the phase
+     * @param startNanos {@link System#nanoTime()} when it started
+     * @param endNanos   {@link System#nanoTime()} when it ended
+     */
+    public void record(String name, long startNanos, long endNanos) {
+        record(name, false, startNanos, endNanos);
+    }
+
+    private void record(String name, boolean total, long startNanos, long endNanos) {
+        if (reported) return;
+        phases.add(new Phase(name, total, toMillis(startNanos - jvmStartNanos), toMillis(endNanos - startNanos),
+                Thread.currentThread().getName()));
+    }
+
+    /**
+     * Called for every request, only the first one is recorded
+     */
+    public void onRequest() {
+        //Every request passes through here so the common case is a single read
+        if (firstRequest.get() || !firstRequest.compareAndSet(false, true)) return;
+        firstRequestMillis = toMillis(System.nanoTime() - jvmStartNanos);
+        log.info("First request accepted {} ms after the JVM started", String.format(Locale.ROOT, "%.1f", firstRequestMillis));
+        write();
+    }
+
+    /**
+     * Log the summary table and write the JSON
+     */
+    public void report() {
+        reported = true;
+        val readyMillis = toMillis(System.nanoTime() - jvmStartNanos);
+        val sorted = getSortedPhases();
+        val sb = new StringBuilder("Startup timings in ms, totals are marked with *\n");
+        sb.append(String.format(Locale.ROOT, "  %-64s %10s %10s%n", "Phase", "At", "Took"));
+        for (val phase : sorted) {
+            sb.append(String.format(Locale.ROOT, "  %-64s %10.1f %10.1f%n", (phase.total ? "* " : "  ") + phase.name,
+                    phase.startMillis, phase.durationMillis));
+        }
+        sb.append(String.format(Locale.ROOT, "  Ready %.1f ms after the JVM started, the slowest phases were:", readyMillis));
+        sorted.stream().filter(p -> !p.total).sorted(Comparator.comparingDouble((Phase p) -> p.durationMillis).reversed())
+                .limit(3).forEach(p -> sb.append(String.format(Locale.ROOT, "%n    %s (%.1f ms)", p.name, p.durationMillis)));
+        log.info(sb.toString());
+        this.readyMillis = readyMillis;
+        write();
+    }
+
+    private synchronized void write() {
+        val sb = new StringBuilder("{\n");
+        sb.append("  \"readyMillis\": ").append(toJson(readyMillis))
+                .append(",\n  \"firstRequestMillis\": ").append(toJson(firstRequestMillis))
+                .append(",\n  \"phases\": [");
+        String separator = "\n";
+        for (val phase : getSortedPhases()) {
+            sb.append(separator).append(String.format(Locale.ROOT,
+                    "    {\"name\": \"%s\", \"total\": %b, \"startMillis\": %.3f, \"durationMillis\": %.3f, "
+                            + "\"thread\": \"%s\"}",
+                    escape(phase.name), phase.total, phase.startMillis, phase.durationMillis, escape(phase.thread)));
+            separator = ",\n";
+        }
+        sb.append("\n  ]\n}\n");
+        try {
+            Files.createDirectories(reportFile.getParentFile().toPath());
+            Files.write(reportFile.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            log.warn("Unable to write the startup timings to {}", reportFile, e);
+        }
+    }
+
+    private List<Phase> getSortedPhases() {
+        List<Phase> sorted = new ArrayList<>(phases);
+        sorted.sort(Comparator.comparingDouble(p -> p.startMillis));
+        return sorted;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static String toJson(double millis) {
+        return millis < 0 ? "null" : String.format(Locale.ROOT, "%.3f", millis);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    @RequiredArgsConstructor
+    private static class Phase {
+        private final String name;
+        private final boolean total;
+        private final double startMillis;
+        private final double durationMillis;
+        private final String thread;
+    }
+
+    /**
+     * A phase that is being timed
+     */
+    @RequiredArgsConstructor
+    public class Split implements AutoCloseable {
+        private final String name;
+        private final boolean total;
+        private final long startNanos;
+
+        @Override
+        public void close() {
+            record(name, total, startNanos, System.nanoTime());
+        }
+    }
+}
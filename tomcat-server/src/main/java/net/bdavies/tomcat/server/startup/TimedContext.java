@@ -0,0 +1,81 @@
+package net.bdavies.tomcat.server.startup;
+
+import lombok.Setter;
+import lombok.val;
+import org.apache.catalina.Container;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.core.StandardContext;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A context that times its own init and start, its listeners, its filters and the init of every servlet that is
+ * loaded on startup
+ *
+ * Used as the host's context class so it is created by {@link org.apache.catalina.startup.Tomcat#addWebapp}, the
+ * timer is set straight after.
+ *
+ * @author ben.davies
+ */
+public class TimedContext extends StandardContext {
+    @Setter
+    private StartupTimer startupTimer;
+    @Setter
+    private String timingName;
+
+    @Override
+    protected void initInternal() throws LifecycleException {
+        if (startupTimer == null) {
+            super.initInternal();
+            return;
+        }
+        try (StartupTimer.Split ignored = startupTimer.start(timingName + " init")) {
+            super.initInternal();
+        }
+    }
+
+    @Override
+    protected synchronized void startInternal() throws LifecycleException {
+        if (startupTimer == null) {
+            super.startInternal();
+            return;
+        }
+        try (StartupTimer.Split ignored = startupTimer.startTotal(timingName + " start")) {
+            super.startInternal();
+        }
+    }
+
+    @Override
+    public boolean listenerStart() {
+        if (startupTimer == null) return super.listenerStart();
+        try (StartupTimer.Split ignored = startupTimer.start(timingName + " listeners")) {
+            return super.listenerStart();
+        }
+    }
+
+    @Override
+    public boolean filterStart() {
+        if (startupTimer == null) return super.filterStart();
+        try (StartupTimer.Split ignored = startupTimer.start(timingName + " filters")) {
+            return super.filterStart();
+        }
+    }
+
+    @Override
+    public boolean loadOnStartup(Container[] children) {
+        if (startupTimer == null) return super.loadOnStartup(children);
+        //One servlet at a time so each gets its own timing, sorted the same way Tomcat orders them
+        List<Wrapper> wrappers = Arrays.stream(children).map(c -> (Wrapper) c).filter(w -> w.getLoadOnStartup() >= 0)
+                .sorted(Comparator.comparingInt(Wrapper::getLoadOnStartup)).collect(Collectors.toList());
+        for (val wrapper : wrappers) {
+            try (StartupTimer.Split ignored = startupTimer.start(timingName + " servlet " + wrapper.getName() + " init")) {
+                if (!super.loadOnStartup(new Container[]{wrapper})) return false;
+            }
+        }
+        return true;
+    }
+}
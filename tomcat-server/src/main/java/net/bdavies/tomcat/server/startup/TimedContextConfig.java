@@ -0,0 +1,42 @@
+package net.bdavies.tomcat.server.startup;
+
+import org.apache.catalina.startup.ContextConfig;
+
+/**
+ * Times the web.xml processing of a context, which is where the classes are scanned for annotations
+ *
+ * Looking for web fragments happens in the middle of it, that scan is already timed by the
+ * {@link TimedJarScanner} so it is taken off.
+ *
+ * @author ben.davies
+ */
+public class TimedContextConfig extends ContextConfig {
+    private final StartupTimer timer;
+    private final String contextName;
+
+    /**
+     * @param timer       the startup timer
+     * @param contextName the name of the context in the timings
+     */
+    public TimedContextConfig(StartupTimer timer, String contextName) {
+        this.timer = timer;
+        this.contextName = contextName;
+    }
+
+    @Override
+    protected void webConfig() {
+        long jarScan = getPluggabilityNanos();
+        long start = System.nanoTime();
+        try {
+            super.webConfig();
+        } finally {
+            long end = System.nanoTime() - (getPluggabilityNanos() - jarScan);
+            timer.record(contextName + " web.xml and annotation scan", start, end);
+        }
+    }
+
+    private long getPluggabilityNanos() {
+        return context.getJarScanner() instanceof TimedJarScanner
+                ? ((TimedJarScanner) context.getJarScanner()).getPluggabilityNanos() : 0;
+    }
+}
@@ -0,0 +1,50 @@
+package net.bdavies.tomcat.server.startup;
+
+import org.apache.tomcat.JarScanType;
+import org.apache.tomcat.JarScannerCallback;
+import org.apache.tomcat.util.scan.StandardJarScanner;
+
+import javax.servlet.ServletContext;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Times every jar scan of a context, TLDs are scanned by Jasper and web fragments by the context config
+ *
+ * @author ben.davies
+ */
+public class TimedJarScanner extends StandardJarScanner {
+    private final StartupTimer timer;
+    private final String contextName;
+    private final AtomicLong pluggabilityNanos = new AtomicLong();
+
+    /**
+     * @param timer       the startup timer
+     * @param contextName the name of the context in the timings
+     */
+    public TimedJarScanner(StartupTimer timer, String contextName) {
+        this.timer = timer;
+        this.contextName = contextName;
+    }
+
+    @Override
+    public void scan(JarScanType scanType, ServletContext context, JarScannerCallback callback) {
+        long start = System.nanoTime();
+        try {
+            super.scan(scanType, context, callback);
+        } finally {
+            long end = System.nanoTime();
+            if (scanType == JarScanType.PLUGGABILITY) {
+                pluggabilityNanos.addAndGet(end - start);
+            }
+            timer.record(contextName + " jar scan (" + scanType.name().toLowerCase(Locale.ROOT) + ")", start, end);
+        }
+    }
+
+    /**
+     * @return the total time spent looking for web fragments, it is part of the context config's web.xml processing
+     */
+    long getPluggabilityNanos() {
+        return pluggabilityNanos.get();
+    }
+}
@@ -0,0 +1,169 @@
+package net.bdavies.tomcat.server.startup;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import net.bdavies.tomcat.server.WebAppData;
+import net.bdavies.tomcat.server.jsp.JspRecompiler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Stream;
+import java.util.zip.ZipFile;
+
+/**
+ * What a webapp uses of the subsystems the fast start profile can leave out
+ *
+ * Found by looking at the files rather than starting anything: JNDI through environment entries, a
+ * META-INF/context.xml, references in web.xml or classes that use @Resource or javax.naming; JSPs or tag files and
+ * JSP config in web.xml; classes that are WebSocket endpoints or use the WebSocket server API. The classes of the
+ * webapp and of every jar on its classpath are only searched for the names of those types, a class that refers to
+ * them is enough.
+ *
+ * @author ben.davies
+ */
+@Slf4j
+@Getter
+@RequiredArgsConstructor
+public class WebAppFeatures {
+    private static final List<String> NAMING_WEB_XML = Arrays.asList("<env-entry", "<resource-ref",
+            "<resource-env-ref", "<ejb-ref", "<ejb-local-ref", "<message-destination-ref", "<service-ref");
+    private static final List<String> JSP_WEB_XML = Arrays.asList("<jsp-file", "<jsp-config");
+    private static final List<String> NAMING_CLASSES = Arrays.asList("javax/annotation/Resource", "javax/naming/");
+    private static final List<String> WEBSOCKET_CLASSES = Arrays.asList("javax/websocket/server/ServerEndpoint",
+            "javax/websocket/server/ServerApplicationConfig", "javax/websocket/server/ServerContainer",
+            "javax/websocket/Endpoint");
+
+    private final boolean naming;
+    private final boolean jsp;
+    private final boolean websocket;
+
+    /**
+     * Look at what a webapp uses
+     *
+     * @param app       the webapp
+     * @param classpath the jars and directories the webapp's classes are loaded from besides its compiled location
+     * @return the features it uses
+     */
+    public static WebAppFeatures detect(WebAppData app, List<File> classpath) {
+        List<File> roots = new ArrayList<>();
+        roots.add(app.getWebAppBaseDirectory());
+        roots.addAll(app.getWebAppResources());
+
+        String webXml = "";
+        boolean contextXml = false;
+        boolean jsp = false;
+        for (val root : roots) {
+            val webXmlFile = new File(root, "WEB-INF/web.xml");
+            if (webXml.isEmpty() && webXmlFile.isFile()) {
+                webXml = read(webXmlFile.toPath());
+            }
+            contextXml |= new File(root, "META-INF/context.xml").isFile();
+            jsp |= root.isDirectory() && !JspRecompiler.findJspDirectories(root).isEmpty();
+        }
+        boolean[] found = new boolean[3];
+        searchClasses(app.getCompiledLocation(), found);
+        //A jar or class directory that can't be read counts as using everything
+        classpath.parallelStream().forEach(entry -> {
+            if (entry.isDirectory()) {
+                searchClasses(entry, found);
+            } else if (entry.isFile()) {
+                searchJar(entry, found);
+            }
+        });
+
+        val finalWebXml = webXml;
+        //Every application property is bound as an environment entry, the installDir the runner adds is not counted
+        boolean naming = contextXml || hasProperties(app.getApplicationPropertiesFile())
+                || NAMING_WEB_XML.stream().anyMatch(finalWebXml::contains) || found[0];
+        jsp |= found[2] || JSP_WEB_XML.stream().anyMatch(finalWebXml::contains);
+        return new WebAppFeatures(naming, jsp, found[1]);
+    }
+
+    @Override
+    public String toString() {
+        return "JNDI " + (naming ? "yes" : "no") + ", JSP " + (jsp ? "yes" : "no") + ", WebSocket "
+                + (websocket ? "yes" : "no");
+    }
+
+    /**
+     * Search the classes in a directory, setting whether they use naming and whether they are or use WebSocket
+     * endpoints
+     */
+    private static void searchClasses(File directory, boolean[] found) {
+        if (directory == null || !directory.isDirectory()) return;
+        try (Stream<Path> files = Files.walk(directory.toPath())) {
+            files.filter(p -> p.toString().endsWith(".class")).forEach(p -> {
+                if (found[0] && found[1]) return;
+                search(read(p), found);
+            });
+        } catch (IOException e) {
+            log.warn("Unable to look through the classes in {}, assuming they use JNDI and WebSocket", directory, e);
+            found[0] = true;
+            found[1] = true;
+        }
+    }
+
+    /**
+     * Search the classes in a jar the same way, a JSP under META-INF/resources counts as the webapp using JSPs
+     */
+    private static void searchJar(File jar, boolean[] found) {
+        try (ZipFile zip = new ZipFile(jar)) {
+            val entries = zip.entries();
+            while (entries.hasMoreElements() && !(found[0] && found[1] && found[2])) {
+                val entry = entries.nextElement();
+                val name = entry.getName();
+                if (name.startsWith("META-INF/resources/") && JspRecompiler.isJsp(Paths.get(name))) {
+                    found[2] = true;
+                } else if (!(found[0] && found[1]) && name.endsWith(".class") && !name.startsWith("javax/")) {
+                    //Classes are only read until naming and WebSocket are found, the API classes themselves are left
+                    //out as a servlet or websocket api jar uses nothing
+                    try (InputStream is = zip.getInputStream(entry)) {
+                        search(new String(is.readAllBytes(), StandardCharsets.ISO_8859_1), found);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Unable to look through the classes in {}, assuming they use JNDI and WebSocket", jar, e);
+            found[0] = true;
+            found[1] = true;
+        }
+    }
+
+    private static void search(String content, boolean[] found) {
+        //Type names are stored as plain ascii in the constant pool
+        if (!found[0] && NAMING_CLASSES.stream().anyMatch(content::contains)) found[0] = true;
+        if (!found[1] && WEBSOCKET_CLASSES.stream().anyMatch(content::contains)) found[1] = true;
+    }
+
+    private static boolean hasProperties(File file) {
+        if (file == null || !file.isFile()) return false;
+        val properties = new Properties();
+        try (InputStream is = new FileInputStream(file)) {
+            properties.load(is);
+        } catch (IOException e) {
+            return true;
+        }
+        return !properties.isEmpty();
+    }
+
+    private static String read(Path file) {
+        try {
+            return new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+        } catch (IOException e) {
+            log.debug("Unable to read {}", file, e);
+            return "";
+        }
+    }
+}
@@ -1,12 +1,16 @@
 package net.bdavies.tomcat.server.watcher;
 
 import lombok.extern.java.Log;
+import lombok.val;
+import net.bdavies.tomcat.server.jfr.ChangeSets;
+import net.bdavies.tomcat.server.jfr.CompileEvent;
 import org.eclipse.jdt.core.compiler.CompilationProgress;
 import org.eclipse.jdt.core.compiler.batch.BatchCompiler;
 import org.slf4j.helpers.SubstituteLoggerFactory;
 
 import java.io.File;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -42,8 +46,15 @@ public class Compiler {
 
         //Set the file to compile
         cmdArgs.add(fileToCompile.getAbsolutePath().replace(".java~", ".java"));
+        val event = new CompileEvent();
+        event.setChangeSet(ChangeSets.current());
+        event.setFile(fileToCompile.getAbsolutePath());
+        event.setFiles(1);
+        //The errors are kept so they can be counted for the flight recorder
+        val errors = new StringWriter();
+        event.begin();
         BatchCompiler.compile(cmdArgs.toArray(new String[0]), new PrintWriter(System.out),
-                new PrintWriter(System.err), new CompilationProgress() {
+                new PrintWriter(errors), new CompilationProgress() {
                     @Override
                     public void begin(int remainingWork) {
                         System.out.println("Started compile of: " + fileToCompile.getName());
@@ -70,5 +81,17 @@ public class Compiler {
                     public void worked(int workIncrement, int remainingWork) {
                     }
                 });
+        event.end();
+        System.err.print(errors);
+        event.setErrors(countErrors(errors.toString()));
+        event.commit();
+    }
+
+    private int countErrors(String output) {
+        int count = 0;
+        for (int i = output.indexOf("ERROR in "); i >= 0; i = output.indexOf("ERROR in ", i + 1)) {
+            count++;
+        }
+        return count;
     }
 }
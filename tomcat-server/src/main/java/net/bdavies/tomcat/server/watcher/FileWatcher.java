@@ -1,7 +1,11 @@
 package net.bdavies.tomcat.server.watcher;
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import net.bdavies.tomcat.server.ReloadTracker;
+import net.bdavies.tomcat.server.jfr.ChangeSets;
+import net.bdavies.tomcat.server.jfr.WatchBatchEvent;
 import rx.schedulers.Schedulers;
 import rx.subjects.PublishSubject;
 
@@ -10,8 +14,11 @@ import java.io.IOException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import static java.nio.file.StandardWatchEventKinds.*;
 
@@ -21,10 +28,12 @@ import static java.nio.file.StandardWatchEventKinds.*;
 @Slf4j
 public class FileWatcher implements Runnable {
     private final PublishSubject<ChangeType> subject = PublishSubject.create();
+    private final PublishSubject<Path> resourceSubject = PublishSubject.create();
     private final Thread thread;
     private volatile boolean isRunning = false;
     private final WatchService service;
     private final Map<WatchKey, Path> keys;
+    private final Map<Path, List<Registration>> registrations = new ConcurrentHashMap<>();
     private final String compileClassPath;
     private final File outputDir;
     private final String srcDir;
@@ -35,14 +44,14 @@ public class FileWatcher implements Runnable {
         this.targetCompat = targetCompat;
         thread = new Thread(this, "FileWatcherThread");
         service = FileSystems.getDefault().newWatchService();
-        keys = new HashMap<>();
+        keys = new ConcurrentHashMap<>();
         this.compileClassPath = compileClassPath;
         this.outputDir = outputDir;
         //TODO: Find a better way to know the index of the srcs containing the java files
         srcDir = new ArrayList<>(sources).get(1).getAbsolutePath();
         for (val source : sources) {
             if (source.isDirectory()) {
-                registerAll(source.toPath());
+                registerTree(source.toPath(), new Registration(true, d -> true, f -> true, null), null);
             }
         }
     }
@@ -64,24 +73,76 @@ public class FileWatcher implements Runnable {
         }
     }
 
-    private void registerAll(Path dir) throws IOException {
-        if (dir.toString().equals(" ") || dir.toString().isEmpty()) return;
-        log.debug("Registering path: {} for file changes", dir);
-        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+    /**
+     * Watch a directory and every directory under it, including the ones created later, for directories such as
+     * the webapp base directory which also holds the build directory
+     *
+     * @param dir         the directory to watch
+     * @param directories which directories under it are watched, given the absolute path of the directory
+     * @param files       which files are treated as changes, given the absolute path of the file
+     */
+    public void watchTree(File dir, Predicate<Path> directories, Predicate<Path> files) throws IOException {
+        if (dir.isDirectory()) {
+            val registration = new Registration(true, directories, files, null);
+            registerTree(dir.getAbsoluteFile().toPath().normalize(), registration, null);
+        }
+    }
+
+    /**
+     * Watch a single file, its changes are only given to the listener and are not treated as a resource or a
+     * class change
+     *
+     * @param file     the file to watch, it doesn't need to exist yet
+     * @param onChange called with the absolute path of the file when it is created, modified or deleted, returns
+     *                 true if the change was applied and is going to be broadcast
+     */
+    public void watchFile(File file, Predicate<Path> onChange) throws IOException {
+        val path = file.getAbsoluteFile().toPath().normalize();
+        if (path.getParent() == null || !Files.isDirectory(path.getParent())) return;
+        //Only the file itself, the rest of its directory, often the project directory, stays unwatched
+        register(path.getParent(), new Registration(false, d -> false, path::equals, onChange));
+    }
+
+    /**
+     * Register a directory and the directories under it that the registration accepts
+     *
+     * @param existingFiles given the files already in the directories, null when they aren't needed
+     */
+    private void registerTree(Path root, Registration registration, Consumer<Path> existingFiles) throws IOException {
+        if (root.toString().equals(" ") || root.toString().isEmpty()) return;
+        log.debug("Registering path: {} for file changes", root);
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
             @Override
             public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-                register(dir);
+                if (!registration.directories.test(dir.toAbsolutePath().normalize())) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                register(dir, registration);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (existingFiles != null && registration.files.test(file.toAbsolutePath().normalize())) {
+                    existingFiles.accept(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                //Removed again before it could be visited
                 return FileVisitResult.CONTINUE;
             }
         });
     }
 
-    private void register(Path dir) throws IOException {
+    private void register(Path dir, Registration registration) throws IOException {
         WatchKey key = dir.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
         keys.put(key, dir);
+        registrations.computeIfAbsent(dir, d -> new CopyOnWriteArrayList<>()).add(registration);
     }
 
-
     public void subscribeClasses(Runnable onNext) {
         subject.observeOn(Schedulers.immediate())
                 .subscribeOn(Schedulers.immediate())
@@ -97,12 +158,126 @@ public class FileWatcher implements Runnable {
                 .subscribe(a -> onNext.run());
     }
 
+    /**
+     * Subscribe to the individual resource files that were created, modified or deleted, these are published
+     * before the {@link ChangeType#RESOURCE} change for the same file
+     *
+     * @param onNext called with the absolute path of the file
+     */
+    public void subscribeResourceFiles(Consumer<Path> onNext) {
+        resourceSubject.observeOn(Schedulers.immediate())
+                .subscribeOn(Schedulers.immediate())
+                .subscribe(onNext::accept);
+    }
+
+    private synchronized void updateResourceObservers(Path file) {
+        if (resourceSubject.hasObservers()) {
+            resourceSubject.onNext(file);
+        }
+    }
+
     private synchronized void updateObservers(ChangeType type) {
         if (subject.hasObservers()) {
             subject.onNext(type);
         }
     }
 
+    /**
+     * Find the registration that accepts a file, a watched file's own registration comes first
+     *
+     * @return the registration or null if the file is ignored
+     */
+    private Registration findRegistration(Path dir, Path file) {
+        val absPath = file.toAbsolutePath().normalize();
+        Registration found = null;
+        for (val registration : registrations.getOrDefault(dir, Collections.emptyList())) {
+            if (!registration.files.test(absPath)) continue;
+            if (registration.listener != null) return registration;
+            if (found == null) found = registration;
+        }
+        return found;
+    }
+
+    /**
+     * Register a directory created under a recursively watched one, the files already in it are passed on as
+     * they may have been created before it was registered
+     *
+     * @return true if one of those files is going to be acted on
+     */
+    private boolean watchNewDirectory(Path parent, Path dir, Debouncer debouncer, Compiler compiler) {
+        val absPath = dir.toAbsolutePath().normalize();
+        boolean accepted = false;
+        for (val registration : registrations.getOrDefault(parent, Collections.emptyList())) {
+            if (!registration.recursive || !registration.directories.test(absPath)) continue;
+            List<Path> existing = new ArrayList<>();
+            try {
+                registerTree(dir, registration, existing::add);
+            } catch (IOException e) {
+                log.warn("Unable to watch the new directory {}", dir, e);
+            }
+            for (val file : existing) {
+                accepted |= onFileEvent(file, ENTRY_CREATE, registration, debouncer, compiler);
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Schedule what a file event leads to, a compile, a resource change or the watched file's listener. The change
+     * set only begins once there is something to do, as it is ended by the LiveReload broadcast that follows
+     *
+     * @return true if the event is going to be acted on, false if it is ignored
+     */
+    private boolean onFileEvent(Path child, WatchEvent.Kind<?> kind, Registration registration, Debouncer debouncer,
+                                Compiler compiler) {
+        val absPath = child.toFile().getAbsolutePath().replace(".java~", ".java");
+        val fileListener = registration.listener;
+        if (fileListener != null) {
+            ReloadTracker.mark(ReloadTracker.Stage.WATCH_EVENT, absPath);
+            ChangeSets.begin();
+            debouncer.debounce(absPath, () -> {
+                log.info("A watched file has changed {}", absPath);
+                if (!fileListener.test(child.toAbsolutePath())) {
+                    //Nothing was applied so no broadcast is coming to end it
+                    ChangeSets.end();
+                }
+            }, 500, TimeUnit.MILLISECONDS);
+            return true;
+        } else if (absPath.endsWith(".java")) {
+            if (child.toFile().isFile()) {
+                ReloadTracker.mark(ReloadTracker.Stage.WATCH_EVENT, absPath);
+                ChangeSets.begin();
+                //Compile it
+                debouncer.debounce(absPath, () -> {
+                    ReloadTracker.mark(ReloadTracker.Stage.DEBOUNCE_FIRED, absPath);
+                    log.info("Compiling file: {} to location {}", child, outputDir.getAbsolutePath());
+                    compiler.compileFile(child.toFile(), compileClassPath,
+                            sourceCompat, targetCompat, outputDir.getAbsolutePath(), srcDir, () -> {
+                                ReloadTracker.mark(ReloadTracker.Stage.COMPILE_DONE, absPath);
+                                updateObservers(ChangeType.CLASS);
+                            });
+                }, 500, TimeUnit.MILLISECONDS);
+                return true;
+            }
+        } else if (!absPath.endsWith("~") && (child.toFile().isFile() || kind == ENTRY_DELETE)) {
+            ReloadTracker.mark(ReloadTracker.Stage.WATCH_EVENT, absPath);
+            ChangeSets.begin();
+            debouncer.debounce(absPath, () -> {
+                ReloadTracker.mark(ReloadTracker.Stage.DEBOUNCE_FIRED, absPath);
+                log.info("A resource has changed {}", absPath);
+                updateResourceObservers(child.toAbsolutePath());
+                if (child.toFile().isFile()) {
+                    updateObservers(ChangeType.RESOURCE);
+                } else {
+                    //A deleted resource isn't broadcast so its change set ends here
+                    ChangeSets.end();
+                }
+            }, 500, TimeUnit.MILLISECONDS);
+            return true;
+        }
+        return false;
+    }
+
     @Override
     public void run() {
         final Debouncer debouncer = new Debouncer();
@@ -116,32 +291,32 @@ public class FileWatcher implements Runnable {
                     continue;
                 }
 
-                for (WatchEvent<?> event : key.pollEvents()) {
+                val events = key.pollEvents();
+                boolean accepted = false;
+                for (WatchEvent<?> event : events) {
                     val kind = event.kind();
                     if (kind == OVERFLOW) continue;
 
                     //noinspection unchecked
                     val ev = (WatchEvent<Path>) event;
-                    Path name = ev.context();
-                    Path child = file.resolve(name);
-                    val absPath = child.toFile().getAbsolutePath().replace(".java~", ".java");
-                    if (absPath.endsWith(".java")) {
-                        if (child.toFile().isFile()) {
-                            //Compile it
-                            debouncer.debounce(absPath, () -> {
-                                log.info("Compiling file: {} to location {}", child, outputDir.getAbsolutePath());
-                                compiler.compileFile(child.toFile(), compileClassPath,
-                                        sourceCompat, targetCompat, outputDir.getAbsolutePath(), srcDir,
-                                        () -> updateObservers(ChangeType.CLASS));
-                            }, 500, TimeUnit.MILLISECONDS);
-                        }
-                    } else if (!absPath.endsWith("~") && child.toFile().isFile()) {
-                        debouncer.debounce(absPath, () -> {
-                            log.info("A resource has changed {}", absPath);
-                            updateObservers(ChangeType.RESOURCE);
-                        }, 500, TimeUnit.MILLISECONDS);
+                    Path child = file.resolve(ev.context());
+                    if (kind == ENTRY_CREATE && Files.isDirectory(child)) {
+                        accepted |= watchNewDirectory(file, child, debouncer, compiler);
+                        continue;
+                    }
+                    val registration = findRegistration(file, child);
+                    if (registration != null) {
+                        accepted |= onFileEvent(child, kind, registration, debouncer, compiler);
                     }
                 }
+                //A batch that is ignored, e.g. editor backups, is left out so it doesn't open a change set
+                if (accepted) {
+                    val batch = new WatchBatchEvent();
+                    batch.setChangeSet(ChangeSets.current());
+                    batch.setDirectory(file.toString());
+                    batch.setEvents(events.size());
+                    batch.commit();
+                }
                 key.reset();
             } catch (InterruptedException e) {
                 log.error("Couldn't watch for file changes the thread was interrupted", e);
@@ -149,4 +324,22 @@ public class FileWatcher implements Runnable {
         }
         debouncer.shutdown();
     }
+
+    /**
+     * How a watched directory was registered, a directory registered more than once has its events accepted if
+     * any of its registrations accepts them
+     */
+    @RequiredArgsConstructor
+    private static class Registration {
+        /**
+         * Whether the directories created under it are watched too
+         */
+        private final boolean recursive;
+        private final Predicate<Path> directories;
+        private final Predicate<Path> files;
+        /**
+         * Given the changes instead of the class and resource observers, null for a source directory
+         */
+        private final Predicate<Path> listener;
+    }
 }
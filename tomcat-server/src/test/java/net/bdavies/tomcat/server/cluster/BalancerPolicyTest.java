@@ -0,0 +1,83 @@
+package net.bdavies.tomcat.server.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author ben.davies
+ */
+class BalancerPolicyTest {
+    private final Node node1 = new Node("node1", 8081);
+    private final Node node2 = new Node("node2", 8082);
+    private final Node node3 = new Node("node3", 8083);
+    private final List<Node> nodes = Arrays.asList(node1, node2, node3);
+
+    @Test
+    void roundRobinTakesEachNodeInTurn() {
+        BalancerPolicy policy = new RoundRobinPolicy();
+
+        assertSame(node1, policy.choose(nodes, null));
+        assertSame(node2, policy.choose(nodes, null));
+        assertSame(node3, policy.choose(nodes, null));
+        assertSame(node1, policy.choose(nodes, "node3"));
+    }
+
+    @Test
+    void leastConnectionsTakesTheQuietestNode() {
+        BalancerPolicy policy = new LeastConnectionsPolicy();
+        node1.getActiveConnections().set(4);
+        node2.getActiveConnections().set(1);
+        node3.getActiveConnections().set(2);
+
+        assertSame(node2, policy.choose(nodes, null));
+        node2.getActiveConnections().set(3);
+        assertSame(node3, policy.choose(nodes, null));
+    }
+
+    @Test
+    void leastConnectionsTakesTheFirstNodeOnATie() {
+        assertSame(node1, new LeastConnectionsPolicy().choose(nodes, null));
+    }
+
+    @Test
+    void stickyKeepsASessionOnItsNode() {
+        BalancerPolicy policy = new StickyPolicy(new LeastConnectionsPolicy());
+        node3.getActiveConnections().set(10);
+
+        assertSame(node3, policy.choose(nodes, "node3"));
+        assertSame(node3, policy.choose(nodes, "node3"));
+    }
+
+    @Test
+    void stickyFallsBackWithoutARouteOrForAnUnknownOne() {
+        BalancerPolicy policy = new StickyPolicy(new RoundRobinPolicy());
+
+        assertSame(node1, policy.choose(nodes, null));
+        assertSame(node2, policy.choose(nodes, "node9"));
+    }
+
+    @Test
+    void policiesAreFoundByName() {
+        assertTrue(BalancerPolicy.forName("round-robin") instanceof RoundRobinPolicy);
+        assertTrue(BalancerPolicy.forName("Least-Connections") instanceof LeastConnectionsPolicy);
+        assertTrue(BalancerPolicy.forName("sticky") instanceof StickyPolicy);
+        assertTrue(BalancerPolicy.forName("unknown") instanceof RoundRobinPolicy);
+    }
+
+    @Test
+    void routeIsReadFromTheSessionCookieOrTheUrl() {
+        assertEquals("node2", LoadBalancer.jvmRoute("GET / HTTP/1.1\r\nHost: localhost\r\n"
+                + "Cookie: theme=dark; JSESSIONID=5F2A91C3D4E5.node2; other=1\r\n\r\n"));
+        assertEquals("node1", LoadBalancer.jvmRoute("GET /cart;jsessionid=ABC123.node1?item=4 HTTP/1.1\r\n\r\n"));
+    }
+
+    @Test
+    void noRouteWithoutASessionOrWithoutAJvmRoute() {
+        assertNull(LoadBalancer.jvmRoute("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n"));
+        assertNull(LoadBalancer.jvmRoute("GET / HTTP/1.1\r\nCookie: JSESSIONID=5F2A91C3D4E5\r\n\r\n"));
+    }
+}
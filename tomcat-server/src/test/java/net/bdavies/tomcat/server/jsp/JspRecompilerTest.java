@@ -0,0 +1,42 @@
+package net.bdavies.tomcat.server.jsp;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author ben.davies
+ */
+class JspRecompilerTest {
+    @Test
+    void buildOutputIsOnlySkippedAtTheTop() {
+        assertTrue(JspRecompiler.isSkippedDirectory(Paths.get("build")));
+        assertTrue(JspRecompiler.isSkippedDirectory(Paths.get("out", "production")));
+        assertFalse(JspRecompiler.isSkippedDirectory(Paths.get("src", "main", "webapp", "build")));
+    }
+
+    @Test
+    void sourceTreeIsNotSkipped() {
+        assertFalse(JspRecompiler.isSkippedDirectory(Paths.get("src")));
+        assertFalse(JspRecompiler.isSkippedDirectory(Paths.get("src", "main", "webapp", "WEB-INF", "views")));
+        assertFalse(JspRecompiler.isSkippedDirectory(Paths.get("")));
+    }
+
+    @Test
+    void toolDirectoriesAreSkippedAtAnyDepth() {
+        assertTrue(JspRecompiler.isSkippedDirectory(Paths.get(".git")));
+        assertTrue(JspRecompiler.isSkippedDirectory(Paths.get("src", "main", "webapp", "node_modules", "pkg")));
+        assertTrue(JspRecompiler.isSkippedDirectory(Paths.get("admin", ".idea")));
+    }
+
+    @Test
+    void jspsTagFilesAndFragmentsAreRecognised() {
+        assertTrue(JspRecompiler.isJsp(Paths.get("index.jsp")));
+        assertTrue(JspRecompiler.isJsp(Paths.get("WEB-INF", "tags", "layout.tag")));
+        assertTrue(JspRecompiler.isJsp(Paths.get("WEB-INF", "header.jspf")));
+        assertFalse(JspRecompiler.isJsp(Paths.get("site.css")));
+        assertFalse(JspRecompiler.isJsp(Paths.get("index.jsp~")));
+    }
+}
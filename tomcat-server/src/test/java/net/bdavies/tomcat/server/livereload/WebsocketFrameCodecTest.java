@@ -0,0 +1,173 @@
+package net.bdavies.tomcat.server.livereload;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author ben.davies
+ */
+class WebsocketFrameCodecTest {
+    @Test
+    void smallTextMessageRoundTrips() throws IOException {
+        WebsocketFrame frame = roundTrip(new WebsocketFrameCodec(), new WebsocketFrameCodec(),
+                new WebsocketFrame("{\"command\":\"reload\",\"path\":\"/\"}"));
+
+        assertEquals(FrameType.TEXT, frame.getType());
+        assertEquals("{\"command\":\"reload\",\"path\":\"/\"}", frame.toString());
+    }
+
+    @Test
+    void lengthsAtTheHeaderBoundariesRoundTrip() throws IOException {
+        for (int length : new int[]{0, 125, 126, 127, 0xFFFF, 0x10000}) {
+            byte[] payload = randomBytes(length, length);
+            WebsocketFrame frame = roundTrip(new WebsocketFrameCodec(), new WebsocketFrameCodec(),
+                    new WebsocketFrame(FrameType.BINARY, payload));
+
+            assertEquals(FrameType.BINARY, frame.getType());
+            assertArrayEquals(payload, payload(frame), "payload of " + length + " bytes");
+        }
+    }
+
+    @Test
+    void largeMessageIsFragmentedAndReassembled() throws IOException {
+        byte[] payload = randomBytes(Constants.MAX_FRAME_PAYLOAD * 3 + 17, 1);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new WebsocketFrameCodec().write(os, new WebsocketFrame(FrameType.BINARY, payload));
+        byte[] written = os.toByteArray();
+
+        //The first frame is not final and the next one is a continuation
+        assertEquals(FrameType.BINARY.getCode(), written[0]);
+        assertEquals(FrameType.CONT.getCode(), written[2 + 8 + Constants.MAX_FRAME_PAYLOAD] & 0x0F);
+
+        WebsocketFrame frame = new WebsocketFrameCodec().read(input(written));
+        assertArrayEquals(payload, payload(frame));
+    }
+
+    @Test
+    void compressedMessagesRoundTripWithContextTakeover() throws IOException {
+        WebsocketFrameCodec writer = new WebsocketFrameCodec(true, false, Constants.MAX_MESSAGE_SIZE);
+        WebsocketFrameCodec reader = new WebsocketFrameCodec(true, false, Constants.MAX_MESSAGE_SIZE);
+        String message = repeat("{\"command\":\"reload\",\"path\":\"/css/site.css\"}", 40);
+        for (int i = 0; i < 3; i++) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            writer.write(os, new WebsocketFrame(message + i));
+            byte[] written = os.toByteArray();
+
+            assertTrue((written[0] & 0x40) != 0, "RSV1 marks the message as compressed");
+            assertTrue(written.length < message.length(), "the message is smaller once compressed");
+            assertEquals(message + i, reader.read(input(written)).toString());
+        }
+    }
+
+    @Test
+    void messagesUnderTheThresholdAreNotCompressed() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new WebsocketFrameCodec(true, true, Constants.MAX_MESSAGE_SIZE).write(os, new WebsocketFrame("hello"));
+
+        assertEquals(0, os.toByteArray()[0] & 0x40);
+    }
+
+    @Test
+    void maskedClientFrameIsUnmasked() throws IOException {
+        byte[] payload = "hello from the browser, long enough to use the wide unmask".getBytes(StandardCharsets.UTF_8);
+        int mask = 0x37FA213D;
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        os.write(0x80 | FrameType.TEXT.getCode());
+        os.write(0x80 | payload.length);
+        os.write(new byte[]{0x37, (byte) 0xFA, 0x21, 0x3D});
+        for (int i = 0; i < payload.length; i++) {
+            os.write(payload[i] ^ (mask >>> (24 - (i % 4) * 8)));
+        }
+
+        WebsocketFrame frame = new WebsocketFrameCodec().read(input(os.toByteArray()));
+
+        assertEquals(new String(payload, StandardCharsets.UTF_8), frame.toString());
+    }
+
+    @Test
+    void unmaskMatchesByteByByteMaskingAtAnyOffset() {
+        int mask = 0x12345678;
+        for (int offset = 0; offset < 8; offset++) {
+            for (int length = 0; length < 40; length++) {
+                byte[] original = randomBytes(offset + length, offset * 31 + length);
+                byte[] buffer = original.clone();
+                WebsocketFrameCodec.unmask(buffer, offset, length, mask);
+                for (int i = 0; i < buffer.length; i++) {
+                    byte expected = i < offset ? original[i]
+                            : (byte) (original[i] ^ (mask >>> (24 - ((i - offset) % 4) * 8)));
+                    assertEquals(expected, buffer[i], "offset " + offset + ", length " + length + ", byte " + i);
+                }
+            }
+        }
+    }
+
+    @Test
+    void controlFrameIsReturnedInTheMiddleOfAFragmentedMessage() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        os.write(new byte[]{(byte) FrameType.TEXT.getCode(), 3, 'a', 'b', 'c'});
+        os.write(new byte[]{(byte) (0x80 | FrameType.PING.getCode()), 1, 'p'});
+        os.write(new byte[]{(byte) (0x80 | FrameType.CONT.getCode()), 2, 'd', 'e'});
+        WebsocketFrameCodec codec = new WebsocketFrameCodec();
+        WebsocketInputStream is = input(os.toByteArray());
+
+        WebsocketFrame ping = codec.read(is);
+        assertEquals(FrameType.PING, ping.getType());
+        assertEquals("p", ping.toString());
+        WebsocketFrame message = codec.read(is);
+        assertEquals(FrameType.TEXT, message.getType());
+        assertEquals("abcde", message.toString());
+    }
+
+    @Test
+    void messageOverTheMaximumSizeIsRejected() {
+        byte[] frame = {(byte) (0x80 | FrameType.BINARY.getCode()), 126, 0x01, 0x00};
+
+        assertThrows(IOException.class, () -> new WebsocketFrameCodec(false, false, 255).read(input(frame)));
+    }
+
+    @Test
+    void writingAfterCloseFails() {
+        WebsocketFrameCodec codec = new WebsocketFrameCodec(true, false, Constants.MAX_MESSAGE_SIZE);
+        codec.close();
+        codec.close();
+
+        assertThrows(IOException.class, () -> codec.write(new ByteArrayOutputStream(), new WebsocketFrame("x")));
+    }
+
+    private static WebsocketFrame roundTrip(WebsocketFrameCodec writer, WebsocketFrameCodec reader,
+                                            WebsocketFrame frame) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        writer.write(os, frame);
+        return reader.read(input(os.toByteArray()));
+    }
+
+    private static WebsocketInputStream input(byte[] bytes) {
+        return new WebsocketInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    private static byte[] payload(WebsocketFrame frame) {
+        return Arrays.copyOf(frame.getPayload(), frame.getLength());
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String repeat(String value, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+}
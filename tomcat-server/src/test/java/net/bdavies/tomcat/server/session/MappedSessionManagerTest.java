@@ -0,0 +1,95 @@
+package net.bdavies.tomcat.server.session;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author ben.davies
+ */
+class MappedSessionManagerTest {
+    @Test
+    void recordsRoundTripThroughTheIndex() throws Exception {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("user", "ben");
+        attributes.put("visits", 3);
+        byte[] serialized = serialize(attributes);
+        ByteBuffer store = store(
+                MappedSessionManager.encode("5F2A91C3D4E5.node1", 1_700_000_000_123L, 1800, serialized),
+                MappedSessionManager.encode("session-\u00e9", 42L, -1, new byte[0]));
+
+        List<MappedSessionManager.Record> records = MappedSessionManager.index(store);
+
+        assertNotNull(records);
+        assertEquals(2, records.size());
+        MappedSessionManager.Record first = records.get(0);
+        assertEquals("5F2A91C3D4E5.node1", first.getId());
+        assertEquals(1_700_000_000_123L, first.getLastAccessedTime());
+        assertEquals(1800, first.getMaxInactiveInterval());
+        assertEquals(attributes, deserialize(MappedSessionManager.read(store, first)));
+        MappedSessionManager.Record second = records.get(1);
+        assertEquals("session-\u00e9", second.getId());
+        assertEquals(42L, second.getLastAccessedTime());
+        assertEquals(-1, second.getMaxInactiveInterval());
+        assertEquals(0, MappedSessionManager.read(store, second).length);
+    }
+
+    @Test
+    void recordCopiedFromTheIndexIsUnchanged() {
+        byte[] original = MappedSessionManager.encode("ABC123", 1000L, 60, new byte[]{1, 2, 3, 4, 5});
+        ByteBuffer store = store(original);
+        MappedSessionManager.Record record = MappedSessionManager.index(store).get(0);
+
+        //Sessions that were never re-attached are written to the next generation this way
+        byte[] copy = MappedSessionManager.encode(record.getId(), record.getLastAccessedTime(),
+                record.getMaxInactiveInterval(), MappedSessionManager.read(store, record));
+
+        assertArrayEquals(original, copy);
+    }
+
+    @Test
+    void emptyStoreHasNoRecords() {
+        List<MappedSessionManager.Record> records = MappedSessionManager.index(store());
+
+        assertNotNull(records);
+        assertTrue(records.isEmpty());
+    }
+
+    @Test
+    void fileThatIsNotAStoreIsRejected() {
+        assertNull(MappedSessionManager.index(ByteBuffer.wrap("not a store".getBytes(StandardCharsets.UTF_8))));
+        assertNull(MappedSessionManager.index(ByteBuffer.allocate(4)));
+    }
+
+    private static ByteBuffer store(byte[]... records) {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + Arrays.stream(records).mapToInt(r -> r.length).sum());
+        buffer.putInt(MappedSessionManager.MAGIC).putInt(records.length);
+        for (byte[] record : records) {
+            buffer.put(record);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(value);
+        }
+        return bos.toByteArray();
+    }
+
+    private static Object deserialize(byte[] data) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return ois.readObject();
+        }
+    }
+}